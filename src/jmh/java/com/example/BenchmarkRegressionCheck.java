@@ -0,0 +1,84 @@
+package com.example;
+
+import org.nd4j.shade.jackson.databind.JsonNode;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сравнява два JSON резултата от JMH (например от два commit-а) и отчита
+ * бенчмарковете, които са се влошили с повече от зададения процент.
+ *
+ * Употреба: BenchmarkRegressionCheck baseline.json current.json [праг в %, по подразбиране 10]
+ * Изходният код е 1, ако има поне една регресия.
+ */
+public class BenchmarkRegressionCheck {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Употреба: BenchmarkRegressionCheck baseline.json current.json [праг %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, JsonNode> baseline = load(new File(args[0]));
+        Map<String, JsonNode> current = load(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s  нов%n", entry.getKey());
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            double oldScore = before.path("primaryMetric").path("score").asDouble();
+            double newScore = after.path("primaryMetric").path("score").asDouble();
+            String unit = after.path("primaryMetric").path("scoreUnit").asText();
+
+            // За throughput по-голямо е по-добре, за времевите режими - по-малко
+            boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+            double change = (newScore - oldScore) / oldScore * 100.0;
+            double slowdown = higherIsBetter ? -change : change;
+
+            boolean regression = slowdown > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-70s  %12.3f -> %12.3f %-8s %+7.1f%%%s%n",
+                    entry.getKey(), oldScore, newScore, unit, change, regression ? "  РЕГРЕСИЯ" : "");
+        }
+
+        System.out.printf("%nРегресии над %.1f%%: %d%n", threshold, regressions);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Чете резултатите с ключ име на бенчмарка + стойности на параметрите
+     */
+    private static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            JsonNode params = result.path("params");
+            if (params.size() > 0) {
+                Map<String, String> sorted = new TreeMap<>();
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    sorted.put(field.getKey(), field.getValue().asText());
+                }
+                key.append(sorted);
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+}
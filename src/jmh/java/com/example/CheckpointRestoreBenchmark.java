@@ -0,0 +1,69 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запис и студено зареждане на MNIST мрежата за inference:
+ * ModelSerializer (zip) срещу CheckpointManager (суров двоичен формат)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckpointRestoreBenchmark {
+
+    private MultiLayerNetwork model;
+    private File zip;
+    private Path checkpoint;
+
+    @Setup
+    public void setUp() throws IOException {
+        model = MNISTClassifier.createModel();
+        Path directory = Files.createTempDirectory("checkpoint-bench");
+        zip = directory.resolve("model.zip").toFile();
+        checkpoint = directory.resolve("model.bin");
+        ModelSerializer.writeModel(model, zip, true);
+        CheckpointManager.write(model, checkpoint);
+    }
+
+    @Benchmark
+    public MultiLayerNetwork restoreModelSerializer() throws IOException {
+        return ModelSerializer.restoreMultiLayerNetwork(zip, false);
+    }
+
+    @Benchmark
+    public MultiLayerNetwork restoreCheckpoint() throws IOException {
+        return CheckpointManager.restore(checkpoint, false);
+    }
+
+    @Benchmark
+    public File writeModelSerializer() throws IOException {
+        ModelSerializer.writeModel(model, zip, true);
+        return zip;
+    }
+
+    @Benchmark
+    public Path writeCheckpoint() throws IOException {
+        CheckpointManager.write(model, checkpoint);
+        return checkpoint;
+    }
+}
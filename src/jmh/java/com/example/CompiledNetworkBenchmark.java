@@ -0,0 +1,61 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Едно предвиждане за XOR мрежа 2 -> N -> 2: model.output срещу CompiledDenseNetwork
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledNetworkBenchmark {
+
+    @Param({"4", "10"})
+    public int hiddenNeurons;
+
+    @Param({"SIGMOID", "TANH"})
+    public Activation activation;
+
+    private MultiLayerNetwork model;
+    private CompiledDenseNetwork compiled;
+    private final double[] input = {1, 0};
+    private final double[] output = new double[2];
+
+    @Setup
+    public void setUp() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(hiddenNeurons, 0.1, activation);
+        network.train(100);
+        model = network.getModel();
+        compiled = network.compile();
+    }
+
+    @Benchmark
+    public INDArray modelOutput() {
+        return model.output(Nd4j.create(new double[][]{input}));
+    }
+
+    @Benchmark
+    public double[] compiledOutput() {
+        compiled.output(input, output);
+        return output;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнява изчисляването на решението клетка по клетка (старият NetworkVisualizer)
+ * с пакетното изчисление на плочки от DecisionBoundaryGrid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DecisionBoundaryBenchmark {
+
+    @Param({"50", "100", "250", "500"})
+    public int resolution;
+
+    private MultiLayerNetwork model;
+    private DecisionBoundaryGrid grid;
+
+    @Setup
+    public void setUp() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(10, 0.05, Activation.TANH);
+        network.train(200);
+        model = network.getModel();
+        grid = new DecisionBoundaryGrid(resolution);
+    }
+
+    @Benchmark
+    public int perCell() {
+        int ones = 0;
+        for (int i = 0; i <= resolution; i++) {
+            for (int j = 0; j <= resolution; j++) {
+                double x = (double) i / resolution;
+                double y = (double) j / resolution;
+
+                INDArray input = Nd4j.create(new double[][]{{x, y}});
+                INDArray output = model.output(input);
+
+                ones += output.getDouble(0) > output.getDouble(1) ? 0 : 1;
+            }
+        }
+        return ones;
+    }
+
+    @Benchmark
+    public byte[] tiled() {
+        return grid.evaluate(model);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example;
+
+import org.nd4j.linalg.activations.Activation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FlexibleNeuralNetwork.train и predict за трите конфигурации от FlexibleNeuralNetwork.main
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlexibleNetworkBenchmark {
+
+    @Param({"3:SIGMOID", "5:RELU", "10:TANH"})
+    public String configuration;
+
+    private FlexibleNeuralNetwork network;
+
+    @Setup
+    public void setUp() {
+        String[] parts = configuration.split(":");
+        network = new FlexibleNeuralNetwork(Integer.parseInt(parts[0]), 0.1, Activation.valueOf(parts[1]));
+        network.train(100);
+    }
+
+    /** 100 итерации model.fit върху XOR данните */
+    @Benchmark
+    public FlexibleNeuralNetwork train100() {
+        network.train(100);
+        return network;
+    }
+
+    @Benchmark
+    public int predict() {
+        return network.predict(1, 0);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нормализацията от ND4JExample като верига от ND4J операции и като слят
+ * LazyExpression - в нов масив и на място.
+ *
+ * За 10^8 елемента (400 MB float) веригата с временни масиви иска над 1.2 GB
+ * нативна памет: -Djmh.args="FusedExpression -p elements=1000000,10000000"
+ * ограничава размерите на машини с малко памет.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusedExpressionBenchmark {
+
+    @Param({"1000000", "10000000", "100000000"})
+    public int elements;
+
+    private INDArray matrix;
+    private INDArray target;
+
+    @Setup
+    public void setUp() {
+        Nd4j.getRandom().setSeed(42);
+        matrix = Nd4j.rand(DataType.FLOAT, elements / 1000, 1000);
+        target = Nd4j.createUninitialized(DataType.FLOAT, matrix.shape());
+    }
+
+    @Benchmark
+    public INDArray eagerChain() {
+        return matrix.sub(matrix.mean()).div(matrix.std());
+    }
+
+    @Benchmark
+    public INDArray eagerInPlace() {
+        INDArray copy = target.assign(matrix);
+        return copy.subi(copy.meanNumber()).divi(copy.stdNumber());
+    }
+
+    @Benchmark
+    public INDArray fused() {
+        return LazyExpression.of(matrix).normalize().eval();
+    }
+
+    @Benchmark
+    public INDArray fusedInto() {
+        return LazyExpression.of(matrix).normalize().eval(target);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward и backward pass на мрежата 784 -> 256 -> 128 -> 10 от MNISTClassifier
+ * върху случайни данни с формата на MNIST (не изисква изтегляне на данните)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MnistDenseBenchmark {
+
+    @Param({"64", "256"})
+    public int batchSize;
+
+    private MultiLayerNetwork model;
+    private MultiLayerNetwork instrumented;
+    private INDArray features;
+    private INDArray labels;
+
+    @Setup
+    public void setUp() {
+        model = MNISTClassifier.createModel();
+        instrumented = MNISTClassifier.createModel();
+        instrumented.setListeners(new TrainingMetricsListener(MetricsSink.NONE, 50));
+        Nd4j.getRandom().setSeed(42);
+        features = Nd4j.rand(DataType.FLOAT, batchSize, MNISTClassifier.NUM_INPUTS);
+        labels = Nd4j.zeros(DataType.FLOAT, batchSize, MNISTClassifier.NUM_CLASSES);
+        for (int i = 0; i < batchSize; i++) {
+            labels.putScalar(i, i % MNISTClassifier.NUM_CLASSES, 1.0);
+        }
+    }
+
+    @Benchmark
+    public INDArray forward() {
+        return model.output(features, false);
+    }
+
+    /** Forward + backward без обновяване на теглата */
+    @Benchmark
+    public double forwardBackward() {
+        model.setInput(features);
+        model.setLabels(labels);
+        model.computeGradientAndScore();
+        return model.score();
+    }
+
+    /** Пълна стъпка на тренировка - forward, backward и Nesterovs обновяване */
+    @Benchmark
+    public MultiLayerNetwork fit() {
+        model.fit(features, labels);
+        return model;
+    }
+
+    /** Като fit, с TrainingMetricsListener - разликата е цената на метриките */
+    @Benchmark
+    public MultiLayerNetwork fitWithMetrics() {
+        instrumented.fit(features, labels);
+        return instrumented;
+    }
+}
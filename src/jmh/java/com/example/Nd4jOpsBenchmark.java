@@ -0,0 +1,63 @@
+package com.example;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Матричните операции от ND4JExample върху квадратни матрици с различен размер
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Nd4jOpsBenchmark {
+
+    @Param({"2", "256", "1024"})
+    public int size;
+
+    private INDArray matrix1;
+    private INDArray matrix2;
+
+    @Setup
+    public void setUp() {
+        Nd4j.getRandom().setSeed(42);
+        matrix1 = Nd4j.rand(size, size);
+        matrix2 = Nd4j.rand(size, size);
+    }
+
+    @Benchmark
+    public INDArray add() {
+        return matrix1.add(matrix2);
+    }
+
+    @Benchmark
+    public INDArray mmul() {
+        return matrix1.mmul(matrix2);
+    }
+
+    @Benchmark
+    public INDArray sigmoid() {
+        return Transforms.sigmoid(matrix1);
+    }
+
+    @Benchmark
+    public INDArray normalize() {
+        return matrix1.sub(matrix1.mean()).div(matrix1.std());
+    }
+}
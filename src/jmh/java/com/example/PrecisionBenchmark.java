@@ -0,0 +1,95 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускателна способност на MNIST мрежата при различна точност.
+ * Паметта за параметрите и входа се отчита като допълнителен брояч (paramBytes, inputBytes).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrecisionBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+
+    @State(Scope.Thread)
+    public static class Inference {
+        @Param({"DOUBLE", "FLOAT", "HALF", "BFLOAT16"})
+        public Precision precision;
+
+        MultiLayerNetwork model;
+        INDArray features;
+
+        @Setup
+        public void setUp() {
+            model = precision.forInference(MNISTClassifier.createModel(precision));
+            Nd4j.getRandom().setSeed(42);
+            features = Nd4j.rand(DataType.FLOAT, BATCH_SIZE, MNISTClassifier.NUM_INPUTS).castTo(precision.inferenceType());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Training {
+        @Param({"DOUBLE", "FLOAT"})
+        public Precision precision;
+
+        MultiLayerNetwork model;
+        INDArray features;
+        INDArray labels;
+
+        @Setup
+        public void setUp() {
+            model = MNISTClassifier.createModel(precision);
+            Nd4j.getRandom().setSeed(42);
+            DataType type = precision.trainingType();
+            features = Nd4j.rand(DataType.FLOAT, BATCH_SIZE, MNISTClassifier.NUM_INPUTS).castTo(type);
+            labels = Nd4j.zeros(type, BATCH_SIZE, MNISTClassifier.NUM_CLASSES);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                labels.putScalar(i, i % MNISTClassifier.NUM_CLASSES, 1.0);
+            }
+        }
+    }
+
+    /** Памет на мрежата и входа, записва се в JSON резултата до пропускателната способност */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Memory {
+        public long paramBytes;
+        public long inputBytes;
+    }
+
+    @Benchmark
+    public INDArray output(Inference state, Memory memory) {
+        memory.paramBytes = Precision.parameterBytes(state.model);
+        memory.inputBytes = state.features.length() * state.features.dataType().width();
+        return state.model.output(state.features, false);
+    }
+
+    @Benchmark
+    public MultiLayerNetwork fit(Training state, Memory memory) {
+        memory.paramBytes = Precision.parameterBytes(state.model);
+        memory.inputBytes = state.features.length() * state.features.dataType().width();
+        state.model.fit(state.features, state.labels);
+        return state.model;
+    }
+}
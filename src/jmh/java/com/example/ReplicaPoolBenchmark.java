@@ -0,0 +1,86 @@
+package com.example;
+
+import org.nd4j.linalg.activations.Activation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускателна способност на predict при 1..32 нишки - една споделена мрежа
+ * (model.output е synchronized) срещу ModelReplicaPool.
+ *
+ * Стартиране: mvn -Pjmh compile exec:exec -Djmh.main=com.example.ReplicaPoolBenchmark
+ * Резултатът за всеки брой нишки е в отделен JSON файл (jmh-result-Nt.json).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ReplicaPoolBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+
+    private FlexibleNeuralNetwork network;
+    private ModelReplicaPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        network = new FlexibleNeuralNetwork(10, 0.05, Activation.TANH);
+        network.train(200);
+        pool = network.replicaPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public int sharedModel() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return network.predict(random.nextDouble(), random.nextDouble());
+    }
+
+    @Benchmark
+    public int replicaPool() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return pool.predict(random.nextDouble(), random.nextDouble());
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String result = commandLine.getResult().orElse("target/jmh-result.json").replaceAll("\\.json$", "");
+
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(ReplicaPoolBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result + "-" + threads + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
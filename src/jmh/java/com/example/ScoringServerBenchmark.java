@@ -0,0 +1,112 @@
+package com.example;
+
+import org.nd4j.linalg.activations.Activation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заявки/s към ScoringServer от 4 клиента, всеки с пакет от 4 XOR примера в JSON.
+ *
+ * Стартиране: mvn -Pjmh compile exec:exec -Djmh.main=com.example.ScoringServerBenchmark
+ * Изходният код е 1, ако резултатът е под -Dscoring.min.throughput (по подразбиране 150).
+ * С TCP_NODELAY са над 300 заявки/s на едно ядро; със забавянето на Nagle и delayed
+ * ACK падат до около 75, затова границата е между двете.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-D" + ScoringServer.NODELAY_PROPERTY + "=true")
+public class ScoringServerBenchmark {
+
+    private static final String MIN_THROUGHPUT_PROPERTY = "scoring.min.throughput";
+    private static final byte[] BODY = "[[0,0],[0,1],[1,0],[1,1]]".getBytes(StandardCharsets.US_ASCII);
+
+    private ModelRegistry registry;
+    private ScoringServer server;
+    private URL url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FlexibleNeuralNetwork xor = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        xor.train(200);
+        registry = new ModelRegistry(2, 2);
+        xor.publish(registry, "xor");
+        server = new ScoringServer(registry, 0, 2, 64, 32);
+        url = new URL("http://localhost:" + server.getPort() + "/predict/xor");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+        registry.close();
+    }
+
+    @Benchmark
+    public int predictJson() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", ScoringServer.JSON);
+        connection.setFixedLengthStreamingMode(BODY.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(BODY);
+        }
+        int status = connection.getResponseCode();
+        // Тялото се изчита докрай, за да се преизползва връзката (keep-alive)
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[512];
+            while (in.read(buffer) >= 0) {
+                // изчитане
+            }
+        }
+        if (status != 200) {
+            throw new IllegalStateException("Отговор " + status);
+        }
+        return status;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        double minThroughput = Double.parseDouble(System.getProperty(MIN_THROUGHPUT_PROPERTY, "150"));
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ScoringServerBenchmark.class.getSimpleName())
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        double throughput = results.iterator().next().getPrimaryResult().getScore();
+        System.out.printf("%nScoringServer: %.0f заявки/s (долна граница %.0f)%n", throughput, minThroughput);
+        if (throughput < minThroughput) {
+            System.exit(1);
+        }
+    }
+}
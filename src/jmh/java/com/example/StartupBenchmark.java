@@ -0,0 +1,195 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Време от стартирането на JVM до първото предвиждане на MNIST мрежата, измерено
+ * в отделни JVM процеси - без CDS архив, с CDS архив на приложението и с CDS
+ * архив плюс загряване от записан WarmupProfile.
+ *
+ * Стартиране: mvn -Pjmh compile exec:exec -Djmh.main=com.example.StartupBenchmark -Djmh.options= -Djmh.args="5"
+ * С нативни библиотеки само за текущата платформа: mvn -Pjmh,host ...
+ *
+ * Стъпки: директориите от classpath-а се пакетират в target/startup/app.jar
+ * (динамичният CDS архив не приема класове от директории), един процес записва
+ * профила за загряване, един създава архива с -XX:ArchiveClassesAtExit и след
+ * това всяка конфигурация се стартира по N пъти, редувайки конфигурациите.
+ * Отчитат се медианите.
+ */
+public class StartupBenchmark {
+
+    private static final String PROBE = "probe";
+    private static final String RESULT_PREFIX = "STARTUP ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && PROBE.equals(args[0])) {
+            probe(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path directory = Paths.get("target", "startup");
+        Files.createDirectories(directory);
+        String classpath = packClasspath(directory.resolve("app.jar"));
+        Path archive = directory.resolve("app.jsa");
+        Path profile = directory.resolve("warmup.profile");
+
+        run(classpath, List.of(), "record", profile.toString());
+        Files.deleteIfExists(archive);
+        run(classpath, List.of("-XX:ArchiveClassesAtExit=" + archive), "cold");
+
+        Map<String, List<String>> flags = new LinkedHashMap<>();
+        Map<String, String> modes = new LinkedHashMap<>();
+        flags.put("без CDS", List.of());
+        modes.put("без CDS", "cold");
+        flags.put("CDS", List.of("-XX:SharedArchiveFile=" + archive));
+        modes.put("CDS", "cold");
+        flags.put("CDS + загряване", List.of("-XX:SharedArchiveFile=" + archive, "-D" + WarmupProfile.PROPERTY + "=" + profile));
+        modes.put("CDS + загряване", "warm");
+
+        Map<String, List<double[]>> results = new LinkedHashMap<>();
+        for (int r = 0; r < runs; r++) {
+            for (String name : flags.keySet()) {
+                results.computeIfAbsent(name, n -> new ArrayList<>()).add(run(classpath, flags.get(name), modes.get(name)));
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-18s %12s %14s %16s %16s%n", "медиана от " + runs, "до main, ms", "модел, ms",
+                "1-во предв., ms", "1-ва заявка, ms");
+        for (Map.Entry<String, List<double[]>> entry : results.entrySet()) {
+            System.out.printf("%-18s %12.0f %14.0f %16.0f %16.2f%n", entry.getKey(),
+                    median(entry.getValue(), 0), median(entry.getValue(), 1),
+                    median(entry.getValue(), 2), median(entry.getValue(), 3));
+        }
+    }
+
+    /**
+     * Стартира отделна JVM и връща {до main, до готов модел, до първо предвиждане, първа заявка}
+     */
+    private static double[] run(String classpath, List<String> jvmFlags, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmFlags);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(StartupBenchmark.class.getName());
+        command.add(PROBE);
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        double[] result = null;
+        List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = Arrays.stream(line.substring(RESULT_PREFIX.length()).split(" "))
+                            .mapToDouble(Double::parseDouble).toArray();
+                }
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0 || result == null) {
+            output.forEach(System.err::println);
+            throw new IllegalStateException("Процесът " + String.join(" ", args) + " завърши с код " + exit);
+        }
+        System.out.printf("%s %s: %s%n", String.join(" ", jvmFlags), String.join(" ", args), Arrays.toString(result));
+        return result;
+    }
+
+    /**
+     * Кратко живият процес: създава мрежата, по избор я загрява и прави едно предвиждане
+     */
+    private static void probe(String[] args) throws IOException {
+        long toMain = ManagementFactory.getRuntimeMXBean().getUptime();
+        String mode = args[0];
+        if ("warm".equals(mode)) {
+            WarmupProfile.preloadBackend();
+        }
+
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        long modelReady = ManagementFactory.getRuntimeMXBean().getUptime();
+
+        WarmupProfile profile = "warm".equals(mode) ? WarmupProfile.fromSystemProperty() : new WarmupProfile();
+        if (profile.size() > 0) {
+            profile.replay(model, 3);
+        }
+
+        long start = System.nanoTime();
+        model.output(Nd4j.rand(1, MNISTClassifier.NUM_INPUTS));
+        double firstCall = (System.nanoTime() - start) / 1e6;
+        long firstPrediction = ManagementFactory.getRuntimeMXBean().getUptime();
+
+        if ("record".equals(mode)) {
+            // Представително натоварване: единични заявки, пакети за оценка и тренировка
+            WarmupProfile recorded = new WarmupProfile();
+            recorded.recordOutput(1);
+            recorded.recordOutput(MNISTClassifier.BATCH_SIZE);
+            recorded.recordFit(MNISTClassifier.BATCH_SIZE);
+            recorded.save(Paths.get(args[1]));
+        }
+        System.out.println(RESULT_PREFIX + toMain + " " + modelReady + " " + firstPrediction + " " + firstCall);
+    }
+
+    /**
+     * Пакетира директориите от текущия classpath в един jar и връща новия classpath
+     */
+    private static String packClasspath(Path jar) throws IOException {
+        List<String> entries = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Paths.get(entry);
+            if (Files.isDirectory(path)) {
+                directories.add(path);
+            } else if (Files.exists(path)) {
+                entries.add(entry);
+            }
+        }
+        Set<String> names = new HashSet<>();
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (Path root : directories) {
+                try (Stream<Path> files = Files.walk(root)) {
+                    for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                        String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                        if (!names.add(name)) {
+                            continue;
+                        }
+                        out.putNextEntry(new JarEntry(name));
+                        Files.copy(file, (OutputStream) out);
+                        out.closeEntry();
+                    }
+                }
+            }
+        }
+        entries.add(0, jar.toString());
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static double median(List<double[]> values, int column) {
+        double[] sorted = values.stream().mapToDouble(v -> v[column]).sorted().toArray();
+        return sorted[sorted.length / 2];
+    }
+}
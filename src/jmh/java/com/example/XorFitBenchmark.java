@@ -0,0 +1,44 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.dataset.DataSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Една итерация model.fit(DataSet) както в SimpleNeuralNetwork
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XorFitBenchmark {
+
+    private MultiLayerNetwork model;
+    private DataSet dataSet;
+
+    @Setup
+    public void setUp() {
+        model = new MultiLayerNetwork(SimpleNeuralNetwork.createConfiguration());
+        model.init();
+        dataSet = SimpleNeuralNetwork.createDataSet();
+    }
+
+    @Benchmark
+    public MultiLayerNetwork fit() {
+        model.fit(dataSet);
+        return model;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Оценка на мрежата във фонов режим, без да спира тренировката.
+ *
+ * Тестовите данни се зареждат в паметта веднъж и се разделят на shards части.
+ * При evaluate() параметрите се копират (едно копиране на плоския масив), а самата
+ * оценка се прави във фонови нишки - всяка част върху собствено копие на мрежата.
+ * Резултатите от частите се обединяват с Evaluation.merge.
+ *
+ * Всяка част има собствена нишка, затова последователните оценки се изпълняват
+ * в реда, в който са поискани.
+ */
+public class AsyncEvaluator implements AutoCloseable {
+
+    private final List<List<DataSet>> shards;
+    private final MultiLayerNetwork[] replicas;
+    private final ExecutorService[] executors;
+
+    /**
+     * @param model мрежата, която ще се оценява; използва се само за създаване на копия
+     * @param testData тестови данни; итераторът се изчерпва и нулира
+     * @param shardCount на колко части да се раздели тестовото множество
+     */
+    public AsyncEvaluator(MultiLayerNetwork model, DataSetIterator testData, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Броят части трябва да е положителен: " + shardCount);
+        }
+        this.shards = new ArrayList<>(shardCount);
+        this.replicas = new MultiLayerNetwork[shardCount];
+        this.executors = new ExecutorService[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            shards.add(new ArrayList<>());
+            replicas[s] = model.clone();
+            int index = s;
+            executors[s] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "async-eval-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        // Итераторът може да преизползва буферите си, затова се пазят копия
+        int batch = 0;
+        while (testData.hasNext()) {
+            shards.get(batch++ % shardCount).add(testData.next().copy());
+        }
+        testData.reset();
+    }
+
+    /**
+     * Копира текущите параметри на мрежата и започва оценката им във фонов режим.
+     * Мрежата може да продължи да се тренира веднага след връщането.
+     */
+    public CompletableFuture<Evaluation> evaluate(MultiLayerNetwork model) {
+        INDArray snapshot = model.params().dup();
+
+        List<CompletableFuture<Evaluation>> parts = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            MultiLayerNetwork replica = replicas[s];
+            List<DataSet> shard = shards.get(s);
+            parts.add(CompletableFuture.supplyAsync(() -> evaluateShard(replica, snapshot, shard), executors[s]));
+        }
+
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            Evaluation merged = parts.get(0).join();
+            for (int s = 1; s < parts.size(); s++) {
+                merged.merge(parts.get(s).join());
+            }
+            return merged;
+        });
+    }
+
+    private static Evaluation evaluateShard(MultiLayerNetwork replica, INDArray params, List<DataSet> shard) {
+        replica.setParams(params);
+        Evaluation evaluation = new Evaluation();
+        for (DataSet batch : shard) {
+            evaluation.eval(batch.getLabels(), replica.output(batch.getFeatures(), false));
+        }
+        return evaluation;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Оценка на класификатор с едно паралелно минаване през тестовите данни.
+ *
+ * Данните се зареждат в паметта веднъж и се делят на равни части по нишки. Всяка
+ * нишка смята изхода на пакета в собствен workspace върху свое копие на мрежата и
+ * за всеки пример увеличава два брояча в примитивни масиви: клетка от матрицата на
+ * объркванията и позицията (ранга) на верния клас сред изходите. Не се създават
+ * обекти за пример. От тези два масива се изчисляват точност, прецизност,
+ * отзивчивост, F1 и top-k точност за произволно k.
+ */
+public class BatchScorer implements AutoCloseable {
+
+    private static final WorkspaceConfiguration WORKSPACE_CONFIG = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .policyAllocation(AllocationPolicy.OVERALLOCATE)
+            .overallocationLimit(0.2)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .policyReset(ResetPolicy.BLOCK_LEFT)
+            .policySpill(SpillPolicy.REALLOCATE)
+            .build();
+
+    private final List<List<DataSet>> shards;
+    private final MultiLayerNetwork[] replicas;
+    private final ExecutorService executor;
+    private final int numClasses;
+    private final String workspacePrefix = "BATCH_SCORER_" + System.identityHashCode(this) + "_";
+
+    /**
+     * @param model мрежата, която ще се оценява; използва се само за създаване на копия
+     * @param testData тестови данни; итераторът се изчерпва и нулира
+     * @param threads на колко нишки да се раздели оценката
+     */
+    public BatchScorer(MultiLayerNetwork model, DataSetIterator testData, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Броят нишки трябва да е положителен: " + threads);
+        }
+        this.numClasses = model.layerSize(model.getnLayers() - 1);
+
+        // Итераторът може да преизползва буферите си, затова се пазят копия
+        List<DataSet> batches = new ArrayList<>();
+        while (testData.hasNext()) {
+            batches.add(testData.next().copy());
+        }
+        testData.reset();
+
+        // Последователни части с почти равен брой пакети
+        int parts = Math.max(1, Math.min(threads, batches.size()));
+        this.shards = new ArrayList<>(parts);
+        for (int s = 0; s < parts; s++) {
+            shards.add(batches.subList(s * batches.size() / parts, (s + 1) * batches.size() / parts));
+        }
+        this.replicas = new MultiLayerNetwork[parts];
+        for (int s = 0; s < parts; s++) {
+            replicas[s] = model.clone();
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parts, r -> {
+            Thread thread = new Thread(r, "batch-scorer-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Оценява текущите параметри на мрежата. Блокира до края на оценката.
+     */
+    public Result score(MultiLayerNetwork model) {
+        INDArray params = model.params();
+        List<CompletableFuture<Result>> parts = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            int shard = s;
+            replicas[s].setParams(params);
+            parts.add(CompletableFuture.supplyAsync(() -> scoreShard(shard), executor));
+        }
+        Result merged = new Result(numClasses);
+        for (CompletableFuture<Result> part : parts) {
+            merged.add(part.join());
+        }
+        return merged;
+    }
+
+    private Result scoreShard(int shard) {
+        MultiLayerNetwork replica = replicas[shard];
+        Result result = new Result(numClasses);
+        for (DataSet batch : shards.get(shard)) {
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager()
+                    .getAndActivateWorkspace(WORKSPACE_CONFIG, workspacePrefix + shard)) {
+                INDArray output = replica.output(batch.getFeatures(), false, ws);
+                result.accumulate(output, batch.getLabels());
+            }
+        }
+        return result;
+    }
+
+    public int getThreads() {
+        return shards.size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Матрица на объркванията и разпределение на ранга на верния клас.
+     *
+     * Прецизност, отзивчивост и F1 без аргумент са макро-средни по класовете, както
+     * в Evaluation за повече от два класа. Клас без нито едно предвиждане (за
+     * прецизността), без нито един пример (за отзивчивостта) или с кое да е от
+     * двете (за F1) не участва в средното.
+     */
+    public static final class Result {
+        private final int numClasses;
+        /** confusion[actual * numClasses + predicted] */
+        private final long[] confusion;
+        /** ranks[r] - брой примери, при които верният клас е на позиция r по изход */
+        private final long[] ranks;
+
+        Result(int numClasses) {
+            this.numClasses = numClasses;
+            this.confusion = new long[numClasses * numClasses];
+            this.ranks = new long[numClasses];
+        }
+
+        /**
+         * Добавя пакет: output и labels са [примери, класове], labels е one-hot.
+         * При равни изходи по-малкият индекс е по-напред, както при argMax.
+         */
+        void accumulate(INDArray output, INDArray labels) {
+            // Обхождането по буфера предполага последователни редове
+            output = contiguous(output);
+            labels = contiguous(labels);
+            DataBuffer out = output.data();
+            DataBuffer expected = labels.data();
+            long outOffset = output.offset();
+            long labelOffset = labels.offset();
+            int rows = (int) output.size(0);
+            for (int r = 0; r < rows; r++) {
+                long outBase = outOffset + (long) r * numClasses;
+                long labelBase = labelOffset + (long) r * numClasses;
+
+                int actual = 0;
+                int predicted = 0;
+                double bestLabel = expected.getDouble(labelBase);
+                double bestOutput = out.getDouble(outBase);
+                for (int c = 1; c < numClasses; c++) {
+                    double label = expected.getDouble(labelBase + c);
+                    if (label > bestLabel) {
+                        bestLabel = label;
+                        actual = c;
+                    }
+                    double value = out.getDouble(outBase + c);
+                    if (value > bestOutput) {
+                        bestOutput = value;
+                        predicted = c;
+                    }
+                }
+                confusion[actual * numClasses + predicted]++;
+
+                double trueScore = out.getDouble(outBase + actual);
+                int rank = 0;
+                for (int c = 0; c < numClasses; c++) {
+                    double value = out.getDouble(outBase + c);
+                    if (value > trueScore || (value == trueScore && c < actual)) {
+                        rank++;
+                    }
+                }
+                ranks[rank]++;
+            }
+        }
+
+        private static INDArray contiguous(INDArray array) {
+            return array.ordering() == 'c' && !array.isView() ? array : array.dup('c');
+        }
+
+        void add(Result other) {
+            for (int i = 0; i < confusion.length; i++) {
+                confusion[i] += other.confusion[i];
+            }
+            for (int i = 0; i < ranks.length; i++) {
+                ranks[i] += other.ranks[i];
+            }
+        }
+
+        public int numClasses() {
+            return numClasses;
+        }
+
+        /** Брой примери от клас actual, предвидени като predicted */
+        public long count(int actual, int predicted) {
+            return confusion[actual * numClasses + predicted];
+        }
+
+        /** Копие на матрицата на объркванията, ред по ред (верен клас x предвиден клас) */
+        public long[] confusionMatrix() {
+            return confusion.clone();
+        }
+
+        public long total() {
+            long total = 0;
+            for (long count : ranks) {
+                total += count;
+            }
+            return total;
+        }
+
+        public double accuracy() {
+            return topK(1);
+        }
+
+        /** Дял на примерите, при които верният клас е сред k-те най-вероятни */
+        public double topK(int k) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("k трябва да е положително: " + k);
+            }
+            long total = total();
+            if (total == 0) {
+                return 0;
+            }
+            long hits = 0;
+            for (int r = 0; r < Math.min(k, numClasses); r++) {
+                hits += ranks[r];
+            }
+            return (double) hits / total;
+        }
+
+        private long truePositives(int c) {
+            return confusion[c * numClasses + c];
+        }
+
+        private long predictedAs(int c) {
+            long sum = 0;
+            for (int a = 0; a < numClasses; a++) {
+                sum += confusion[a * numClasses + c];
+            }
+            return sum;
+        }
+
+        private long actual(int c) {
+            long sum = 0;
+            for (int p = 0; p < numClasses; p++) {
+                sum += confusion[c * numClasses + p];
+            }
+            return sum;
+        }
+
+        /** Прецизност за клас c; NaN, ако класът никога не е предвиден */
+        public double precision(int c) {
+            long predicted = predictedAs(c);
+            return predicted == 0 ? Double.NaN : (double) truePositives(c) / predicted;
+        }
+
+        /** Отзивчивост за клас c; NaN, ако няма примери от класа */
+        public double recall(int c) {
+            long actual = actual(c);
+            return actual == 0 ? Double.NaN : (double) truePositives(c) / actual;
+        }
+
+        /** F1 за клас c; NaN, ако прецизността или отзивчивостта не са определени */
+        public double f1(int c) {
+            long predicted = predictedAs(c);
+            long actual = actual(c);
+            if (predicted == 0 || actual == 0) {
+                return Double.NaN;
+            }
+            return 2.0 * truePositives(c) / (predicted + actual);
+        }
+
+        public double precision() {
+            return macro(0);
+        }
+
+        public double recall() {
+            return macro(1);
+        }
+
+        public double f1() {
+            return macro(2);
+        }
+
+        private double macro(int metric) {
+            double sum = 0;
+            int classes = 0;
+            for (int c = 0; c < numClasses; c++) {
+                double value = metric == 0 ? precision(c) : metric == 1 ? recall(c) : f1(c);
+                if (!Double.isNaN(value)) {
+                    sum += value;
+                    classes++;
+                }
+            }
+            return classes == 0 ? 0 : sum / classes;
+        }
+
+        /** Метриките по класове и матрицата на объркванията като текст */
+        public String stats() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Клас  Прецизност  Отзивчивост      F1  Примери\n");
+            for (int c = 0; c < numClasses; c++) {
+                sb.append(String.format(Locale.ROOT, "%4d  %10.4f  %11.4f  %6.4f  %7d%n",
+                        c, precision(c), recall(c), f1(c), actual(c)));
+            }
+            sb.append("Матрица на объркванията (ред - верен клас, колона - предвиден):\n");
+            for (int a = 0; a < numClasses; a++) {
+                for (int p = 0; p < numClasses; p++) {
+                    sb.append(String.format(Locale.ROOT, "%6d", count(a, p)));
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
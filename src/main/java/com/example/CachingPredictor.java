@@ -0,0 +1,214 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * Кеш пред FlexibleNeuralNetwork.predict за повтарящи се или почти еднакви входове.
+ *
+ * Входът се закръгля до решетка със стъпка step и за ключ се използват двата
+ * цели индекса, събрани в един long. Предвиждането се прави в центъра на
+ * клетката, така че резултатът не зависи от това коя точка от клетката е
+ * дошла първа. Всички точки в една клетка получават един и същ клас.
+ *
+ * Таблицата е с отворено адресиране (линейно пробване) върху плоски масиви
+ * long[] и byte[] - без обект за всеки запис, така че може да се пренесе и в
+ * памет извън heap-а. Размерът е ограничен до capacity записа. При пълна таблица
+ * се изхвърля запис по алгоритъма CLOCK: стрелката обикаля клетките, нулира
+ * бита "използван" и изхвърля първия запис без него.
+ *
+ * Кешът се изчиства автоматично, когато версията на параметрите на мрежата
+ * (FlexibleNeuralNetwork.getParametersVersion) се промени - тя следи и броя
+ * итерации на мрежата, така че и onlineLearner() изчиства кеша. Методите са
+ * synchronized - самата мрежа не е thread-safe.
+ */
+public class CachingPredictor {
+
+    /** Празна клетка; индексите се ограничават така, че да не дават този ключ */
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long LIMIT = Integer.MAX_VALUE;
+
+    private final FlexibleNeuralNetwork network;
+    private final double step;
+    private final int capacity;
+    private final int mask;
+
+    private final long[] keys;
+    private final byte[] classes;
+    private final boolean[] referenced;
+    private int size;
+    private int hand;
+    private long version;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param network мрежата, чиито предвиждания се кешират
+     * @param step стъпка на решетката; входове в една клетка се смятат за еднакви
+     * @param capacity най-много записи в кеша
+     */
+    public CachingPredictor(FlexibleNeuralNetwork network, double step, int capacity) {
+        if (!(step > 0) || Double.isInfinite(step)) {
+            throw new IllegalArgumentException("Стъпката трябва да е положително число: " + step);
+        }
+        if (capacity <= 0 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("capacity трябва да е между 1 и 2^29: " + capacity);
+        }
+        this.network = network;
+        this.step = step;
+        this.capacity = capacity;
+
+        // Запълване най-много 50%, за да са пробванията кратки
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.keys = new long[tableSize];
+        this.classes = new byte[tableSize];
+        this.referenced = new boolean[tableSize];
+        Arrays.fill(keys, EMPTY);
+        this.version = network.getParametersVersion();
+    }
+
+    /**
+     * Класът (0 или 1) за входа, закръглен до решетката
+     */
+    public synchronized int predict(double x1, double x2) {
+        long current = network.getParametersVersion();
+        if (current != version) {
+            clear();
+            version = current;
+            invalidations++;
+        }
+
+        long q1 = quantize(x1);
+        long q2 = quantize(x2);
+        long key = (q1 << 32) | (q2 & 0xffffffffL);
+        int slot = find(key);
+        if (keys[slot] == key) {
+            hits++;
+            referenced[slot] = true;
+            return classes[slot];
+        }
+
+        misses++;
+        int predicted = network.predict(q1 * step, q2 * step);
+        if (size == capacity) {
+            evict();
+            slot = find(key);
+        }
+        keys[slot] = key;
+        classes[slot] = (byte) predicted;
+        // Нов запис започва без бит, за да не измести вече използваните
+        referenced[slot] = false;
+        size++;
+        return predicted;
+    }
+
+    private long quantize(double x) {
+        if (Double.isNaN(x)) {
+            throw new IllegalArgumentException("Входът не може да е NaN");
+        }
+        return Math.max(-LIMIT, Math.min(LIMIT, Math.round(x / step)));
+    }
+
+    /** Клетката с key или първата празна клетка по пътя на пробването */
+    private int find(long key) {
+        int slot = hash(key);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void evict() {
+        while (true) {
+            if (keys[hand] != EMPTY) {
+                if (!referenced[hand]) {
+                    remove(hand);
+                    evictions++;
+                    return;
+                }
+                referenced[hand] = false;
+            }
+            hand = (hand + 1) & mask;
+        }
+    }
+
+    /**
+     * Изтриване с обратно преместване: следващите записи от същата верига се
+     * местят назад, така че търсенето да не спира на дупка
+     */
+    private void remove(int slot) {
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]);
+            // Записът в next може да се премести в free, ако free е между home и next
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                classes[free] = classes[next];
+                referenced[free] = referenced[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = EMPTY;
+        referenced[free] = false;
+        size--;
+    }
+
+    /** Изчиства записите; броячите се запазват */
+    public synchronized void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(referenced, false);
+        size = 0;
+        hand = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Колко пъти кешът е изчистен заради нови параметри на мрежата */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /** Дял на заявките, обслужени от кеша */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits=%d misses=%d hitRate=%.1f%% size=%d/%d evictions=%d invalidations=%d",
+                hits, misses, getHitRate() * 100, size, capacity, evictions, invalidations);
+    }
+}
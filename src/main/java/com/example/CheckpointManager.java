@@ -0,0 +1,363 @@
+package com.example;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Бързи контролни точки (checkpoints) на MultiLayerNetwork в суров двоичен формат.
+ *
+ * Файлът съдържа малък заглавен блок, JSON конфигурацията на мрежата и плоските
+ * масиви с параметрите и състоянието на updater-а, подравнени на 64 байта и
+ * записани в нативния ред на байтовете. За разлика от ModelSerializer няма zip
+ * компресия и няма междинни копия - при запис се записва директно нативният буфер,
+ * а при зареждане файлът се map-ва в паметта и се копира в изгледа с параметрите.
+ *
+ * save() копира параметрите на извикващата нишка и записва файла във фонова нишка.
+ * Първата грешка при фонов запис се хвърля отново от close().
+ * Пазят се последните keepLast контролни точки и всяка keepEvery-та (0 = никоя).
+ */
+public class CheckpointManager implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckpointManager.class);
+
+    private static final long MAGIC = 0x444C344A434B5054L; // "DL4JCKPT"
+    private static final int VERSION = 2;
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final int ALIGNMENT = 64;
+    private static final int HEADER_SIZE = 64;
+    /** Версия 1 пази типа на данните като ordinal() на DataType */
+    private static final int VERSION_ORDINAL = 1;
+    private static final int DATA_TYPE_OFFSET = 52;
+    private static final int DATA_TYPE_LENGTH = HEADER_SIZE - DATA_TYPE_OFFSET;
+
+    private static final Pattern FILE_NAME = Pattern.compile("checkpoint-(\\d+)\\.bin");
+
+    private final Path directory;
+    private final int keepLast;
+    private final int keepEvery;
+    private final ExecutorService writer;
+    private long nextSequence;
+    private final AtomicReference<Throwable> writeError = new AtomicReference<>();
+
+    public CheckpointManager(Path directory, int keepLast) throws IOException {
+        this(directory, keepLast, 0);
+    }
+
+    /**
+     * @param directory директория за контролните точки
+     * @param keepLast колко от последните контролни точки да се пазят
+     * @param keepEvery пази и всяка keepEvery-та контролна точка; 0 - не пази допълнителни
+     */
+    public CheckpointManager(Path directory, int keepLast, int keepEvery) throws IOException {
+        if (keepLast <= 0) {
+            throw new IllegalArgumentException("keepLast трябва да е положително: " + keepLast);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.keepLast = keepLast;
+        this.keepEvery = keepEvery;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Long> existing = sequences();
+        this.nextSequence = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+    }
+
+    /**
+     * Копира параметрите и състоянието на updater-а и ги записва във фонов режим.
+     * Мрежата може да продължи да се тренира веднага след връщането.
+     */
+    public CompletableFuture<Path> save(MultiLayerNetwork model) {
+        INDArray params = model.params().dup();
+        INDArray state = model.getUpdater() == null ? null : model.getUpdater().getStateViewArray();
+        INDArray updaterState = state == null ? null : state.dup();
+        MultiLayerConfiguration conf = model.getLayerWiseConfigurations();
+        byte[] json = conf.toJson().getBytes(StandardCharsets.UTF_8);
+        long iteration = conf.getIterationCount();
+        int epoch = conf.getEpochCount();
+
+        Path target = directory.resolve("checkpoint-" + nextSequence++ + ".bin");
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+                write(tmp, json, params, updaterState, iteration, epoch);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                applyRetention();
+                log.info("Записана контролна точка {}", target);
+                return target;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Грешка при запис на " + target, e);
+            }
+        }, writer).whenComplete((path, error) -> {
+            if (error != null) {
+                writeError.compareAndSet(null, error.getCause() != null ? error.getCause() : error);
+            }
+        });
+    }
+
+    /**
+     * Записва контролна точка синхронно, без ротация
+     */
+    public static void write(MultiLayerNetwork model, Path file) throws IOException {
+        INDArray state = model.getUpdater() == null ? null : model.getUpdater().getStateViewArray();
+        MultiLayerConfiguration conf = model.getLayerWiseConfigurations();
+        write(file, conf.toJson().getBytes(StandardCharsets.UTF_8), model.params(), state,
+                conf.getIterationCount(), conf.getEpochCount());
+    }
+
+    private static void write(Path file, byte[] json, INDArray params, INDArray updaterState,
+                              long iteration, int epoch) throws IOException {
+        long paramsOffset = align(HEADER_SIZE + json.length);
+        long paramsBytes = params.length() * params.dataType().width();
+        long updaterOffset = align(paramsOffset + paramsBytes);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putLong(MAGIC)
+                .putInt(VERSION)
+                .putInt(BYTE_ORDER_MARK)
+                .putInt(0) // бивш ordinal() на типа, виж DATA_TYPE_OFFSET
+                .putInt(json.length)
+                .putLong(params.length())
+                .putLong(updaterState == null ? 0 : updaterState.length())
+                .putLong(iteration)
+                .putInt(epoch);
+        // Типът се пази по име - ordinal() се променя при добавяне на типове в ND4J
+        byte[] dataType = params.dataType().name().getBytes(StandardCharsets.US_ASCII);
+        if (dataType.length > DATA_TYPE_LENGTH) {
+            throw new IOException("Твърде дълго име на тип: " + params.dataType());
+        }
+        header.position(DATA_TYPE_OFFSET);
+        header.put(dataType);
+        header.clear();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            writeFully(channel, ByteBuffer.wrap(json), HEADER_SIZE);
+            writeFully(channel, rawBytes(params), paramsOffset);
+            if (updaterState != null) {
+                writeFully(channel, rawBytes(updaterState), updaterOffset);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Нативните байтове на непрекъснат масив, без копиране
+     */
+    private static ByteBuffer rawBytes(INDArray array) {
+        if (array.isView() && array.length() != array.data().length()) {
+            array = array.dup();
+        }
+        int width = array.dataType().width();
+        ByteBuffer bytes = array.data().asNio().duplicate();
+        bytes.position((int) (array.offset() * width));
+        bytes.limit((int) ((array.offset() + array.length()) * width));
+        return bytes.slice();
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Зарежда мрежа от контролна точка - конфигурация, параметри и (по желание)
+     * състоянието на updater-а. Параметрите се копират директно от map-натия файл.
+     */
+    public static MultiLayerNetwork restore(Path file, boolean loadUpdater) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.nativeOrder());
+            Header header = Header.read(mapped, file);
+
+            byte[] json = new byte[header.jsonLength];
+            mapped.position(HEADER_SIZE);
+            mapped.get(json);
+            MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(new String(json, StandardCharsets.UTF_8));
+            conf.setIterationCount((int) header.iteration);
+            conf.setEpochCount(header.epoch);
+
+            // init с готов масив не инициализира теглата случайно - директно се копират от файла
+            INDArray params = Nd4j.createUninitialized(header.dataType, 1, header.paramsLength);
+            copy(mapped, header.paramsOffset, params);
+            MultiLayerNetwork model = new MultiLayerNetwork(conf);
+            model.init(params, false);
+
+            if (loadUpdater && header.updaterLength > 0) {
+                copy(mapped, header.updaterOffset(), model.getUpdater().getStateViewArray());
+            }
+            return model;
+        }
+    }
+
+    /**
+     * Копира параметрите от контролна точка в съществуваща мрежа със същата архитектура
+     */
+    public static void restoreInto(MultiLayerNetwork model, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.nativeOrder());
+            Header header = Header.read(mapped, file);
+            if (header.paramsLength != model.numParams() || header.dataType != model.params().dataType()) {
+                throw new IOException("Контролната точка " + file + " (" + header.paramsLength + " "
+                        + header.dataType + ") не съответства на мрежата (" + model.numParams() + " "
+                        + model.params().dataType() + ")");
+            }
+            copy(mapped, header.paramsOffset, model.params());
+        }
+    }
+
+    private static void copy(MappedByteBuffer mapped, long offset, INDArray target) {
+        ByteBuffer source = mapped.duplicate();
+        source.position((int) offset);
+        source.limit((int) (offset + target.length() * target.dataType().width()));
+
+        ByteBuffer destination = target.data().asNio().duplicate();
+        destination.position((int) (target.offset() * target.dataType().width()));
+        destination.put(source);
+    }
+
+    /** Най-новата запазена контролна точка */
+    public Optional<Path> latest() throws IOException {
+        List<Long> existing = sequences();
+        return existing.isEmpty()
+                ? Optional.empty()
+                : Optional.of(directory.resolve("checkpoint-" + existing.get(existing.size() - 1) + ".bin"));
+    }
+
+    private List<Long> sequences() throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(f -> {
+                Matcher matcher = FILE_NAME.matcher(f.getFileName().toString());
+                if (matcher.matches()) {
+                    result.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private void applyRetention() throws IOException {
+        List<Long> existing = sequences();
+        for (int i = 0; i < existing.size() - keepLast; i++) {
+            long sequence = existing.get(i);
+            if (keepEvery > 0 && sequence % keepEvery == 0) {
+                continue;
+            }
+            Files.deleteIfExists(directory.resolve("checkpoint-" + sequence + ".bin"));
+        }
+    }
+
+    /**
+     * Изчаква записването на всички поискани контролни точки и хвърля първата
+     * грешка при фонов запис, ако е имало такава.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable error = writeError.get();
+        if (error instanceof UncheckedIOException) {
+            throw (UncheckedIOException) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Неуспешен запис на контролна точка в " + directory, error);
+        }
+    }
+
+    private static final class Header {
+        DataType dataType;
+        int jsonLength;
+        long paramsLength;
+        long updaterLength;
+        long iteration;
+        int epoch;
+        long paramsOffset;
+
+        long updaterOffset() {
+            return align(paramsOffset + paramsLength * dataType.width());
+        }
+
+        static Header read(ByteBuffer buffer, Path file) throws IOException {
+            if (buffer.getLong(0) != MAGIC) {
+                throw new IOException("Файлът не е контролна точка: " + file);
+            }
+            int version = buffer.getInt(8);
+            if (version != VERSION && version != VERSION_ORDINAL) {
+                throw new IOException("Неподдържана версия " + version + " на " + file);
+            }
+            if (buffer.getInt(12) != BYTE_ORDER_MARK) {
+                throw new IOException("Контролната точка " + file + " е записана с друг ред на байтовете");
+            }
+            Header header = new Header();
+            header.dataType = version == VERSION_ORDINAL
+                    ? DataType.values()[buffer.getInt(16)]
+                    : dataType(buffer, file);
+            header.jsonLength = buffer.getInt(20);
+            header.paramsLength = buffer.getLong(24);
+            header.updaterLength = buffer.getLong(32);
+            header.iteration = buffer.getLong(40);
+            header.epoch = buffer.getInt(48);
+            header.paramsOffset = align(HEADER_SIZE + header.jsonLength);
+            return header;
+        }
+
+        private static DataType dataType(ByteBuffer buffer, Path file) throws IOException {
+            byte[] name = new byte[DATA_TYPE_LENGTH];
+            int length = 0;
+            while (length < DATA_TYPE_LENGTH && buffer.get(DATA_TYPE_OFFSET + length) != 0) {
+                name[length] = buffer.get(DATA_TYPE_OFFSET + length);
+                length++;
+            }
+            String value = new String(name, 0, length, StandardCharsets.US_ASCII);
+            try {
+                return DataType.valueOf(value);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Непознат тип на данните '" + value + "' в " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.example;
+
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationReLU;
+import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Тренирана мрежа от DenseLayer и OutputLayer, "компилирана" до плосък double[] масив
+ * с всички тегла и изчислявана изцяло в Java, без извиквания към ND4J.
+ *
+ * За малки мрежи като XOR (2 -> N -> 2) нативното извикване на model.output струва
+ * много повече от самата математика. Теглата на всеки слой се пазят транспонирани
+ * ([nOut][nIn], ред по ред), последвани от bias - така вътрешният цикъл на forward
+ * pass-а чете паметта последователно.
+ *
+ * Теглата са непроменими след компилацията. output(input, output, scratch) е
+ * thread-safe, ако всяка нишка подава собствен scratch буфер.
+ */
+public class CompiledDenseNetwork {
+
+    /** Поддържани функции на активация */
+    public enum Kind {
+        IDENTITY, SIGMOID, RELU, TANH, SOFTMAX
+    }
+
+    private final double[] params;
+    private final int[] nIn;
+    private final int[] nOut;
+    private final int[] offsets;
+    private final Kind[] activations;
+    private final int maxWidth;
+    private final double[] scratch;
+    private final double[] result;
+
+    private CompiledDenseNetwork(double[] params, int[] nIn, int[] nOut, int[] offsets, Kind[] activations) {
+        this.params = params;
+        this.nIn = nIn;
+        this.nOut = nOut;
+        this.offsets = offsets;
+        this.activations = activations;
+
+        int width = 0;
+        for (int l = 0; l < nOut.length; l++) {
+            width = Math.max(width, Math.max(nIn[l], nOut[l]));
+        }
+        this.maxWidth = width;
+        this.scratch = newScratch();
+        this.result = new double[nOut[nOut.length - 1]];
+    }
+
+    /**
+     * Копира теглата на мрежата. Поддържат се само DenseLayer и OutputLayer с
+     * активации IDENTITY, SIGMOID, RELU, TANH и SOFTMAX. Слой без bias
+     * (hasBias(false)) се компилира с нулев bias.
+     *
+     * @throws IllegalArgumentException ако мрежата съдържа друг слой или активация
+     */
+    public static CompiledDenseNetwork compile(MultiLayerNetwork model) {
+        int layers = model.getnLayers();
+        int[] nIn = new int[layers];
+        int[] nOut = new int[layers];
+        int[] offsets = new int[layers];
+        Kind[] activations = new Kind[layers];
+
+        int size = 0;
+        for (int l = 0; l < layers; l++) {
+            activations[l] = kindOf(denseLayer(model, l).getActivationFn(), l);
+            nIn[l] = model.layerInputSize(l);
+            nOut[l] = model.layerSize(l);
+            offsets[l] = size;
+            size += nIn[l] * nOut[l] + nOut[l];
+        }
+
+        double[] params = new double[size];
+        for (int l = 0; l < layers; l++) {
+            INDArray w = model.getLayer(l).getParam("W");
+            INDArray b = model.getLayer(l).getParam("b");
+            int p = offsets[l];
+            for (int o = 0; o < nOut[l]; o++) {
+                for (int i = 0; i < nIn[l]; i++) {
+                    params[p++] = w.getDouble(i, o);
+                }
+            }
+            // Без bias отместванията остават нули
+            if (b != null) {
+                for (int o = 0; o < nOut[l]; o++) {
+                    params[p++] = b.getDouble(o);
+                }
+            }
+        }
+        return new CompiledDenseNetwork(params, nIn, nOut, offsets, activations);
+    }
+
+    /**
+     * Конфигурацията на слой l, ако е DenseLayer или OutputLayer
+     *
+     * @throws IllegalArgumentException за всеки друг слой
+     */
+    static BaseLayer denseLayer(MultiLayerNetwork model, int l) {
+        org.deeplearning4j.nn.conf.layers.Layer conf = model.getLayerWiseConfigurations().getConf(l).getLayer();
+        if (!(conf instanceof DenseLayer) && !(conf instanceof OutputLayer)) {
+            throw new IllegalArgumentException("Слой " + l + " не е DenseLayer или OutputLayer: "
+                    + conf.getClass().getSimpleName());
+        }
+        return (BaseLayer) conf;
+    }
+
+    static Kind kindOf(IActivation fn, int layer) {
+        if (fn instanceof ActivationIdentity) {
+            return Kind.IDENTITY;
+        } else if (fn instanceof ActivationSigmoid) {
+            return Kind.SIGMOID;
+        } else if (fn instanceof ActivationTanH) {
+            return Kind.TANH;
+        } else if (fn instanceof ActivationSoftmax) {
+            return Kind.SOFTMAX;
+        } else if (new ActivationReLU().equals(fn)) {
+            return Kind.RELU;
+        }
+        throw new IllegalArgumentException("Неподдържана активация в слой " + layer + ": " + fn);
+    }
+
+    /** Нов работен буфер за output(input, output, scratch) */
+    public double[] newScratch() {
+        return new double[2 * maxWidth];
+    }
+
+    /**
+     * Forward pass с вътрешния работен буфер. Не е thread-safe.
+     */
+    public void output(double[] input, double[] output) {
+        output(input, output, scratch);
+    }
+
+    /**
+     * Forward pass без заделяне на памет.
+     *
+     * @param input вход с дължина numInputs()
+     * @param output масив с дължина поне numOutputs(), в който се записва резултатът
+     * @param scratch работен буфер, получен от newScratch()
+     */
+    public void output(double[] input, double[] output, double[] scratch) {
+        int layers = nOut.length;
+        double[] in = input;
+        int inBase = 0;
+
+        for (int l = 0; l < layers; l++) {
+            boolean last = l == layers - 1;
+            double[] out = last ? output : scratch;
+            int outBase = last ? 0 : (l % 2 == 0 ? 0 : maxWidth);
+
+            int inputs = nIn[l];
+            int outputs = nOut[l];
+            int w = offsets[l];
+            int b = w + inputs * outputs;
+
+            for (int o = 0; o < outputs; o++) {
+                double sum = params[b + o];
+                int row = w + o * inputs;
+                for (int i = 0; i < inputs; i++) {
+                    sum += params[row + i] * in[inBase + i];
+                }
+                out[outBase + o] = sum;
+            }
+            activate(activations[l], out, outBase, outputs);
+
+            in = out;
+            inBase = outBase;
+        }
+    }
+
+    static void activate(Kind kind, double[] x, int from, int length) {
+        int to = from + length;
+        switch (kind) {
+            case IDENTITY:
+                break;
+            case SIGMOID:
+                for (int k = from; k < to; k++) {
+                    x[k] = 1.0 / (1.0 + Math.exp(-x[k]));
+                }
+                break;
+            case RELU:
+                for (int k = from; k < to; k++) {
+                    x[k] = Math.max(0.0, x[k]);
+                }
+                break;
+            case TANH:
+                for (int k = from; k < to; k++) {
+                    x[k] = Math.tanh(x[k]);
+                }
+                break;
+            case SOFTMAX:
+                double max = Double.NEGATIVE_INFINITY;
+                for (int k = from; k < to; k++) {
+                    max = Math.max(max, x[k]);
+                }
+                double sum = 0;
+                for (int k = from; k < to; k++) {
+                    x[k] = Math.exp(x[k] - max);
+                    sum += x[k];
+                }
+                for (int k = from; k < to; k++) {
+                    x[k] /= sum;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Неизвестна активация: " + kind);
+        }
+    }
+
+    /**
+     * Като FlexibleNeuralNetwork.predict - връща индекса на най-вероятния изход.
+     * При равенство печели по-големият индекс. Не е thread-safe.
+     */
+    public int predict(double... input) {
+        output(input, result, scratch);
+        int best = 0;
+        for (int c = 1; c < result.length; c++) {
+            if (result[c] >= result[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    public int numInputs() {
+        return nIn[0];
+    }
+
+    public int numOutputs() {
+        return nOut[nOut.length - 1];
+    }
+
+    public int numLayers() {
+        return nOut.length;
+    }
+
+    public Kind activation(int layer) {
+        return activations[layer];
+    }
+
+    /** Брой тегла и bias стойности общо */
+    public int numParams() {
+        return params.length;
+    }
+}
@@ -0,0 +1,352 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.schedule.ISchedule;
+import org.nd4j.linalg.schedule.ScheduleType;
+import org.nd4j.linalg.schedule.StepSchedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Спира тренировката, когато валидационната метрика престане да се подобрява.
+ *
+ * След всяка проверка (епоха или група итерации) се подава стойността на метриката
+ * с update(). Ако за patience поредни проверки тя не се е подобрила с поне minDelta
+ * спрямо най-добрата, update() връща true. Контролерът отбелязва и кога метриката
+ * за първи път е достигнала target - времето до целта е основното сравнение с
+ * тренировка с фиксиран брой епохи.
+ *
+ * Графиците на скоростта на обучение (step, cosine, warmup) се прилагат с
+ * MultiLayerNetwork.setLearningRate(ISchedule) и работят с Nesterovs, Adam и Sgd.
+ */
+public class ConvergenceController {
+
+    private static final Logger log = LoggerFactory.getLogger(ConvergenceController.class);
+
+    /** Без спиране - за измерване на базовата тренировка */
+    public static final int NO_PATIENCE = Integer.MAX_VALUE;
+
+    public static final String SCHEDULE_PROPERTY = "lr.schedule";
+    public static final String PATIENCE_PROPERTY = "early.stopping.patience";
+
+    public enum Goal { MAXIMIZE, MINIMIZE }
+
+    private final Goal goal;
+    private final int patience;
+    private final double minDelta;
+    private final double target;
+
+    private long startNanos;
+    private int checks;
+    private int checksWithoutImprovement;
+    private int lastEpoch;
+    private int bestEpoch;
+    private double best;
+    private double last;
+    private long timeToTargetNanos;
+    private int epochToTarget;
+    private long elapsedNanos;
+    private boolean stopped;
+    private INDArray bestParams;
+
+    /**
+     * @param goal дали метриката трябва да расте (точност) или да намалява (загуба)
+     * @param patience колко проверки без подобрение се търпят преди спиране
+     * @param minDelta минималната промяна, която се брои за подобрение
+     * @param target целева стойност за времето до целта; Double.NaN за без цел
+     */
+    public ConvergenceController(Goal goal, int patience, double minDelta, double target) {
+        if (patience <= 0) {
+            throw new IllegalArgumentException("patience трябва да е положително: " + patience);
+        }
+        if (minDelta < 0) {
+            throw new IllegalArgumentException("minDelta не може да е отрицателно: " + minDelta);
+        }
+        this.goal = goal;
+        this.patience = patience;
+        this.minDelta = minDelta;
+        this.target = target;
+        start();
+    }
+
+    /**
+     * Нулира състоянието и започва отчитането на времето
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+        checks = 0;
+        checksWithoutImprovement = 0;
+        lastEpoch = 0;
+        bestEpoch = 0;
+        best = goal == Goal.MAXIMIZE ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        last = Double.NaN;
+        timeToTargetNanos = -1;
+        epochToTarget = -1;
+        elapsedNanos = 0;
+        stopped = false;
+        bestParams = null;
+    }
+
+    /**
+     * Записва стойността на метриката след епоха epoch.
+     *
+     * @return true, ако тренировката трябва да спре
+     */
+    public boolean update(int epoch, double metric) {
+        return update((INDArray) null, epoch, metric);
+    }
+
+    /**
+     * Като update(epoch, metric), но при подобрение запазва копие на параметрите на
+     * мрежата, което restoreBest() връща. Метриката трябва да е изчислена с текущите параметри.
+     */
+    public boolean update(MultiLayerNetwork model, int epoch, double metric) {
+        return update(model != null ? model.params() : null, epoch, metric);
+    }
+
+    /**
+     * Като update(model, epoch, metric), но с параметри, запазени по-рано - например
+     * когато метриката е изчислена асинхронно, докато тренировката е продължила
+     */
+    public boolean update(INDArray params, int epoch, double metric) {
+        elapsedNanos = System.nanoTime() - startNanos;
+        checks++;
+        lastEpoch = epoch;
+        last = metric;
+
+        if (timeToTargetNanos < 0 && reached(metric)) {
+            timeToTargetNanos = elapsedNanos;
+            epochToTarget = epoch;
+        }
+        if (improves(metric)) {
+            best = metric;
+            bestEpoch = epoch;
+            checksWithoutImprovement = 0;
+            if (params != null) {
+                bestParams = params.dup();
+            }
+        } else {
+            checksWithoutImprovement++;
+        }
+        // Веднъж спряна, тренировката остава спряна - update след спирането само
+        // допълва оценката на последния епох
+        stopped = stopped || checksWithoutImprovement >= patience;
+        return stopped;
+    }
+
+    private boolean improves(double metric) {
+        if (Double.isNaN(metric)) {
+            return false;
+        }
+        if (checks == 1) {
+            return true;
+        }
+        return goal == Goal.MAXIMIZE ? metric > best + minDelta : metric < best - minDelta;
+    }
+
+    private boolean reached(double metric) {
+        if (Double.isNaN(target)) {
+            return false;
+        }
+        return goal == Goal.MAXIMIZE ? metric >= target : metric <= target;
+    }
+
+    /**
+     * Връща параметрите от най-добрата проверка, ако са запазени
+     *
+     * @return true, ако параметрите са възстановени
+     */
+    public boolean restoreBest(MultiLayerNetwork model) {
+        if (bestParams == null) {
+            return false;
+        }
+        model.setParams(bestParams);
+        return true;
+    }
+
+    /**
+     * Тренира по една епоха, докато метриката не спре да се подобрява или не се
+     * изчерпат maxEpochs. Накрая мрежата се връща към най-добрите параметри.
+     *
+     * @param validation изчислява метриката върху валидационните данни
+     * @return броят изпълнени епохи
+     */
+    public int fit(MultiLayerNetwork model, DataSetIterator train, int maxEpochs,
+                   ToDoubleFunction<MultiLayerNetwork> validation) {
+        start();
+        int epoch = 0;
+        while (epoch < maxEpochs) {
+            model.fit(train);
+            train.reset();
+            epoch++;
+            double metric = validation.applyAsDouble(model);
+            log.info("Епоха {}: метрика {}", epoch, metric);
+            if (update(model, epoch, metric)) {
+                break;
+            }
+        }
+        restoreBest(model);
+        return epoch;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public double getBest() {
+        return best;
+    }
+
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+
+    public double getLast() {
+        return last;
+    }
+
+    public int getLastEpoch() {
+        return lastEpoch;
+    }
+
+    /** Време от start() до първото достигане на целта; -1, ако не е достигната */
+    public long getTimeToTargetNanos() {
+        return timeToTargetNanos;
+    }
+
+    /** Епохата, в която целта е достигната за първи път; -1, ако не е достигната */
+    public int getEpochToTarget() {
+        return epochToTarget;
+    }
+
+    /** Време от start() до последния update() */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public String report() {
+        String toTarget = timeToTargetNanos < 0 ? "не е достигната"
+                : String.format(Locale.ROOT, "на епоха %d за %d ms", epochToTarget, timeToTargetNanos / 1_000_000);
+        return String.format(Locale.ROOT, "%d епохи за %d ms%s, най-добро %.4f на епоха %d, цел %s",
+                lastEpoch, elapsedNanos / 1_000_000, stopped ? " (ранно спиране)" : "", best, bestEpoch, toTarget);
+    }
+
+    /** Стъпково намаляване: скоростта се умножава по decay на всеки stepEpochs епохи */
+    public static ISchedule stepSchedule(double initial, double decay, int stepEpochs) {
+        return new StepSchedule(ScheduleType.EPOCH, initial, decay, stepEpochs);
+    }
+
+    /** Косинусово намаляване до minValue за totalIterations итерации */
+    public static ISchedule cosineSchedule(double initial, double minValue, int totalIterations) {
+        return new CosineSchedule(ScheduleType.ITERATION, initial, minValue, totalIterations);
+    }
+
+    /** Линейно загряване през първите warmupIterations итерации, след това schedule */
+    public static ISchedule warmup(ISchedule schedule, int warmupIterations) {
+        return new WarmupSchedule(schedule, warmupIterations);
+    }
+
+    /**
+     * График по име: none, step, cosine или warmup-cosine. Cosine стига до 1% от
+     * началната скорост в края на тренировката, а загряването е една десета от първата епоха.
+     *
+     * @return null за none
+     */
+    public static ISchedule schedule(String name, double initial, int iterationsPerEpoch, int epochs) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "none":
+                return null;
+            case "step":
+                return stepSchedule(initial, 0.5, Math.max(1, epochs / 3));
+            case "cosine":
+                return cosineSchedule(initial, initial / 100, iterationsPerEpoch * epochs);
+            case "warmup-cosine":
+                return warmup(cosineSchedule(initial, initial / 100, iterationsPerEpoch * epochs),
+                        Math.max(1, iterationsPerEpoch / 10));
+            default:
+                throw new IllegalArgumentException("Непознат график: " + name + " (очаква се none, step, cosine или warmup-cosine)");
+        }
+    }
+
+    /**
+     * Сравнява XOR тренировка с фиксиран брой итерации (базова) с ранно спиране и
+     * warmup-cosine график. Аргументи: [xor|mnist]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("mnist")) {
+            compareMnist();
+        } else {
+            compareXor();
+        }
+    }
+
+    private static void compareXor() {
+        int maxIterations = 1000;
+        int checkEvery = 25;
+        double targetLoss = 0.1;
+
+        // Загряване на JIT, за да не се отчита само в базовата тренировка
+        FlexibleNeuralNetwork warmup = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        for (int i = 0; i < 8; i++) {
+            warmup.fit(checkEvery);
+            warmup.score();
+        }
+
+        FlexibleNeuralNetwork baseline = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        ConvergenceController fixed = new ConvergenceController(Goal.MINIMIZE, NO_PATIENCE, 0, targetLoss);
+        baseline.train(fixed, maxIterations, checkEvery);
+
+        FlexibleNeuralNetwork controlled = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        controlled.getModel().setLearningRate(warmup(cosineSchedule(0.1, 0.001, maxIterations), 50));
+        ConvergenceController early = new ConvergenceController(Goal.MINIMIZE, 4, 1e-3, targetLoss);
+        controlled.train(early, maxIterations, checkEvery);
+
+        log.info("XOR базова: {}, точност {}", fixed.report(), baseline.accuracy());
+        log.info("XOR с контролер: {}, точност {}", early.report(), controlled.accuracy());
+        logImprovement(fixed, early);
+    }
+
+    private static void compareMnist() throws IOException {
+        int epochs = 10;
+        double targetAccuracy = 0.97;
+        DataSetIterator train = MNISTClassifier.createIterator(true);
+        DataSetIterator test = MNISTClassifier.createIterator(false);
+        ToDoubleFunction<MultiLayerNetwork> accuracy = model -> {
+            double value = model.evaluate(test).accuracy();
+            test.reset();
+            return value;
+        };
+
+        MultiLayerNetwork baseline = MNISTClassifier.createModel();
+        ConvergenceController fixed = new ConvergenceController(Goal.MAXIMIZE, NO_PATIENCE, 0, targetAccuracy);
+        fixed.fit(baseline, train, epochs, accuracy);
+
+        MultiLayerNetwork controlled = MNISTClassifier.createModel();
+        int iterationsPerEpoch = MNISTClassifier.batchesPerEpoch(train, true);
+        controlled.setLearningRate(schedule("warmup-cosine", 0.01, iterationsPerEpoch, epochs));
+        ConvergenceController early = new ConvergenceController(Goal.MAXIMIZE, 2, 1e-3, targetAccuracy);
+        early.fit(controlled, train, epochs, accuracy);
+
+        log.info("MNIST базова: {}", fixed.report());
+        log.info("MNIST с контролер: {}", early.report());
+        logImprovement(fixed, early);
+    }
+
+    private static void logImprovement(ConvergenceController baseline, ConvergenceController controlled) {
+        log.info("Обща продължителност: {} ms вместо {} ms ({}x)", controlled.getElapsedNanos() / 1_000_000,
+                baseline.getElapsedNanos() / 1_000_000,
+                String.format(Locale.ROOT, "%.2f", (double) baseline.getElapsedNanos() / controlled.getElapsedNanos()));
+        if (baseline.getTimeToTargetNanos() > 0 && controlled.getTimeToTargetNanos() > 0) {
+            log.info("Време до целта: {} ms вместо {} ms ({}x)", controlled.getTimeToTargetNanos() / 1_000_000,
+                    baseline.getTimeToTargetNanos() / 1_000_000, String.format(Locale.ROOT, "%.2f",
+                            (double) baseline.getTimeToTargetNanos() / controlled.getTimeToTargetNanos()));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example;
+
+import org.nd4j.linalg.schedule.ISchedule;
+import org.nd4j.linalg.schedule.ScheduleType;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+/**
+ * Косинусово намаляване от initialValue до minValue за period итерации или епохи:
+ *
+ *   value(t) = minValue + (initialValue - minValue) * (1 + cos(pi * t / period)) / 2
+ *
+ * След period стойността остава minValue. Сериализира се в JSON конфигурацията на
+ * мрежата заедно с updater-а, така че оцелява при CheckpointManager.restore.
+ */
+public class CosineSchedule implements ISchedule {
+
+    private final ScheduleType scheduleType;
+    private final double initialValue;
+    private final double minValue;
+    private final int period;
+
+    public CosineSchedule(@JsonProperty("scheduleType") ScheduleType scheduleType,
+                          @JsonProperty("initialValue") double initialValue,
+                          @JsonProperty("minValue") double minValue,
+                          @JsonProperty("period") int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Периодът трябва да е положителен: " + period);
+        }
+        this.scheduleType = scheduleType;
+        this.initialValue = initialValue;
+        this.minValue = minValue;
+        this.period = period;
+    }
+
+    @Override
+    public double valueAt(int iteration, int epoch) {
+        int t = scheduleType == ScheduleType.ITERATION ? iteration : epoch;
+        if (t >= period) {
+            return minValue;
+        }
+        return minValue + (initialValue - minValue) * 0.5 * (1 + Math.cos(Math.PI * t / period));
+    }
+
+    @Override
+    public ISchedule clone() {
+        return new CosineSchedule(scheduleType, initialValue, minValue, period);
+    }
+
+    public ScheduleType getScheduleType() {
+        return scheduleType;
+    }
+
+    public double getInitialValue() {
+        return initialValue;
+    }
+
+    public double getMinValue() {
+        return minValue;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    @Override
+    public String toString() {
+        return "CosineSchedule(" + scheduleType + ", " + initialValue + " -> " + minValue + " за " + period + ")";
+    }
+}
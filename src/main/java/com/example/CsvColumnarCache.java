@@ -0,0 +1,658 @@
+package com.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Колонен двоичен кеш на CSV файл с числови признаци и цял етикет (клас).
+ *
+ * build() превръща CSV файла еднократно, с две паралелни минавания:
+ *  1. файлът се разделя на части от около chunkBytes байта по границите на редовете
+ *     и във всяка част се броят редовете;
+ *  2. всяка част се map-ва в паметта и се парсва директно от байтовете, без String
+ *     за всяка стойност, а колоните се записват на точното си място в кеша.
+ * Всяка част изчислява своя RunningStats, а частичните статистики се обединяват.
+ * Паметта зависи от размера на частите и броя нишки, не от размера на файла.
+ *
+ * Кешът съдържа 64-байтов заглавен блок, средната и M2 на всеки признак и след това
+ * колоните (float) и етикетите (int), всяка подравнена на 64 байта и в нативния ред
+ * на байтовете. При следващо стартиране open() само map-ва файла.
+ */
+public class CsvColumnarCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvColumnarCache.class);
+
+    private static final long MAGIC = 0x444C344A43535643L; // "DL4JCSVC"
+    private static final int VERSION = 1;
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final int ALIGNMENT = 64;
+    private static final int HEADER_SIZE = 64;
+    private static final long DEFAULT_CHUNK_BYTES = 16L << 20;
+    private static final int SCAN_BUFFER = 64 * 1024;
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Path file;
+    private final long rows;
+    private final int numFeatures;
+    private final int numClasses;
+    private final RunningStats stats;
+    private final MappedByteBuffer[] columns;
+    private final MappedByteBuffer labels;
+
+    private CsvColumnarCache(Path file, long rows, int numFeatures, int numClasses, RunningStats stats,
+                             MappedByteBuffer[] columns, MappedByteBuffer labels) {
+        this.file = file;
+        this.rows = rows;
+        this.numFeatures = numFeatures;
+        this.numClasses = numClasses;
+        this.stats = stats;
+        this.columns = columns;
+        this.labels = labels;
+    }
+
+    /**
+     * Отваря кеша, ако е създаден от същия CSV файл (размер и време на промяна)
+     * със същите параметри, иначе го създава наново.
+     */
+    public static CsvColumnarCache openOrBuild(Path csv, Path cache, int labelColumn, int numClasses,
+                                               boolean skipHeader, int threads) throws IOException {
+        if (Files.exists(cache)) {
+            try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+                Header header = Header.read(channel, cache);
+                if (header.sourceSize == Files.size(csv)
+                        && header.sourceModified == Files.getLastModifiedTime(csv).toMillis()
+                        && header.labelColumn == labelColumn && header.numClasses == numClasses
+                        && header.skipHeader == skipHeader) {
+                    return open(cache);
+                }
+            } catch (IOException e) {
+                log.warn("Кешът {} е невалиден и ще бъде създаден отново: {}", cache, e.getMessage());
+            }
+        }
+        return build(csv, cache, labelColumn, numClasses, skipHeader, threads);
+    }
+
+    /**
+     * Превръща CSV файла в кеш.
+     *
+     * @param labelColumn индекс на колоната с етикета (0..numClasses-1); останалите са признаци
+     * @param skipHeader дали първият ред е заглавен
+     * @param threads брой нишки за парсване
+     */
+    public static CsvColumnarCache build(Path csv, Path cache, int labelColumn, int numClasses,
+                                         boolean skipHeader, int threads) throws IOException {
+        return build(csv, cache, labelColumn, numClasses, skipHeader, threads, DEFAULT_CHUNK_BYTES);
+    }
+
+    static CsvColumnarCache build(Path csv, Path cache, int labelColumn, int numClasses, boolean skipHeader,
+                                  int threads, long chunkBytes) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Броят нишки трябва да е положителен: " + threads);
+        }
+        if (numClasses <= 0) {
+            throw new IllegalArgumentException("Броят класове трябва да е положителен: " + numClasses);
+        }
+        long start = System.nanoTime();
+        long sourceSize = Files.size(csv);
+        long sourceModified = Files.getLastModifiedTime(csv).toMillis();
+
+        try (FileChannel in = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long dataStart = skipHeader ? nextLine(in, 0) : 0;
+            int totalColumns = countColumns(in, dataStart);
+            if (labelColumn < 0 || labelColumn >= totalColumns) {
+                throw new IllegalArgumentException("Колоната с етикета " + labelColumn + " е извън 0.."
+                        + (totalColumns - 1));
+            }
+            List<long[]> chunks = chunks(in, dataStart, chunkBytes);
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads, parserThreads());
+            try {
+                // 1. Брой редове във всяка част
+                List<Callable<Long>> counting = new ArrayList<>(chunks.size());
+                for (long[] chunk : chunks) {
+                    counting.add(() -> countRows(map(in, chunk)));
+                }
+                long[] firstRow = new long[chunks.size() + 1];
+                List<Future<Long>> counts = executor.invokeAll(counting);
+                for (int i = 0; i < chunks.size(); i++) {
+                    firstRow[i + 1] = firstRow[i] + get(counts.get(i));
+                }
+                long rows = firstRow[chunks.size()];
+                if (rows * Float.BYTES > Integer.MAX_VALUE) {
+                    throw new IOException("Твърде много редове за една колона: " + rows);
+                }
+
+                // 2. Парсване директно в колоните на временен файл
+                Layout layout = new Layout(rows, totalColumns - 1);
+                Path temporary = cache.resolveSibling(cache.getFileName() + ".tmp");
+                RunningStats stats = new RunningStats(layout.features);
+                // Непълен временен файл не трябва да остава при грешка в данните
+                boolean complete = false;
+                try {
+                    try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        List<Callable<RunningStats>> parsing = new ArrayList<>(chunks.size());
+                        for (int i = 0; i < chunks.size(); i++) {
+                            long[] chunk = chunks.get(i);
+                            long first = firstRow[i];
+                            int count = (int) (firstRow[i + 1] - first);
+                            parsing.add(() -> parseChunk(map(in, chunk), first, count, totalColumns, labelColumn,
+                                    numClasses, layout, out));
+                        }
+                        for (Future<RunningStats> part : executor.invokeAll(parsing)) {
+                            stats.merge(get(part));
+                        }
+
+                        ByteBuffer header = ByteBuffer.allocate(layout.dataOffset).order(ByteOrder.nativeOrder());
+                        header.putLong(MAGIC)
+                                .putInt(VERSION)
+                                .putInt(BYTE_ORDER_MARK)
+                                .putLong(rows)
+                                .putInt(layout.features)
+                                .putInt(numClasses)
+                                .putInt(labelColumn)
+                                .putInt(skipHeader ? 1 : 0)
+                                .putLong(sourceSize)
+                                .putLong(sourceModified);
+                        header.position(HEADER_SIZE);
+                        for (int f = 0; f < layout.features; f++) {
+                            header.putDouble(stats.getMean(f)).putDouble(stats.getM2(f));
+                        }
+                        header.clear();
+                        writeFully(out, header, 0);
+                        // Файлът трябва да стигне до края на етикетите, дори да няма редове
+                        writeFully(out, ByteBuffer.allocate(1), layout.end() - 1);
+                        out.force(false);
+                    }
+                    Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    complete = true;
+                } finally {
+                    if (!complete) {
+                        Files.deleteIfExists(temporary);
+                    }
+                }
+                log.info("CSV {} -> кеш {}: {} реда, {} признака, {} части за {} ms", csv.getFileName(),
+                        cache.getFileName(), rows, layout.features, chunks.size(), (System.nanoTime() - start) / 1_000_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Прекъснато парсване на " + csv, e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return open(cache);
+    }
+
+    /**
+     * Отваря създаден кеш - само map-ва колоните
+     */
+    public static CsvColumnarCache open(Path cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            Header header = Header.read(channel, cache);
+            Layout layout = new Layout(header.rows, header.features);
+            if (channel.size() < layout.end()) {
+                throw new IOException("Кешът " + cache + " е непълен: " + channel.size() + " от " + layout.end() + " байта");
+            }
+
+            ByteBuffer statsBuffer = ByteBuffer.allocate(layout.features * 16).order(ByteOrder.nativeOrder());
+            readFully(channel, statsBuffer, HEADER_SIZE);
+            double[] mean = new double[layout.features];
+            double[] m2 = new double[layout.features];
+            for (int f = 0; f < layout.features; f++) {
+                mean[f] = statsBuffer.getDouble(f * 16);
+                m2[f] = statsBuffer.getDouble(f * 16 + 8);
+            }
+
+            MappedByteBuffer[] columns = new MappedByteBuffer[layout.features];
+            for (int f = 0; f < layout.features; f++) {
+                columns[f] = channel.map(FileChannel.MapMode.READ_ONLY, layout.column(f), header.rows * Float.BYTES);
+                columns[f].order(ByteOrder.nativeOrder());
+            }
+            MappedByteBuffer labels = channel.map(FileChannel.MapMode.READ_ONLY, layout.labels(), header.rows * Integer.BYTES);
+            labels.order(ByteOrder.nativeOrder());
+            return new CsvColumnarCache(cache, header.rows, header.features, header.numClasses,
+                    new RunningStats(header.rows, mean, m2), columns, labels);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Прекъснато парсване", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static java.util.concurrent.ThreadFactory parserThreads() {
+        AtomicInteger index = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "csv-parse-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long[] chunk) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+    }
+
+    /**
+     * Началото на следващия ред след позиция position (или края на файла)
+     */
+    private static long nextLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /** Брой колони на първия непразен ред */
+    private static int countColumns(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        while (position < size) {
+            long end = nextLine(channel, position);
+            ByteBuffer line = ByteBuffer.allocate((int) Math.min(end - position, Integer.MAX_VALUE - 8));
+            readFully(channel, line, position);
+            String text = new String(line.array(), StandardCharsets.UTF_8).trim();
+            if (!text.isEmpty()) {
+                int columns = 1;
+                for (int i = 0; i < text.length(); i++) {
+                    if (text.charAt(i) == ',') {
+                        columns++;
+                    }
+                }
+                if (columns < 2) {
+                    throw new IOException("Очакват се поне две колони - признаци и етикет");
+                }
+                return columns;
+            }
+            position = end;
+        }
+        throw new IOException("CSV файлът няма редове с данни");
+    }
+
+    /**
+     * Части от около chunkBytes байта, всяка започваща в началото на ред: {начало, край}
+     */
+    private static List<long[]> chunks(FileChannel channel, long dataStart, long chunkBytes) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        long start = dataStart;
+        while (start < size) {
+            long end = start + chunkBytes >= size ? size : nextLine(channel, start + chunkBytes - 1);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Брой непразни редове в частта
+     */
+    private static long countRows(ByteBuffer chunk) {
+        long rows = 0;
+        boolean content = false;
+        int limit = chunk.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = chunk.get(i);
+            if (b == '\n') {
+                if (content) {
+                    rows++;
+                }
+                content = false;
+            } else if (!isBlank(b)) {
+                content = true;
+            }
+        }
+        return content ? rows + 1 : rows;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Парсва частта и записва признаците и етикетите на редовете first..first+count
+     * в колоните на кеша
+     */
+    private static RunningStats parseChunk(ByteBuffer chunk, long first, int count, int totalColumns, int labelColumn,
+                                           int numClasses, Layout layout, FileChannel out) throws IOException {
+        int features = totalColumns - 1;
+        ByteBuffer[] columns = new ByteBuffer[features];
+        for (int f = 0; f < features; f++) {
+            columns[f] = ByteBuffer.allocate(count * Float.BYTES).order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer labels = ByteBuffer.allocate(count * Integer.BYTES).order(ByteOrder.nativeOrder());
+        RunningStats stats = new RunningStats(features);
+        double[] row = new double[features];
+
+        int limit = chunk.limit();
+        int lineStart = 0;
+        int r = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            boolean content = false;
+            while (lineEnd < limit && chunk.get(lineEnd) != '\n') {
+                content |= !isBlank(chunk.get(lineEnd));
+                lineEnd++;
+            }
+            if (content) {
+                long rowNumber = first + r;
+                int column = 0;
+                int feature = 0;
+                int fieldStart = lineStart;
+                for (int i = lineStart; i <= lineEnd; i++) {
+                    if (i == lineEnd || chunk.get(i) == ',') {
+                        if (column >= totalColumns) {
+                            throw new IOException("Ред " + (rowNumber + 1) + ": повече от " + totalColumns + " колони");
+                        }
+                        double value = parseField(chunk, fieldStart, i, rowNumber, column);
+                        if (column == labelColumn) {
+                            int label = (int) value;
+                            if (label != value || label < 0 || label >= numClasses) {
+                                throw new IOException("Ред " + (rowNumber + 1) + ": етикетът " + value
+                                        + " не е клас между 0 и " + (numClasses - 1));
+                            }
+                            labels.putInt(r * Integer.BYTES, label);
+                        } else {
+                            float stored = (float) value;
+                            columns[feature].putFloat(r * Float.BYTES, stored);
+                            row[feature++] = stored;
+                        }
+                        column++;
+                        fieldStart = i + 1;
+                    }
+                }
+                if (column != totalColumns) {
+                    throw new IOException("Ред " + (rowNumber + 1) + ": " + column + " колони вместо " + totalColumns);
+                }
+                stats.add(row);
+                r++;
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        for (int f = 0; f < features; f++) {
+            writeFully(out, columns[f], layout.column(f) + first * Float.BYTES);
+        }
+        writeFully(out, labels, layout.labels() + first * Integer.BYTES);
+        return stats;
+    }
+
+    private static double parseField(ByteBuffer buffer, int from, int to, long rowNumber, int column) throws IOException {
+        try {
+            return parseNumber(buffer, from, to);
+        } catch (NumberFormatException e) {
+            throw new IOException("Ред " + (rowNumber + 1) + ", колона " + (column + 1) + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Число от байтовете [from, to) без създаване на String. Интервали и кавички
+     * около стойността се пропускат. Числата с до 15 значещи цифри и десетичен
+     * показател до 22 се изчисляват точно с една операция; останалите (и NaN,
+     * Infinity) минават през Double.parseDouble.
+     *
+     * @throws NumberFormatException ако стойността не е число
+     */
+    static double parseNumber(ByteBuffer buffer, int from, int to) {
+        while (from < to && (isBlank(buffer.get(from)) || buffer.get(from) == '"')) {
+            from++;
+        }
+        while (to > from && (isBlank(buffer.get(to - 1)) || buffer.get(to - 1) == '"')) {
+            to--;
+        }
+        if (from == to) {
+            throw new NumberFormatException("празна стойност");
+        }
+
+        int i = from;
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        while (i < to && (b = buffer.get(i)) >= '0' && b <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                digits++;
+            }
+            any = true;
+            i++;
+        }
+        if (i < to && buffer.get(i) == '.') {
+            i++;
+            while (i < to && (b = buffer.get(i)) >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    exponent--;
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    digits++;
+                }
+                any = true;
+                i++;
+            }
+        }
+        if (any && i < to && ((b = buffer.get(i)) == 'e' || b == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && ((b = buffer.get(i)) == '-' || b == '+')) {
+                negativeExponent = b == '-';
+                i++;
+            }
+            int value = 0;
+            boolean exponentDigits = false;
+            while (i < to && (b = buffer.get(i)) >= '0' && b <= '9') {
+                value = Math.min(value * 10 + (b - '0'), 100_000);
+                exponentDigits = true;
+                i++;
+            }
+            if (!exponentDigits) {
+                any = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!any || i != to || digits > 15 || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            return slowParse(buffer, from, to);
+        }
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private static double slowParse(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = buffer.get(from + k);
+        }
+        String text = new String(bytes, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("не е число: \"" + text + "\"");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Неочакван край на файла");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /** Средна и дисперсия на всеки признак върху целия файл */
+    public RunningStats getStats() {
+        return stats;
+    }
+
+    /** Изглед към колоната на признак feature; всеки извикващ получава собствен изглед */
+    public FloatBuffer column(int feature) {
+        return columns[feature].duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /** Изглед към етикетите; всеки извикващ получава собствен изглед */
+    public IntBuffer labels() {
+        return labels.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Отместванията на колоните в кеша
+     */
+    private static final class Layout {
+        final long rows;
+        final int features;
+        final int dataOffset;
+        final long columnBytes;
+
+        Layout(long rows, int features) {
+            this.rows = rows;
+            this.features = features;
+            this.dataOffset = (int) align(HEADER_SIZE + features * 16L);
+            this.columnBytes = align(rows * Float.BYTES);
+        }
+
+        long column(int feature) {
+            return dataOffset + feature * columnBytes;
+        }
+
+        long labels() {
+            return dataOffset + features * columnBytes;
+        }
+
+        long end() {
+            return labels() + Math.max(1, rows * Integer.BYTES);
+        }
+
+        private static long align(long position) {
+            return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        }
+    }
+
+    private static final class Header {
+        long rows;
+        int features;
+        int numClasses;
+        int labelColumn;
+        boolean skipHeader;
+        long sourceSize;
+        long sourceModified;
+
+        static Header read(FileChannel channel, Path file) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            readFully(channel, buffer, 0);
+            if (buffer.getLong(0) != MAGIC) {
+                throw new IOException("Файлът не е CSV кеш: " + file);
+            }
+            if (buffer.getInt(8) != VERSION) {
+                throw new IOException("Неподдържана версия " + buffer.getInt(8) + " на " + file);
+            }
+            if (buffer.getInt(12) != BYTE_ORDER_MARK) {
+                throw new IOException("Кешът " + file + " е записан с друг ред на байтовете");
+            }
+            Header header = new Header();
+            header.rows = buffer.getLong(16);
+            header.features = buffer.getInt(24);
+            header.numClasses = buffer.getInt(28);
+            header.labelColumn = buffer.getInt(32);
+            header.skipHeader = buffer.getInt(36) != 0;
+            header.sourceSize = buffer.getLong(40);
+            header.sourceModified = buffer.getLong(48);
+            return header;
+        }
+    }
+}
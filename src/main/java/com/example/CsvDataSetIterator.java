@@ -0,0 +1,471 @@
+package com.example;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * DataSetIterator върху CsvColumnarCache - пакетите се създават при поискване.
+ *
+ * Признаците се нормализират при копирането като (x - средна) / стандартно
+ * отклонение, със статистиките от кеша; признак с нулево отклонение само се
+ * центрира. Както в IdxMnistDataSetIterator, фонова нишка пълни предварително
+ * заделени буфери, а върнатият DataSet е валиден до следващото извикване на next().
+ * Паметта е prefetch + 2 пакета независимо от размера на файла.
+ *
+ * Разбъркването е по пакети: всяка епоха обхожда пакетите в различен ред, но
+ * примерите в един пакет са последователни редове от файла. Така четенето от
+ * кеша остава последователно и не е нужен масив с индекс за всеки ред.
+ *
+ * next(num) копира редовете в нови масиви и може да взема от няколко готови
+ * пакета. Ако итераторът не се обходи докрай, close() спира фоновата нишка;
+ * след reset() може да се използва отново.
+ */
+public class CsvDataSetIterator implements DataSetIterator, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvDataSetIterator.class);
+
+    private final CsvColumnarCache cache;
+    private final FloatBuffer[] columns;
+    private final IntBuffer labels;
+    private final float[] mean;
+    private final float[] inverseStd;
+    private final int numExamples;
+    private final int numFeatures;
+    private final int numClasses;
+    private final int batchSize;
+    private final int totalBatches;
+    private final boolean shuffle;
+    private final long seed;
+    private final int[] order;
+    private final List<String> labelNames;
+
+    private final Slot[] slots;
+    private final BlockingQueue<Slot> free;
+    private final BlockingQueue<Slot> ready;
+
+    private Thread producer;
+    private volatile Throwable failure;
+    private Slot current;
+    // Прочетени редове от текущия слот (при next(num)) и общо върнати примери
+    private int position;
+    private int consumed;
+    private int epoch;
+    private DataSetPreProcessor preProcessor;
+
+    public CsvDataSetIterator(CsvColumnarCache cache, int batchSize) {
+        this(cache, batchSize, 2, false, 0, DataType.FLOAT);
+    }
+
+    /**
+     * @param cache колонният кеш на CSV файла
+     * @param batchSize брой примери в пакет
+     * @param prefetch колко пакета да се подготвят предварително
+     * @param shuffle дали да се разбърква редът на пакетите във всяка епоха
+     * @param seed семе за разбъркването
+     * @param dataType тип на данните в пакетите
+     */
+    public CsvDataSetIterator(CsvColumnarCache cache, int batchSize, int prefetch,
+                              boolean shuffle, long seed, DataType dataType) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize трябва да е положително: " + batchSize);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch трябва да е положително: " + prefetch);
+        }
+        this.cache = cache;
+        this.numExamples = (int) cache.getRows();
+        this.numFeatures = cache.getNumFeatures();
+        this.numClasses = cache.getNumClasses();
+        this.columns = new FloatBuffer[numFeatures];
+        this.mean = new float[numFeatures];
+        this.inverseStd = new float[numFeatures];
+        RunningStats stats = cache.getStats();
+        for (int f = 0; f < numFeatures; f++) {
+            columns[f] = cache.column(f);
+            mean[f] = (float) stats.getMean(f);
+            double std = stats.getStd(f);
+            inverseStd[f] = std > 0 ? (float) (1 / std) : 1f;
+        }
+        this.labels = cache.labels();
+
+        this.batchSize = batchSize;
+        this.totalBatches = (numExamples + batchSize - 1) / batchSize;
+        this.shuffle = shuffle;
+        this.seed = seed;
+        this.order = new int[totalBatches];
+        for (int b = 0; b < totalBatches; b++) {
+            order[b] = b;
+        }
+        this.labelNames = new ArrayList<>(numClasses);
+        for (int c = 0; c < numClasses; c++) {
+            labelNames.add(String.valueOf(c));
+        }
+
+        int slotCount = prefetch + 2;
+        this.slots = new Slot[slotCount];
+        this.free = new ArrayBlockingQueue<>(slotCount);
+        this.ready = new ArrayBlockingQueue<>(slotCount);
+        for (int s = 0; s < slotCount; s++) {
+            slots[s] = new Slot(Nd4j.create(dataType, batchSize, numFeatures), Nd4j.create(dataType, batchSize, numClasses));
+        }
+        reset();
+    }
+
+    /**
+     * Итератор върху CSV файл; кешът се пази до файла (име.csv.cache) и се
+     * създава отново само ако CSV файлът е променен
+     */
+    public static CsvDataSetIterator fromCsv(Path csv, int labelColumn, int numClasses, boolean skipHeader,
+                                             int batchSize, boolean shuffle, long seed) throws IOException {
+        Path cacheFile = csv.resolveSibling(csv.getFileName() + ".cache");
+        CsvColumnarCache cache = CsvColumnarCache.openOrBuild(csv, cacheFile, labelColumn, numClasses, skipHeader,
+                Runtime.getRuntime().availableProcessors());
+        return new CsvDataSetIterator(cache, batchSize, 2, shuffle, seed, DataType.FLOAT);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return consumed < numExamples;
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (current != null && position > 0 && position < current.dataSet.numExamples()) {
+            // Започнат слот от next(num) - останалото се връща като копие
+            return next(batchSize);
+        }
+        Slot slot = take();
+        position = slot.dataSet.numExamples();
+        consumed += position;
+        if (preProcessor != null) {
+            preProcessor.preProcess(slot.dataSet);
+        }
+        return slot.dataSet;
+    }
+
+    /**
+     * Следващите num примера (или по-малко в края на епохата), копирани в нови масиви
+     */
+    @Override
+    public DataSet next(int num) {
+        if (num <= 0) {
+            throw new IllegalArgumentException("num трябва да е положително: " + num);
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int count = Math.min(num, numExamples - consumed);
+        INDArray features = Nd4j.create(slots[0].features.dataType(), count, numFeatures);
+        INDArray labelsOut = Nd4j.create(slots[0].labels.dataType(), count, numClasses);
+        int copied = 0;
+        while (copied < count) {
+            if (current == null || position == current.dataSet.numExamples()) {
+                take();
+                position = 0;
+            }
+            int rows = Math.min(count - copied, current.dataSet.numExamples() - position);
+            features.get(NDArrayIndex.interval(copied, copied + rows), NDArrayIndex.all())
+                    .assign(current.features.get(NDArrayIndex.interval(position, position + rows), NDArrayIndex.all()));
+            labelsOut.get(NDArrayIndex.interval(copied, copied + rows), NDArrayIndex.all())
+                    .assign(current.labels.get(NDArrayIndex.interval(position, position + rows), NDArrayIndex.all()));
+            position += rows;
+            copied += rows;
+        }
+        consumed += count;
+        DataSet dataSet = new DataSet(features, labelsOut);
+        if (preProcessor != null) {
+            preProcessor.preProcess(dataSet);
+        }
+        return dataSet;
+    }
+
+    /**
+     * Освобождава текущия слот и изчаква следващия готов пакет
+     */
+    private Slot take() {
+        releaseCurrent();
+        Slot slot;
+        try {
+            slot = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прекъснато чакане на пакет", e);
+        }
+        if (slot.dataSet == null) {
+            throw new IllegalStateException("Грешка при четене на CSV пакет", failure);
+        }
+        current = slot;
+        return slot;
+    }
+
+    private void releaseCurrent() {
+        if (current != null) {
+            current.dataSet = null;
+            free.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Спира фоновата нишка и започва нова епоха от началото
+     */
+    @Override
+    public void reset() {
+        stopProducer();
+        releaseCurrent();
+        ready.clear();
+        free.clear();
+        for (Slot slot : slots) {
+            slot.dataSet = null;
+            free.add(slot);
+        }
+        failure = null;
+        position = 0;
+        consumed = 0;
+
+        if (shuffle) {
+            Random random = new Random(seed + epoch);
+            for (int i = totalBatches - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+        epoch++;
+
+        producer = new Thread(this::produce, "csv-prefetch");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Спира фоновата нишка, без да започва нова епоха. hasNext() връща false до reset().
+     */
+    @Override
+    public void close() {
+        stopProducer();
+        releaseCurrent();
+        consumed = numExamples;
+    }
+
+    private void stopProducer() {
+        if (producer == null) {
+            return;
+        }
+        producer.interrupt();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        producer = null;
+    }
+
+    private void produce() {
+        try {
+            for (int b = 0; b < totalBatches; b++) {
+                Slot slot = free.take();
+                fill(slot, order[b]);
+                ready.put(slot);
+            }
+        } catch (InterruptedException e) {
+            // reset() спира нишката
+        } catch (Throwable t) {
+            failure = t;
+            ready.offer(new Slot(null, null));
+        }
+    }
+
+    /**
+     * Копира пакет номер batch от колоните на кеша в нативните буфери на слота,
+     * нормализирайки признаците
+     */
+    private void fill(Slot slot, int batch) {
+        int first = batch * batchSize;
+        int count = Math.min(batchSize, numExamples - first);
+
+        if (slot.features.dataType() == DataType.FLOAT) {
+            FloatBuffer features = slot.features.data().asNioFloat();
+            FloatBuffer labelsOut = slot.labels.data().asNioFloat();
+            // По колони - всяка колона на кеша се чете последователно
+            for (int f = 0; f < numFeatures; f++) {
+                FloatBuffer column = columns[f];
+                float m = mean[f];
+                float s = inverseStd[f];
+                for (int k = 0; k < count; k++) {
+                    features.put(k * numFeatures + f, (column.get(first + k) - m) * s);
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                int label = labels.get(first + k);
+                int labelBase = k * numClasses;
+                for (int c = 0; c < numClasses; c++) {
+                    labelsOut.put(labelBase + c, c == label ? 1f : 0f);
+                }
+            }
+        } else {
+            for (int f = 0; f < numFeatures; f++) {
+                FloatBuffer column = columns[f];
+                for (int k = 0; k < count; k++) {
+                    slot.features.data().put((long) k * numFeatures + f, (column.get(first + k) - mean[f]) * inverseStd[f]);
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                int label = labels.get(first + k);
+                for (int c = 0; c < numClasses; c++) {
+                    slot.labels.data().put((long) k * numClasses + c, c == label ? 1.0 : 0.0);
+                }
+            }
+        }
+
+        slot.dataSet = count == batchSize
+                ? new DataSet(slot.features, slot.labels)
+                : new DataSet(slot.features.get(NDArrayIndex.interval(0, count), NDArrayIndex.all()),
+                              slot.labels.get(NDArrayIndex.interval(0, count), NDArrayIndex.all()));
+    }
+
+    public CsvColumnarCache getCache() {
+        return cache;
+    }
+
+    public int totalExamples() {
+        return numExamples;
+    }
+
+    @Override
+    public int inputColumns() {
+        return numFeatures;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return numClasses;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    /**
+     * Итераторът сам подготвя пакетите във фонова нишка, затова не трябва да се
+     * обвива допълнително в AsyncDataSetIterator.
+     */
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return labelNames;
+    }
+
+    /**
+     * Тренира плътна мрежа върху локален CSV файл.
+     *
+     * Аргументи: файл.csv колона-на-етикета брой-класове [епохи] [размер-на-пакета].
+     * Първият ред се пропуска като заглавен.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Употреба: CsvDataSetIterator файл.csv колона-на-етикета брой-класове [епохи] [пакет]");
+            System.exit(1);
+        }
+        Path csv = Paths.get(args[0]);
+        int labelColumn = Integer.parseInt(args[1]);
+        int numClasses = Integer.parseInt(args[2]);
+        int epochs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : 256;
+
+        long start = System.nanoTime();
+        CsvDataSetIterator train = fromCsv(csv, labelColumn, numClasses, true, batchSize, true, 123);
+        log.info("Кешът е готов за {} ms: {} примера, {} признака",
+                (System.nanoTime() - start) / 1_000_000, train.totalExamples(), train.inputColumns());
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(123)
+                .updater(new Adam(0.001))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(train.inputColumns()).nOut(64)
+                        .activation(Activation.RELU).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.NEGATIVELOGLIKELIHOOD)
+                        .nIn(64).nOut(numClasses).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork model = new MultiLayerNetwork(conf);
+        model.init();
+
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            long epochStart = System.nanoTime();
+            model.fit(train);
+            train.reset();
+            double seconds = (System.nanoTime() - epochStart) / 1e9;
+            log.info("Епоха {}: загуба {}, {} примера/s", epoch, String.format("%.4f", model.score()),
+                    String.format("%.0f", train.totalExamples() / seconds));
+        }
+        log.info("Точност върху тренировъчните данни: {}", String.format("%.4f", model.evaluate(train).accuracy()));
+        train.close();
+    }
+
+    /**
+     * Предварително заделени буфери за един пакет
+     */
+    private static final class Slot {
+        final INDArray features;
+        final INDArray labels;
+        volatile DataSet dataSet;
+
+        Slot(INDArray features, INDArray labels) {
+            this.features = features;
+            this.labels = labels;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.example;
+
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.BaseOptimizer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Тренировка с паралелизъм по данни на няколко ядра.
+ *
+ * Всеки работник има собствено копие (реплика) на мрежата и собствена нишка.
+ * Пакетите от итератора се раздават последователно на работниците - на всеки
+ * рунд всеки работник тренира върху един пакет. На всеки averagingFrequency
+ * рунда параметрите и състоянието на updater-а на всички реплики се осредняват
+ * и записват обратно в репликите и в основната мрежа.
+ *
+ * Репликите се копират от основната мрежа в конструктора - с конфигурацията
+ * и графика на скоростта на обучение към този момент, но без listener-ите.
+ * Listener-ите на основната мрежа получават по едно iterationDone за всеки рунд
+ * (със средния резултат на работниците и първия пакет от рунда като вход) и onEpochStart/onEpochEnd за
+ * всяка епоха, а броячите на итерациите и епохите ѝ се увеличават съответно.
+ * Параметрите ѝ се обновяват само при осредняване.
+ */
+public class DataParallelTrainer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DataParallelTrainer.class);
+
+    private final MultiLayerNetwork model;
+    private final int averagingFrequency;
+    private final MultiLayerNetwork[] replicas;
+    private final ExecutorService[] workers;
+
+    private long lastEpochSamples;
+    private long lastEpochNanos;
+
+    /**
+     * @param model мрежата, в която се записват осреднените параметри
+     * @param workers брой работници (реплики)
+     * @param averagingFrequency през колко рунда да се осредняват параметрите
+     */
+    public DataParallelTrainer(MultiLayerNetwork model, int workers, int averagingFrequency) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Броят работници трябва да е положителен: " + workers);
+        }
+        if (averagingFrequency <= 0) {
+            throw new IllegalArgumentException("averagingFrequency трябва да е положително: " + averagingFrequency);
+        }
+        this.model = model;
+        this.averagingFrequency = averagingFrequency;
+        this.replicas = new MultiLayerNetwork[workers];
+        this.workers = new ExecutorService[workers];
+        for (int w = 0; w < workers; w++) {
+            replicas[w] = model.clone();
+            int index = w;
+            this.workers[w] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "data-parallel-worker-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Една епоха върху итератора. След края основната мрежа съдържа осреднените параметри.
+     */
+    public void fit(DataSetIterator iterator) {
+        if (!iterator.hasNext() && iterator.resetSupported()) {
+            iterator.reset();
+        }
+        for (TrainingListener listener : model.getListeners()) {
+            listener.onEpochStart(model);
+        }
+        long start = System.nanoTime();
+        long samples = 0;
+        int rounds = 0;
+        List<Future<?>> pending = new ArrayList<>(replicas.length);
+        List<DataSet> round = new ArrayList<>(replicas.length);
+
+        while (iterator.hasNext()) {
+            pending.clear();
+            round.clear();
+            for (int w = 0; w < replicas.length && iterator.hasNext(); w++) {
+                // Итераторът може да преизползва буферите си, затова всеки работник получава копие
+                DataSet batch = iterator.next().copy();
+                samples += batch.numExamples();
+                round.add(batch);
+                MultiLayerNetwork replica = replicas[w];
+                pending.add(workers[w].submit(() -> replica.fit(batch)));
+            }
+            await(pending);
+
+            rounds++;
+            if (rounds % averagingFrequency == 0) {
+                averageReplicas();
+            }
+            roundDone(round);
+        }
+        if (rounds % averagingFrequency != 0) {
+            averageReplicas();
+        }
+
+        for (MultiLayerNetwork replica : replicas) {
+            replica.incrementEpochCount();
+        }
+        for (TrainingListener listener : model.getListeners()) {
+            listener.onEpochEnd(model);
+        }
+        model.incrementEpochCount();
+
+        lastEpochSamples = samples;
+        lastEpochNanos = System.nanoTime() - start;
+        log.info("Паралелна епоха: {} примера, {} рунда, {} примера/сек",
+                samples, rounds, String.format("%.1f", getSamplesPerSecond()));
+    }
+
+    /**
+     * Отчита рунда като една итерация на основната мрежа и уведомява listener-ите ѝ
+     */
+    private void roundDone(List<DataSet> round) {
+        double score = 0;
+        long examples = 0;
+        for (int w = 0; w < round.size(); w++) {
+            score += replicas[w].score() * round.get(w).numExamples();
+            examples += round.get(w).numExamples();
+        }
+        model.setScore(score / examples);
+
+        if (!model.getListeners().isEmpty()) {
+            // batchSize() на основната мрежа се чете от входа. Подава се първият пакет
+            // от рунда без копиране - listener-ите виждат размера на пакет на една реплика.
+            model.setInput(round.get(0).getFeatures());
+            model.setLabels(round.get(0).getLabels());
+            for (TrainingListener listener : model.getListeners()) {
+                listener.iterationDone(model, model.getIterationCount(), model.getEpochCount());
+            }
+            model.clear();
+        }
+        BaseOptimizer.incrementIterationCount(model, 1);
+    }
+
+    private static void await(List<Future<?>> pending) {
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Прекъсната тренировка", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Грешка в работник при тренировка", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Осреднява параметрите и състоянието на updater-а и ги записва във всички реплики
+     */
+    private void averageReplicas() {
+        INDArray params = replicas[0].params().dup();
+        for (int w = 1; w < replicas.length; w++) {
+            params.addi(replicas[w].params());
+        }
+        params.divi(replicas.length);
+
+        INDArray state = null;
+        if (replicas[0].getUpdater().getStateViewArray() != null) {
+            state = replicas[0].getUpdater().getStateViewArray().dup();
+            for (int w = 1; w < replicas.length; w++) {
+                state.addi(replicas[w].getUpdater().getStateViewArray());
+            }
+            state.divi(replicas.length);
+        }
+
+        model.setParams(params);
+        if (state != null) {
+            model.getUpdater().getStateViewArray().assign(state);
+        }
+        for (MultiLayerNetwork replica : replicas) {
+            replica.setParams(params);
+            if (state != null) {
+                replica.getUpdater().getStateViewArray().assign(state);
+            }
+        }
+    }
+
+    /** Брой примери в последната епоха */
+    public long getLastEpochSamples() {
+        return lastEpochSamples;
+    }
+
+    /** Примери в секунда за последната епоха */
+    public double getSamplesPerSecond() {
+        return lastEpochNanos == 0 ? 0 : lastEpochSamples * 1e9 / lastEpochNanos;
+    }
+
+    public int getWorkers() {
+        return replicas.length;
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * Сравнява еднонишковата тренировка с паралелната върху MNIST.
+     * Аргументи: [брой работници] [averagingFrequency] [епохи]
+     */
+    public static void main(String[] args) throws IOException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int frequency = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        DataSetIterator train = MNISTClassifier.createIterator(true);
+        DataSetIterator test = MNISTClassifier.createIterator(false);
+
+        log.info("Еднонишкова тренировка ({} епохи)...", epochs);
+        MultiLayerNetwork baseline = MNISTClassifier.createModel();
+        long samples = 0;
+        long start = System.nanoTime();
+        for (int e = 0; e < epochs; e++) {
+            while (train.hasNext()) {
+                DataSet batch = train.next();
+                samples += batch.numExamples();
+                baseline.fit(batch);
+            }
+            train.reset();
+        }
+        double baselineRate = samples * 1e9 / (System.nanoTime() - start);
+        Evaluation baselineEval = baseline.evaluate(test);
+        test.reset();
+
+        log.info("Паралелна тренировка с {} работника, осредняване на всеки {} рунда...", workers, frequency);
+        MultiLayerNetwork parallel = MNISTClassifier.createModel();
+        double parallelRate = 0;
+        try (DataParallelTrainer trainer = new DataParallelTrainer(parallel, workers, frequency)) {
+            for (int e = 0; e < epochs; e++) {
+                trainer.fit(train);
+                train.reset();
+                parallelRate += trainer.getSamplesPerSecond() / epochs;
+            }
+        }
+        Evaluation parallelEval = parallel.evaluate(test);
+
+        log.info("Еднонишково: {} примера/сек, точност {}", String.format("%.1f", baselineRate), baselineEval.accuracy());
+        log.info("Паралелно:   {} примера/сек, точност {} (ускорение {}x)", String.format("%.1f", parallelRate),
+                parallelEval.accuracy(), String.format("%.2f", parallelRate / baselineRate));
+    }
+}
@@ -0,0 +1,187 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Пакетно изчисляване на решението на мрежата върху решетка от точки в [0,1]x[0,1].
+ *
+ * Решетката има (resolution + 1) x (resolution + 1) клетки. Координатите се генерират
+ * на плочки от по няколко реда, като за всяка плочка се прави едно извикване на
+ * model.output вместо по едно за всяка клетка. Класовете се записват в преизползваем
+ * byte[] буфер - ред i отговаря на x = i / resolution, колона j на y = j / resolution.
+ *
+ * Инстанцията не е thread-safe - буферите се използват повторно между извикванията.
+ */
+public class DecisionBoundaryGrid {
+
+    /** Брой клетки в една плочка по подразбиране */
+    public static final int DEFAULT_TILE_CELLS = 1 << 16;
+
+    private final int resolution;
+    private final int side;
+    private final int tileRows;
+    private final byte[] classes;
+
+    private INDArray tileInput;
+
+    public DecisionBoundaryGrid(int resolution) {
+        this(resolution, Math.max(1, DEFAULT_TILE_CELLS / (resolution + 1)));
+    }
+
+    /**
+     * @param resolution брой деления по всяка ос
+     * @param tileRows брой редове от решетката, които се изчисляват с едно извикване
+     */
+    public DecisionBoundaryGrid(int resolution, int tileRows) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("resolution трябва да е положително: " + resolution);
+        }
+        if (tileRows <= 0) {
+            throw new IllegalArgumentException("tileRows трябва да е положително: " + tileRows);
+        }
+        this.resolution = resolution;
+        this.side = resolution + 1;
+        this.tileRows = Math.min(tileRows, side);
+        this.classes = new byte[side * side];
+    }
+
+    /**
+     * Изчислява класа на всяка клетка и връща вътрешния буфер с резултата.
+     * Буферът се презаписва при следващото извикване.
+     */
+    public byte[] evaluate(MultiLayerNetwork model) {
+        ensureTileInput(model);
+
+        for (int row = 0; row < side; row += tileRows) {
+            int rows = Math.min(tileRows, side - row);
+            int cells = rows * side;
+
+            DataBuffer in = tileInput.data();
+            for (int r = 0; r < rows; r++) {
+                double x = (double) (row + r) / resolution;
+                int base = r * side * 2;
+                for (int j = 0; j < side; j++) {
+                    in.put(base + j * 2L, x);
+                }
+            }
+
+            INDArray input = cells == tileInput.rows()
+                    ? tileInput
+                    : tileInput.get(NDArrayIndex.interval(0, cells), NDArrayIndex.all());
+            INDArray output = model.output(input, false);
+            if (output.ordering() != 'c') {
+                output = output.dup('c');
+            }
+            argMaxRows(output, row * side);
+        }
+        return classes;
+    }
+
+    /**
+     * Записва всеки ред от изхода като индекс на най-вероятния клас. При равенство
+     * печели по-големият индекс - същото правило като output[0] > output[1] ? 0 : 1.
+     */
+    private void argMaxRows(INDArray output, int offset) {
+        DataBuffer out = output.data();
+        long base = output.offset();
+        int rows = (int) output.rows();
+        int cols = (int) output.columns();
+
+        for (int k = 0; k < rows; k++) {
+            long rowStart = base + (long) k * cols;
+            int best = 0;
+            double bestValue = out.getDouble(rowStart);
+            for (int c = 1; c < cols; c++) {
+                double value = out.getDouble(rowStart + c);
+                if (value >= bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            classes[offset + k] = (byte) best;
+        }
+    }
+
+    /**
+     * Заделя входната матрица на плочката веднъж. Колоната y е еднаква за всеки ред
+     * от решетката, затова се попълва само тук - при всяка плочка се сменя само x.
+     */
+    private void ensureTileInput(MultiLayerNetwork model) {
+        if (tileInput != null && tileInput.dataType() == model.params().dataType()) {
+            return;
+        }
+        tileInput = Nd4j.create(model.params().dataType(), (long) tileRows * side, 2);
+        DataBuffer in = tileInput.data();
+        for (int r = 0; r < tileRows; r++) {
+            int base = r * side * 2;
+            for (int j = 0; j < side; j++) {
+                in.put(base + j * 2L + 1, (double) j / resolution);
+            }
+        }
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    /** Брой клетки по всяка ос (resolution + 1) */
+    public int getSide() {
+        return side;
+    }
+
+    public int getTileRows() {
+        return tileRows;
+    }
+
+    /** Клас на клетка (i, j) от последното изчисление */
+    public int classAt(int i, int j) {
+        return classes[i * side + j];
+    }
+
+    /**
+     * Записва последния резултат като двоично PGM изображение (P5).
+     * Класовете се разпределят равномерно в диапазона 0..255.
+     */
+    public void writePgm(Path file, int numClasses) throws IOException {
+        int scale = numClasses > 1 ? 255 / (numClasses - 1) : 255;
+        byte[] pixels = new byte[classes.length];
+        for (int k = 0; k < classes.length; k++) {
+            pixels[k] = (byte) (classes[k] * scale);
+        }
+
+        try (OutputStream out = Files.newOutputStream(file)) {
+            String header = "P5\n" + side + " " + side + "\n255\n";
+            out.write(header.getBytes(StandardCharsets.US_ASCII));
+            out.write(pixels);
+        }
+    }
+
+    /** Записва последния резултат като CSV - по един ред от решетката на ред във файла */
+    public void writeCsv(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            StringBuilder line = new StringBuilder(side * 2);
+            for (int i = 0; i < side; i++) {
+                line.setLength(0);
+                for (int j = 0; j < side; j++) {
+                    if (j > 0) {
+                        line.append(',');
+                    }
+                    line.append(classes[i * side + j]);
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+}
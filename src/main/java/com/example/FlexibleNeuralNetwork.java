@@ -7,11 +7,18 @@ import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Гъвкава имплементация на невронна мрежа с 2 входа, скрит слой и 2 изхода
  */
@@ -19,6 +26,8 @@ public class FlexibleNeuralNetwork {
     
     private MultiLayerNetwork model;
     private int hiddenNeurons;
+    private Precision precision;
+    private final AtomicLong parametersVersion = new AtomicLong();
     
     /**
      * Създава невронна мрежа с 2 входа, скрит слой и 2 изхода
@@ -27,10 +36,23 @@ public class FlexibleNeuralNetwork {
      * @param activation функция на активация за скрития слой
      */
     public FlexibleNeuralNetwork(int hiddenNeurons, double learningRate, Activation activation) {
+        this(hiddenNeurons, learningRate, activation, Precision.FLOAT);
+    }
+    
+    /**
+     * Създава невронна мрежа с 2 входа, скрит слой и 2 изхода
+     * @param hiddenNeurons брой неврони в скрития слой
+     * @param learningRate скорост на обучение
+     * @param activation функция на активация за скрития слой
+     * @param precision точност на параметрите; мрежата се тренира в precision.trainingType()
+     */
+    public FlexibleNeuralNetwork(int hiddenNeurons, double learningRate, Activation activation, Precision precision) {
         this.hiddenNeurons = hiddenNeurons;
+        this.precision = precision;
         
         MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
                 .seed(12345)
+                .dataType(precision.trainingType())
                 .weightInit(WeightInit.XAVIER)
                 .updater(new Adam(learningRate))
                 .list()
@@ -54,7 +76,64 @@ public class FlexibleNeuralNetwork {
      * Тренира мрежата върху XOR данни
      */
     public void train(int epochs) {
-        // XOR данни
+        System.out.println("Трениране на мрежа с " + hiddenNeurons + " неврона в скрития слой...");
+        fit(epochs);
+    }
+    
+    /**
+     * Тренира мрежата върху XOR данни без изход на конзолата
+     */
+    public void fit(int epochs) {
+        DataSet xor = createDataSet();
+        for (int i = 0; i < epochs; i++) {
+            model.fit(xor.getFeatures(), xor.getLabels());
+        }
+        parametersVersion.incrementAndGet();
+    }
+    
+    /**
+     * Тренира на групи от checkEvery епохи, докато загубата не спре да намалява
+     * според controller или не се изчерпат maxEpochs. Накрая се връщат най-добрите
+     * параметри. Връща броя изпълнени епохи.
+     */
+    public int train(ConvergenceController controller, int maxEpochs, int checkEvery) {
+        controller.start();
+        int epochs = 0;
+        while (epochs < maxEpochs) {
+            int step = Math.min(checkEvery, maxEpochs - epochs);
+            fit(step);
+            epochs += step;
+            if (controller.update(model, epochs, score())) {
+                break;
+            }
+        }
+        controller.restoreBest(model);
+        parametersVersion.incrementAndGet();
+        System.out.println("Трениране на мрежа с " + hiddenNeurons + " неврона в скрития слой: " + controller.report());
+        return epochs;
+    }
+    
+    /**
+     * Стойност на функцията на загуба върху XOR данните
+     */
+    public double score() {
+        return model.score(createDataSet());
+    }
+    
+    /**
+     * Дял на правилно класифицираните XOR примери
+     */
+    public double accuracy() {
+        DataSet xor = createDataSet();
+        INDArray predicted = model.output(xor.getFeatures()).argMax(1);
+        INDArray expected = xor.getLabels().argMax(1);
+        return predicted.eq(expected).castTo(DataType.DOUBLE).meanNumber().doubleValue();
+    }
+    
+    /**
+     * XOR данни - входове и one-hot изходи
+     */
+    static DataSet createDataSet() {
         INDArray input = Nd4j.create(new double[][]{
             {0, 0}, {0, 1}, {1, 0}, {1, 1}
         });
@@ -62,25 +141,100 @@ public class FlexibleNeuralNetwork {
         INDArray output = Nd4j.create(new double[][]{
             {1, 0}, {0, 1}, {0, 1}, {1, 0}
         });
-        
-        System.out.println("Трениране на мрежа с " + hiddenNeurons + " неврона в скрития слой...");
-        
-        for (int i = 0; i < epochs; i++) {
-            model.fit(input, output);
-        }
+        return new DataSet(input, output);
     }
     
     /**
      * Правене на предвиждане
      */
     public int predict(double x1, double x2) {
-        INDArray input = Nd4j.create(new double[][]{{x1, x2}});
+        INDArray input = Nd4j.create(model.params().dataType(), 1, 2);
+        input.putScalar(0, x1);
+        input.putScalar(1, x2);
         INDArray output = model.output(input);
         
         // Връща 0 или 1 в зависимост кой изход има по-висока стойност
         return output.getDouble(0) > output.getDouble(1) ? 0 : 1;
     }
     
+    /**
+     * Асинхронен вариант на predict за много едновременни извикващи - заявките се
+     * обединяват в пакети от най-много maxBatchSize примера
+     */
+    public MicroBatchingPredictor batchingPredictor(int maxBatchSize, long maxWaitMicros) {
+        return new MicroBatchingPredictor(model, maxBatchSize, maxWaitMicros, TimeUnit.MICROSECONDS);
+    }
+    
+    /**
+     * predict с кеш: входовете се закръглят до решетка със стъпка step и се пазят
+     * най-много capacity резултата. Кешът се изчиства при промяна на параметрите.
+     */
+    public CachingPredictor cachingPredictor(double step, int capacity) {
+        return new CachingPredictor(this, step, capacity);
+    }
+    
+    /**
+     * Пул от копия на мрежата за едновременно извикване на predict от много нишки
+     */
+    public ModelReplicaPool replicaPool(int replicas) {
+        return new ModelReplicaPool(model, replicas);
+    }
+    
+    /**
+     * Дообучаване върху поток от примери. Докато върви, предвижданията трябва да
+     * минават през OnlineLearner.predict, а не през predict на този клас.
+     */
+    public OnlineLearner onlineLearner(int queueCapacity, int batchSize, long maxWaitMicros) {
+        return new OnlineLearner(model, queueCapacity, batchSize, maxWaitMicros, TimeUnit.MICROSECONDS);
+    }
+    
+    /**
+     * Публикува копие на текущите тегла като нова версия в регистъра, без да спира
+     * предвижданията върху предишната
+     */
+    public long publish(ModelRegistry registry, String name) {
+        return registry.publish(name, model);
+    }
+    
+    /**
+     * Копие на текущите тегла за бързо предвиждане изцяло в Java
+     */
+    public CompiledDenseNetwork compile() {
+        return CompiledDenseNetwork.compile(model);
+    }
+    
+    public MultiLayerNetwork getModel() {
+        return model;
+    }
+    
+    /**
+     * Брояч, който се увеличава при всяка промяна на параметрите. Включва броя
+     * итерации на мрежата, така че отчита и стъпките, направени директно върху
+     * getModel() - например от OnlineLearner - без изрично parametersChanged().
+     */
+    public long getParametersVersion() {
+        return parametersVersion.get() + model.getIterationCount();
+    }
+    
+    /**
+     * Отбелязва, че параметрите са променени извън този клас (например през
+     * getModel()), за да се изчистят кешовете на предвижданията
+     */
+    public void parametersChanged() {
+        parametersVersion.incrementAndGet();
+    }
+    
+    /**
+     * Копие на мрежата в precision.inferenceType() (например HALF) за предвиждане
+     */
+    public MultiLayerNetwork inferenceModel() {
+        return precision.forInference(model);
+    }
+    
+    public Precision getPrecision() {
+        return precision;
+    }
+    
     /**
      * Тестване на всички XOR комбинации
      */
@@ -106,21 +260,42 @@ public class FlexibleNeuralNetwork {
         System.out.printf("\nТочност: %d/4 (%.0f%%)\n", correct, (correct/4.0)*100);
     }
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        WarmupProfile.preloadBackend();
+        // Загряване от предишното стартиране (-Dwarmup.profile=файл): пакет от 4 за fit, единични предвиждания
+        WarmupProfile warmup = WarmupProfile.fromSystemProperty();
+        warmup.replay(new FlexibleNeuralNetwork(3, 0.1, Activation.SIGMOID).getModel(), 3);
+        warmup.recordFit(4);
+        warmup.recordOutput(1);
+        
+        // Тренировката спира, когато загубата не е намаляла с 0.001 за 4 проверки
+        // през 25 епохи, но не по-късно от 1000 епохи
+        
         // Тест с различен брой неврони в скрития слой
         System.out.println("=== ТЕСТ 1: 3 неврона в скрития слой ===");
         FlexibleNeuralNetwork net1 = new FlexibleNeuralNetwork(3, 0.1, Activation.SIGMOID);
-        net1.train(1000);
+        net1.train(new ConvergenceController(ConvergenceController.Goal.MINIMIZE, 4, 1e-3, Double.NaN), 1000, 25);
         net1.test();
         
         System.out.println("\n=== ТЕСТ 2: 5 неврона в скрития слой ===");
         FlexibleNeuralNetwork net2 = new FlexibleNeuralNetwork(5, 0.1, Activation.RELU);
-        net2.train(1000);
+        net2.train(new ConvergenceController(ConvergenceController.Goal.MINIMIZE, 4, 1e-3, Double.NaN), 1000, 25);
         net2.test();
         
         System.out.println("\n=== ТЕСТ 3: 10 неврона в скрития слой ===");
         FlexibleNeuralNetwork net3 = new FlexibleNeuralNetwork(10, 0.05, Activation.TANH);
-        net3.train(1000);
+        net3.train(new ConvergenceController(ConvergenceController.Goal.MINIMIZE, 4, 1e-3, Double.NaN), 1000, 25);
         net3.test();
+        
+        // Повтарящи се заявки с малък шум около четирите XOR точки - през кеша
+        System.out.println("\n=== Кеш на предвижданията (стъпка 0.01) ===");
+        CachingPredictor cache = net3.cachingPredictor(0.01, 4096);
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            cache.predict(random.nextInt(2) + random.nextGaussian() * 0.01, random.nextInt(2) + random.nextGaussian() * 0.01);
+        }
+        System.out.printf("10000 заявки за %.1f ms: %s%n", (System.nanoTime() - start) / 1e6, cache);
+        warmup.saveToSystemProperty();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package com.example;
+
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.BaseOptimizer;
+import org.nd4j.evaluation.classification.Evaluation;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Тренировка с натрупване на градиенти: за всеки пакет се изчислява само
+ * градиентът, а стъпката на updater-а се прави веднъж на microBatches пакета -
+ * със сумата на градиентите и общия брой примери. Ефективният размер на пакета
+ * е microBatches пъти по-голям, а паметта за активациите остава като за един пакет.
+ *
+ * Функциите на загуба в DL4J връщат градиента като сума по примерите, а
+ * updater-ът го дели на размера на пакета (miniBatch(true)) и добавя L2 след
+ * това. Затова сумата от градиентите на пакетите, подадена с общия брой
+ * примери, дава същата стъпка като един голям пакет - до грешката от реда на
+ * събиране при числа с плаваща запетая.
+ *
+ * Пиковата нативна памет се отчита като размера на тренировъчните workspace-и
+ * на нишката (активации и работна памет, растат с пакета) плюс постоянните
+ * буфери: параметри, градиенти, буфер за натрупване и състояние на updater-а.
+ * Workspace-ите не се свиват, затова за отделни измервания в една нишка
+ * трябва да се изтрият преди всяко (виж main).
+ */
+public class GradientAccumulationTrainer {
+
+    private static final Logger log = LoggerFactory.getLogger(GradientAccumulationTrainer.class);
+
+    private final MultiLayerNetwork model;
+    private final int microBatches;
+    private final INDArray accumulated;
+
+    private int pending;
+    private long pendingExamples;
+    private double pendingScore;
+    private long steps;
+    private long peakWorkspaceBytes;
+    private long peakBatchBytes;
+
+    /**
+     * @param model мрежата; трябва да е инициализирана
+     * @param microBatches през колко пакета се прави стъпка на updater-а
+     */
+    public GradientAccumulationTrainer(MultiLayerNetwork model, int microBatches) {
+        if (microBatches <= 0) {
+            throw new IllegalArgumentException("microBatches трябва да е положително: " + microBatches);
+        }
+        if (!model.getLayerWiseConfigurations().getConf(0).isMiniBatch()) {
+            throw new IllegalArgumentException("Натрупването изисква miniBatch(true) - градиентът се дели на броя примери");
+        }
+        this.model = model;
+        this.microBatches = microBatches;
+        try (MemoryWorkspace ignored = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            // DL4J създава изгледа на градиентите при първия fit
+            if (model.getFlattenedGradients() == null) {
+                model.initGradientsView();
+            }
+            this.accumulated = Nd4j.create(model.params().dataType(), model.getFlattenedGradients().shape());
+        }
+    }
+
+    /**
+     * Изчислява градиента за един пакет и го добавя към натрупания. След
+     * microBatches пакета прави стъпка на updater-а.
+     */
+    public void fit(DataSet batch) {
+        fit(batch.getFeatures(), batch.getLabels());
+    }
+
+    public void fit(INDArray features, INDArray labels) {
+        model.setInput(features);
+        model.setLabels(labels);
+        model.computeGradientAndScore();
+
+        long examples = features.size(0);
+        INDArray gradient = model.getFlattenedGradients();
+        if (pending == 0) {
+            accumulated.assign(gradient);
+        } else {
+            accumulated.addi(gradient);
+        }
+        pending++;
+        pendingExamples += examples;
+        pendingScore += model.score() * examples;
+
+        long batchBytes = (features.length() + labels.length()) * features.dataType().width();
+        peakBatchBytes = Math.max(peakBatchBytes, batchBytes);
+        peakWorkspaceBytes = Math.max(peakWorkspaceBytes, workspaceBytes());
+
+        if (pending == microBatches) {
+            step();
+        }
+    }
+
+    /**
+     * Една епоха върху iterator; накрая се прави стъпка и с непълния остатък
+     */
+    public void fit(DataSetIterator iterator) {
+        for (TrainingListener listener : model.getListeners()) {
+            listener.onEpochStart(model);
+        }
+        while (iterator.hasNext()) {
+            fit(iterator.next());
+        }
+        flush();
+        for (TrainingListener listener : model.getListeners()) {
+            listener.onEpochEnd(model);
+        }
+        model.incrementEpochCount();
+    }
+
+    /**
+     * Прави стъпка с натрупаните до момента пакети, ако има такива
+     */
+    public void flush() {
+        if (pending > 0) {
+            step();
+        }
+    }
+
+    private void step() {
+        int iteration = model.getIterationCount();
+        int epoch = model.getEpochCount();
+
+        // Updater-ът работи върху изгледите на градиентите в мрежата
+        model.getFlattenedGradients().assign(accumulated);
+        model.getUpdater().update(model, model.gradient(), iteration, epoch, (int) pendingExamples,
+                LayerWorkspaceMgr.noWorkspaces());
+        INDArray params = model.params();
+        params.subi(model.getFlattenedGradients().reshape(params.shape()));
+        model.setScore(pendingScore / pendingExamples);
+
+        try (MemoryWorkspace ignored = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            for (TrainingListener listener : model.getListeners()) {
+                listener.iterationDone(model, iteration, epoch);
+            }
+        }
+        BaseOptimizer.incrementIterationCount(model, 1);
+        BaseOptimizer.applyConstraints(model);
+
+        pending = 0;
+        pendingExamples = 0;
+        pendingScore = 0;
+        steps++;
+    }
+
+    private static long workspaceBytes() {
+        long bytes = 0;
+        for (MemoryWorkspace workspace : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread()) {
+            bytes += workspace.getCurrentSize();
+        }
+        return bytes;
+    }
+
+    public int getMicroBatches() {
+        return microBatches;
+    }
+
+    /** Брой стъпки на updater-а */
+    public long getSteps() {
+        return steps;
+    }
+
+    /** Най-големият размер на workspace-ите на нишката по време на fit */
+    public long getPeakWorkspaceBytes() {
+        return peakWorkspaceBytes;
+    }
+
+    /** Параметри, градиенти, буфер за натрупване и състояние на updater-а */
+    public long getStateBytes() {
+        long width = model.params().dataType().width();
+        INDArray updaterState = model.getUpdater().getStateViewArray();
+        long state = updaterState == null ? 0 : updaterState.length() * updaterState.dataType().width();
+        return 3 * model.params().length() * width + state;
+    }
+
+    /** Пикова нативна памет: workspace-и, постоянни буфери и най-големият пакет */
+    public long getPeakNativeBytes() {
+        return peakWorkspaceBytes + getStateBytes() + peakBatchBytes;
+    }
+
+    public MultiLayerNetwork getModel() {
+        return model;
+    }
+
+    /**
+     * Кратко описание на паметта за логовете
+     */
+    public String memoryReport() {
+        return String.format("пикова нативна памет %.1f MB (workspace %.1f MB, състояние %.1f MB, пакет %.1f MB)",
+                getPeakNativeBytes() / 1e6, peakWorkspaceBytes / 1e6, getStateBytes() / 1e6, peakBatchBytes / 1e6);
+    }
+
+    /**
+     * Сравнява една епоха MNIST с различни размери на пакета и натрупване.
+     * Аргументи: [брой примери] - по подразбиране всички 60000.
+     * Без -Dmnist.dir данните се изтеглят от MnistDataSetIterator.
+     */
+    public static void main(String[] args) throws IOException {
+        int limit = args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+        int[][] configurations = {{64, 1}, {256, 1}, {1024, 1}, {64, 4}, {64, 16}};
+
+        StringBuilder table = new StringBuilder(String.format("%8s %8s %10s %12s %12s %10s %10s%n",
+                "пакет", "натрупв.", "ефективен", "пик MB", "workspace MB", "сек", "точност"));
+        for (int[] configuration : configurations) {
+            int batchSize = configuration[0];
+            int microBatches = configuration[1];
+            // Всяка конфигурация започва с празни workspace-и, за да се измери собственият ѝ пик
+            Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+            System.gc();
+
+            MultiLayerNetwork model = MNISTClassifier.createModel();
+            GradientAccumulationTrainer trainer = new GradientAccumulationTrainer(model, microBatches);
+            DataSetIterator train = MNISTClassifier.createIterator(true, Precision.FLOAT, batchSize);
+            long start = System.nanoTime();
+            int examples = 0;
+            while (train.hasNext() && examples < limit) {
+                DataSet batch = train.next();
+                examples += batch.numExamples();
+                trainer.fit(batch);
+            }
+            trainer.flush();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            DataSetIterator test = MNISTClassifier.createIterator(false);
+            Evaluation evaluation = model.evaluate(test);
+            log.info("Пакет {} x {}: {} стъпки, {}; RSS {} MB", batchSize, microBatches, trainer.getSteps(),
+                    trainer.memoryReport(), Pointer.physicalBytes() / 1_000_000);
+            table.append(String.format("%8d %8d %10d %12.1f %12.1f %10.1f %10.4f%n", batchSize, microBatches,
+                    batchSize * microBatches, trainer.getPeakNativeBytes() / 1e6,
+                    trainer.getPeakWorkspaceBytes() / 1e6, seconds, evaluation.accuracy()));
+        }
+        System.out.println();
+        System.out.print(table);
+    }
+}
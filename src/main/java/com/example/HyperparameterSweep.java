@@ -0,0 +1,282 @@
+package com.example;
+
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+import org.nd4j.shade.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Паралелно търсене на хиперпараметри на FlexibleNeuralNetwork.
+ *
+ * Пространството за търсене е декартовото произведение на стойностите за
+ * hiddenNeurons, learningRate и Activation. Опитите се изпълняват на пул с
+ * фиксиран брой работници и се съкращават на стъпала (successive halving):
+ * всички живи опити се тренират до броя епохи на стъпалото, след което само
+ * най-добрата 1/reductionFactor част по score продължава към следващото.
+ *
+ * Нативните нишки на ND4J се ограничават до ядра / работници, за да не се
+ * конкурират работниците за процесора. Настройката е глобална за процеса и
+ * се връща при close().
+ *
+ * Всеки резултат се записва веднага като ред в JSONL файл (leaderboard).
+ */
+public class HyperparameterSweep implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HyperparameterSweep.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final ExecutorService pool;
+    private final int workers;
+    private final int previousMaxThreads;
+    private final BufferedWriter leaderboard;
+
+    /**
+     * @param workers брой едновременно тренирани опити
+     * @param leaderboard JSONL файл за резултатите; null, ако не се записват
+     */
+    public HyperparameterSweep(int workers, Path leaderboard) throws IOException {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Броят работници трябва да е положителен: " + workers);
+        }
+        this.workers = workers;
+        this.leaderboard = leaderboard != null ? Files.newBufferedWriter(leaderboard, StandardCharsets.UTF_8) : null;
+
+        previousMaxThreads = Nd4j.getEnvironment().maxThreads();
+        int cores = Runtime.getRuntime().availableProcessors();
+        Nd4j.getEnvironment().setMaxThreads(Math.max(1, cores / workers));
+
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "sweep-worker-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Всички комбинации от зададените стойности
+     */
+    public static List<Trial> grid(int[] hiddenNeurons, double[] learningRates, Activation[] activations) {
+        List<Trial> trials = new ArrayList<>();
+        for (int hidden : hiddenNeurons) {
+            for (double learningRate : learningRates) {
+                for (Activation activation : activations) {
+                    trials.add(new Trial(trials.size(), hidden, learningRate, activation));
+                }
+            }
+        }
+        return trials;
+    }
+
+    /**
+     * Изпълнява търсенето.
+     *
+     * @param trials опитите, например от grid()
+     * @param rungEpochs общ брой епохи на всяко стъпало, във възходящ ред
+     * @param reductionFactor колко пъти намалява броят опити след всяко стъпало
+     * @return всички опити - първо достигналите най-високо стъпало, после по score
+     */
+    public List<Trial> run(List<Trial> trials, int[] rungEpochs, int reductionFactor) throws IOException {
+        if (rungEpochs.length == 0) {
+            throw new IllegalArgumentException("Нужно е поне едно стъпало");
+        }
+        if (reductionFactor < 2) {
+            throw new IllegalArgumentException("reductionFactor трябва да е поне 2: " + reductionFactor);
+        }
+
+        List<Trial> alive = new ArrayList<>(trials);
+        for (int rung = 0; rung < rungEpochs.length; rung++) {
+            int epochs = rungEpochs[rung];
+            List<Future<?>> pending = new ArrayList<>(alive.size());
+            for (Trial trial : alive) {
+                pending.add(pool.submit(() -> trial.trainTo(epochs)));
+            }
+            await(pending);
+
+            alive.sort(Comparator.comparingDouble(Trial::getScore));
+            boolean last = rung == rungEpochs.length - 1;
+            int survivors = last ? 0 : Math.max(1, alive.size() / reductionFactor);
+            for (int i = 0; i < alive.size(); i++) {
+                Trial trial = alive.get(i);
+                trial.rung = rung;
+                trial.status = last ? "completed" : i < survivors ? "promoted" : "stopped";
+                if (i >= survivors) {
+                    // Мрежите на спрените опити не са нужни повече
+                    trial.network = null;
+                }
+                write(trial);
+            }
+            log.info("Стъпало {} ({} епохи): {} опита, най-добър score {} - {}", rung, epochs, alive.size(),
+                    String.format("%.5f", alive.get(0).score), alive.get(0));
+            alive = new ArrayList<>(alive.subList(0, survivors));
+        }
+
+        List<Trial> ranked = new ArrayList<>(trials);
+        ranked.sort(Comparator.comparingInt((Trial t) -> -t.rung).thenComparingDouble(Trial::getScore));
+        return ranked;
+    }
+
+    private static void await(List<Future<?>> pending) {
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Прекъснато търсене", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Грешка при тренировка на опит", e.getCause());
+            }
+        }
+    }
+
+    private void write(Trial trial) throws IOException {
+        if (leaderboard == null) {
+            return;
+        }
+        ObjectNode line = JSON.createObjectNode();
+        line.put("trial", trial.id);
+        line.put("hiddenNeurons", trial.hiddenNeurons);
+        line.put("learningRate", trial.learningRate);
+        line.put("activation", trial.activation.name());
+        line.put("rung", trial.rung);
+        line.put("epochs", trial.epochs);
+        line.put("score", trial.score);
+        line.put("accuracy", trial.accuracy);
+        line.put("status", trial.status);
+        line.put("trainMillis", trial.trainNanos / 1_000_000);
+        leaderboard.write(JSON.writeValueAsString(line));
+        leaderboard.newLine();
+        leaderboard.flush();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdown();
+        Nd4j.getEnvironment().setMaxThreads(previousMaxThreads);
+        if (leaderboard != null) {
+            leaderboard.close();
+        }
+    }
+
+    /**
+     * Един опит - комбинация от хиперпараметри и мрежата, която се тренира с нея
+     */
+    public static final class Trial {
+        private final int id;
+        private final int hiddenNeurons;
+        private final double learningRate;
+        private final Activation activation;
+
+        private FlexibleNeuralNetwork network;
+        private int epochs;
+        private int rung = -1;
+        private double score = Double.NaN;
+        private double accuracy;
+        private long trainNanos;
+        private String status = "pending";
+
+        Trial(int id, int hiddenNeurons, double learningRate, Activation activation) {
+            this.id = id;
+            this.hiddenNeurons = hiddenNeurons;
+            this.learningRate = learningRate;
+            this.activation = activation;
+        }
+
+        /**
+         * Продължава тренировката до общо targetEpochs епохи
+         */
+        private void trainTo(int targetEpochs) {
+            long start = System.nanoTime();
+            if (network == null) {
+                network = new FlexibleNeuralNetwork(hiddenNeurons, learningRate, activation);
+            }
+            network.fit(targetEpochs - epochs);
+            epochs = targetEpochs;
+            score = network.score();
+            accuracy = network.accuracy();
+            trainNanos += System.nanoTime() - start;
+        }
+
+        public int getHiddenNeurons() {
+            return hiddenNeurons;
+        }
+
+        public double getLearningRate() {
+            return learningRate;
+        }
+
+        public Activation getActivation() {
+            return activation;
+        }
+
+        public int getEpochs() {
+            return epochs;
+        }
+
+        public double getScore() {
+            return Double.isNaN(score) ? Double.MAX_VALUE : score;
+        }
+
+        public double getAccuracy() {
+            return accuracy;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        @Override
+        public String toString() {
+            return "hidden=" + hiddenNeurons + ", lr=" + learningRate + ", " + activation;
+        }
+    }
+
+    /**
+     * Търсене в пространство около конфигурациите от FlexibleNeuralNetwork.main.
+     * Аргументи: [брой работници] [JSONL файл]
+     */
+    public static void main(String[] args) throws IOException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        Path output = Paths.get(args.length > 1 ? args[1] : "sweep-leaderboard.jsonl");
+
+        List<Trial> trials = grid(
+                new int[]{3, 5, 10, 20},
+                new double[]{0.01, 0.05, 0.1},
+                new Activation[]{Activation.SIGMOID, Activation.RELU, Activation.TANH});
+
+        long start = System.nanoTime();
+        List<Trial> ranked;
+        try (HyperparameterSweep sweep = new HyperparameterSweep(workers, output)) {
+            ranked = sweep.run(trials, new int[]{50, 200, 1000}, 3);
+        }
+
+        System.out.printf("%d опита за %.1f сек, резултати в %s%n",
+                trials.size(), (System.nanoTime() - start) / 1e9, output);
+        for (int i = 0; i < Math.min(5, ranked.size()); i++) {
+            Trial trial = ranked.get(i);
+            System.out.printf("%d. %-35s epochs=%-5d score=%.5f accuracy=%.2f%n",
+                    i + 1, trial, trial.getEpochs(), trial.getScore(), trial.getAccuracy());
+        }
+    }
+}
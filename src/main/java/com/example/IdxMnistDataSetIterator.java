@@ -0,0 +1,418 @@
+package com.example;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * DataSetIterator за MNIST, който чете IDX файловете от локална директория, без мрежа.
+ *
+ * Файловете се отварят през memory-mapped FileChannel, а всеки пакет се декодира
+ * директно в предварително заделени ND4J масиви (извън heap-а). Фонова нишка
+ * подготвя следващите prefetch пакета, докато текущият се тренира.
+ *
+ * Пакетите се преизползват: върнатият DataSet е валиден до следващото извикване на
+ * next(). Това е достатъчно за MultiLayerNetwork.fit, който обработва пакетите
+ * последователно; ако пакетът трябва да се пази по-дълго, използвайте copy().
+ * next(num) копира редовете в нови масиви и може да взема от няколко готови пакета.
+ *
+ * Ако итераторът не се обходи докрай, close() спира фоновата нишка и освобождава
+ * слотовете; след reset() може да се използва отново.
+ */
+public class IdxMnistDataSetIterator implements DataSetIterator, AutoCloseable {
+
+    private static final int IMAGES_MAGIC = 0x00000803;
+    private static final int LABELS_MAGIC = 0x00000801;
+    private static final int NUM_CLASSES = 10;
+    private static final int HEADER_IMAGES = 16;
+    private static final int HEADER_LABELS = 8;
+
+    private static final List<String> LABELS = Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+
+    private final MappedByteBuffer images;
+    private final MappedByteBuffer labels;
+    private final int numExamples;
+    private final int numPixels;
+    private final int batchSize;
+    private final int totalBatches;
+    private final boolean shuffle;
+    private final long seed;
+    private final int[] order;
+
+    private final Slot[] slots;
+    private final BlockingQueue<Slot> free;
+    private final BlockingQueue<Slot> ready;
+
+    private Thread producer;
+    private volatile Throwable failure;
+    private Slot current;
+    // Прочетени редове от текущия слот (при next(num)) и общо върнати примери
+    private int position;
+    private int consumed;
+    private int epoch;
+    private DataSetPreProcessor preProcessor;
+
+    public IdxMnistDataSetIterator(Path imagesFile, Path labelsFile, int batchSize) throws IOException {
+        this(imagesFile, labelsFile, batchSize, 2, false, 0, DataType.FLOAT);
+    }
+
+    /**
+     * @param imagesFile IDX файл с изображенията (idx3-ubyte)
+     * @param labelsFile IDX файл с етикетите (idx1-ubyte)
+     * @param batchSize брой примери в пакет
+     * @param prefetch колко пакета да се подготвят предварително
+     * @param shuffle дали да се разбърква редът на примерите във всяка епоха
+     * @param seed семе за разбъркването
+     * @param dataType тип на данните в пакетите
+     */
+    public IdxMnistDataSetIterator(Path imagesFile, Path labelsFile, int batchSize, int prefetch,
+                                   boolean shuffle, long seed, DataType dataType) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize трябва да е положително: " + batchSize);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch трябва да е положително: " + prefetch);
+        }
+        this.images = map(imagesFile);
+        this.labels = map(labelsFile);
+
+        if (images.getInt(0) != IMAGES_MAGIC) {
+            throw new IOException("Невалиден IDX файл с изображения: " + imagesFile);
+        }
+        if (labels.getInt(0) != LABELS_MAGIC) {
+            throw new IOException("Невалиден IDX файл с етикети: " + labelsFile);
+        }
+        this.numExamples = images.getInt(4);
+        this.numPixels = images.getInt(8) * images.getInt(12);
+        if (labels.getInt(4) != numExamples) {
+            throw new IOException("Броят изображения (" + numExamples + ") и етикети ("
+                    + labels.getInt(4) + ") не съвпада");
+        }
+
+        this.batchSize = batchSize;
+        this.totalBatches = (numExamples + batchSize - 1) / batchSize;
+        this.shuffle = shuffle;
+        this.seed = seed;
+        this.order = new int[numExamples];
+        for (int i = 0; i < numExamples; i++) {
+            order[i] = i;
+        }
+
+        // Един слот за текущия пакет, prefetch слота за готовите и един, който се пълни
+        int slotCount = prefetch + 2;
+        this.slots = new Slot[slotCount];
+        this.free = new ArrayBlockingQueue<>(slotCount);
+        this.ready = new ArrayBlockingQueue<>(slotCount);
+        for (int s = 0; s < slotCount; s++) {
+            slots[s] = new Slot(Nd4j.create(dataType, batchSize, numPixels), Nd4j.create(dataType, batchSize, NUM_CLASSES));
+        }
+        reset();
+    }
+
+    /**
+     * Итератор върху стандартните MNIST файлове в директория - train-images-idx3-ubyte,
+     * train-labels-idx1-ubyte, t10k-images-idx3-ubyte и t10k-labels-idx1-ubyte.
+     * Тренировъчните данни се разбъркват, тестовите - не.
+     */
+    public static IdxMnistDataSetIterator mnist(Path directory, boolean train, int batchSize, long seed) throws IOException {
+        return mnist(directory, train, batchSize, seed, DataType.FLOAT);
+    }
+
+    /**
+     * Като mnist(directory, train, batchSize, seed), с пакети от зададения тип
+     */
+    public static IdxMnistDataSetIterator mnist(Path directory, boolean train, int batchSize, long seed,
+                                                DataType dataType) throws IOException {
+        String prefix = train ? "train" : "t10k";
+        return new IdxMnistDataSetIterator(
+                directory.resolve(prefix + "-images-idx3-ubyte"),
+                directory.resolve(prefix + "-labels-idx1-ubyte"),
+                batchSize, 2, train, seed, dataType);
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return consumed < numExamples;
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (current != null && position > 0 && position < current.dataSet.numExamples()) {
+            // Започнат слот от next(num) - останалото се връща като копие
+            return next(batchSize);
+        }
+        Slot slot = take();
+        position = slot.dataSet.numExamples();
+        consumed += position;
+        if (preProcessor != null) {
+            preProcessor.preProcess(slot.dataSet);
+        }
+        return slot.dataSet;
+    }
+
+    /**
+     * Следващите num примера (или по-малко в края на епохата), копирани в нови масиви
+     */
+    @Override
+    public DataSet next(int num) {
+        if (num <= 0) {
+            throw new IllegalArgumentException("num трябва да е положително: " + num);
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int count = Math.min(num, numExamples - consumed);
+        INDArray features = Nd4j.create(slots[0].features.dataType(), count, numPixels);
+        INDArray labelsOut = Nd4j.create(slots[0].labels.dataType(), count, NUM_CLASSES);
+        int copied = 0;
+        while (copied < count) {
+            if (current == null || position == current.dataSet.numExamples()) {
+                take();
+                position = 0;
+            }
+            int rows = Math.min(count - copied, current.dataSet.numExamples() - position);
+            features.get(NDArrayIndex.interval(copied, copied + rows), NDArrayIndex.all())
+                    .assign(current.features.get(NDArrayIndex.interval(position, position + rows), NDArrayIndex.all()));
+            labelsOut.get(NDArrayIndex.interval(copied, copied + rows), NDArrayIndex.all())
+                    .assign(current.labels.get(NDArrayIndex.interval(position, position + rows), NDArrayIndex.all()));
+            position += rows;
+            copied += rows;
+        }
+        consumed += count;
+        DataSet dataSet = new DataSet(features, labelsOut);
+        if (preProcessor != null) {
+            preProcessor.preProcess(dataSet);
+        }
+        return dataSet;
+    }
+
+    /**
+     * Освобождава текущия слот и изчаква следващия готов пакет
+     */
+    private Slot take() {
+        releaseCurrent();
+        Slot slot;
+        try {
+            slot = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прекъснато чакане на пакет", e);
+        }
+        if (slot.dataSet == null) {
+            throw new IllegalStateException("Грешка при четене на MNIST пакет", failure);
+        }
+        current = slot;
+        return slot;
+    }
+
+    private void releaseCurrent() {
+        if (current != null) {
+            current.dataSet = null;
+            free.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Спира фоновата нишка и започва нова епоха от началото
+     */
+    @Override
+    public void reset() {
+        stopProducer();
+        releaseCurrent();
+        ready.clear();
+        free.clear();
+        for (Slot slot : slots) {
+            slot.dataSet = null;
+            free.add(slot);
+        }
+        failure = null;
+        position = 0;
+        consumed = 0;
+
+        if (shuffle) {
+            Random random = new Random(seed + epoch);
+            for (int i = numExamples - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+        epoch++;
+
+        producer = new Thread(this::produce, "mnist-prefetch");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Спира фоновата нишка, без да започва нова епоха. hasNext() връща false до reset().
+     */
+    @Override
+    public void close() {
+        stopProducer();
+        releaseCurrent();
+        consumed = numExamples;
+    }
+
+    private void stopProducer() {
+        if (producer == null) {
+            return;
+        }
+        producer.interrupt();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        producer = null;
+    }
+
+    private void produce() {
+        try {
+            for (int b = 0; b < totalBatches; b++) {
+                Slot slot = free.take();
+                fill(slot, b);
+                ready.put(slot);
+            }
+        } catch (InterruptedException e) {
+            // reset() спира нишката
+        } catch (Throwable t) {
+            failure = t;
+            ready.offer(new Slot(null, null));
+        }
+    }
+
+    /**
+     * Декодира пакет номер batch директно в нативните буфери на слота
+     */
+    private void fill(Slot slot, int batch) {
+        int first = batch * batchSize;
+        int count = Math.min(batchSize, numExamples - first);
+
+        if (slot.features.dataType() == DataType.FLOAT) {
+            FloatBuffer features = slot.features.data().asNioFloat();
+            FloatBuffer labelsOut = slot.labels.data().asNioFloat();
+            for (int k = 0; k < count; k++) {
+                int example = order[first + k];
+                int base = HEADER_IMAGES + example * numPixels;
+                int out = k * numPixels;
+                for (int p = 0; p < numPixels; p++) {
+                    features.put(out + p, (images.get(base + p) & 0xFF) / 255f);
+                }
+                int labelBase = k * NUM_CLASSES;
+                int label = labels.get(HEADER_LABELS + example) & 0xFF;
+                for (int c = 0; c < NUM_CLASSES; c++) {
+                    labelsOut.put(labelBase + c, c == label ? 1f : 0f);
+                }
+            }
+        } else {
+            for (int k = 0; k < count; k++) {
+                int example = order[first + k];
+                int base = HEADER_IMAGES + example * numPixels;
+                long out = (long) k * numPixels;
+                for (int p = 0; p < numPixels; p++) {
+                    slot.features.data().put(out + p, (images.get(base + p) & 0xFF) / 255.0);
+                }
+                int label = labels.get(HEADER_LABELS + example) & 0xFF;
+                for (int c = 0; c < NUM_CLASSES; c++) {
+                    slot.labels.data().put((long) k * NUM_CLASSES + c, c == label ? 1.0 : 0.0);
+                }
+            }
+        }
+
+        slot.dataSet = count == batchSize
+                ? new DataSet(slot.features, slot.labels)
+                : new DataSet(slot.features.get(NDArrayIndex.interval(0, count), NDArrayIndex.all()),
+                              slot.labels.get(NDArrayIndex.interval(0, count), NDArrayIndex.all()));
+    }
+
+    public int totalExamples() {
+        return numExamples;
+    }
+
+    @Override
+    public int inputColumns() {
+        return numPixels;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return NUM_CLASSES;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    /**
+     * Итераторът сам подготвя пакетите във фонова нишка, затова не трябва да се
+     * обвива допълнително в AsyncDataSetIterator.
+     */
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return LABELS;
+    }
+
+    /**
+     * Предварително заделени буфери за един пакет
+     */
+    private static final class Slot {
+        final INDArray features;
+        final INDArray labels;
+        volatile DataSet dataSet;
+
+        Slot(INDArray features, INDArray labels) {
+            this.features = features;
+            this.labels = labels;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Пази всички метрики в паметта - за тестове и кратки експерименти
+ */
+public class InMemoryMetricsSink implements MetricsSink {
+
+    private final List<TrainingMetricsListener.IterationMetrics> iterations = new ArrayList<>();
+    private final List<TrainingMetricsListener.EpochMetrics> epochs = new ArrayList<>();
+
+    @Override
+    public synchronized void onIteration(TrainingMetricsListener.IterationMetrics metrics) {
+        iterations.add(metrics);
+    }
+
+    @Override
+    public synchronized void onEpoch(TrainingMetricsListener.EpochMetrics metrics) {
+        epochs.add(metrics);
+    }
+
+    public synchronized List<TrainingMetricsListener.IterationMetrics> getIterations() {
+        return Collections.unmodifiableList(new ArrayList<>(iterations));
+    }
+
+    public synchronized List<TrainingMetricsListener.EpochMetrics> getEpochs() {
+        return Collections.unmodifiableList(new ArrayList<>(epochs));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example;
+
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+import org.nd4j.shade.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Записва метриките като JSON редове ("type": "iteration" или "epoch").
+ *
+ * Редовете се буферират и се изпращат към файла в края на всяка епоха и при
+ * close(), така че тренировката не чака диска на всяка итерация.
+ */
+public class JsonLinesMetricsSink implements MetricsSink {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final BufferedWriter writer;
+
+    public JsonLinesMetricsSink(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void onIteration(TrainingMetricsListener.IterationMetrics metrics) {
+        ObjectNode line = JSON.createObjectNode();
+        line.put("type", "iteration");
+        line.put("epoch", metrics.getEpoch());
+        line.put("iteration", metrics.getIteration());
+        line.put("batchSize", metrics.getBatchSize());
+        line.put("dataWaitNanos", metrics.getDataWaitNanos());
+        line.put("forwardNanos", metrics.getForwardNanos());
+        line.put("backwardNanos", metrics.getBackwardNanos());
+        line.put("updateNanos", metrics.getUpdateNanos());
+        line.put("score", metrics.getScore());
+        if (metrics.isSampled()) {
+            line.put("paramNorm", metrics.getParamNorm());
+            line.put("gradientNorm", metrics.getGradientNorm());
+            line.put("physicalBytes", metrics.getPhysicalBytes());
+            line.put("workspaceBytes", metrics.getWorkspaceBytes());
+        }
+        write(line, false);
+    }
+
+    @Override
+    public synchronized void onEpoch(TrainingMetricsListener.EpochMetrics metrics) {
+        ObjectNode line = JSON.createObjectNode();
+        line.put("type", "epoch");
+        line.put("epoch", metrics.getEpoch());
+        line.put("iterations", metrics.getIterations());
+        line.put("samples", metrics.getSamples());
+        line.put("durationNanos", metrics.getDurationNanos());
+        line.put("samplesPerSecond", metrics.getSamplesPerSecond());
+        histogram(line.putObject("dataWait"), metrics.getDataWait());
+        histogram(line.putObject("compute"), metrics.getCompute());
+        write(line, true);
+    }
+
+    private static void histogram(ObjectNode node, LatencyHistogram histogram) {
+        node.put("count", histogram.getCount());
+        node.put("meanNanos", histogram.getMean());
+        node.put("p50Nanos", histogram.getPercentile(50));
+        node.put("p99Nanos", histogram.getPercentile(99));
+        node.put("maxNanos", histogram.getMax());
+    }
+
+    private void write(ObjectNode line, boolean flush) {
+        try {
+            writer.write(JSON.writeValueAsString(line));
+            writer.newLine();
+            if (flush) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Грешка при запис на метрики", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Грешка при затваряне на файла с метрики", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Хистограма на времена в наносекунди с логаритмични кофи.
+ *
+ * Всяка степен на двойката е разделена на 2^SUB_BITS равни под-кофи, така че
+ * относителната грешка на процентилите е под 1 / 2^SUB_BITS (12.5%) при
+ * фиксирани ~500 брояча, независимо от обхвата на стойностите. record() е
+ * lock-free и може да се вика от много нишки.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Записва една стойност; отрицателните се броят като 0 */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    static int index(long value) {
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent < SUB_BITS) {
+            return (int) value;
+        }
+        int shift = exponent - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) | (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /** Най-голямата стойност, която попада в кофа index */
+    static long upperBound(int index) {
+        int group = index >>> SUB_BITS;
+        if (group == 0) {
+            return index;
+        }
+        int shift = group - 1;
+        long lower = ((long) (SUB_COUNT | (index & (SUB_COUNT - 1)))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Приблизителен процентил - горната граница на кофата, в която попада.
+     *
+     * @param percentile между 0 и 100
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Процентилът трябва да е между 0 и 100: " + percentile);
+        }
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** Добавя стойностите на друга хистограма */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /** Изчиства всички броячи. Не е атомарно спрямо едновременни record(). */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fµs p50=%.1fµs p99=%.1fµs max=%.1fµs", getCount(), getMean() / 1e3,
+                getPercentile(50) / 1e3, getPercentile(99) / 1e3, getMax() / 1e3);
+    }
+}
@@ -0,0 +1,526 @@
+package com.example;
+
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Отложен (lazy) израз над INDArray, който слива поелементните операции и редукциите.
+ *
+ * Верига като x.sub(x.mean()).div(x.std()) в ND4J минава през данните по веднъж
+ * за всяка редукция и за всяка операция и създава временен масив след всяка
+ * операция. Тук операциите само се записват, а изчислението става при eval():
+ *  - всички редукции на един израз (средна, дисперсия, стандартно отклонение,
+ *    сума, минимум, максимум) се изчисляват заедно с едно минаване - по
+ *    алгоритъма на Уелфорд, обединяван на парчета по формулата на Чан;
+ *  - всички поелементни операции се прилагат с още едно минаване, парче по
+ *    парче в малък буфер, който остава в L1 кеша, и резултатът се записва
+ *    директно в целевия масив - може и в самия източник.
+ * Редукциите се изчисляват веднъж за всяко eval() или get() и не се пазят между
+ * извикванията: of() използва непрекъснатия масив пряко, без копие, така че
+ * промени в него от извикващия се виждат при следващото изчисление.
+ *
+ * Поддържат се източници float и double; другите типове се четат по-бавно през
+ * DataBuffer. Изгледите (views) се копират веднъж при of().
+ */
+public final class LazyExpression {
+
+    private static final int TILE = 2048;
+    private static final int MIN_ELEMENTS_PER_TASK = 1 << 18;
+
+    private static final int ADD = 0;
+    private static final int SUB = 1;
+    private static final int MUL = 2;
+    private static final int DIV = 3;
+    private static final int SIGMOID = 4;
+    private static final int TANH = 5;
+    private static final int RELU = 6;
+    private static final int SQUARE = 7;
+    private static final int SQRT = 8;
+    private static final int ABS = 9;
+    private static final int EXP = 10;
+
+    private final Source source;
+    private final LazyExpression parent;
+    private final int op;
+    private final double constant;
+    private final Scalar operand;
+    private final int depth;
+
+    private Statistics statistics;
+    private long statisticsGeneration = -1;
+
+    private LazyExpression(Source source, LazyExpression parent, int op, double constant, Scalar operand) {
+        this.source = source;
+        this.parent = parent;
+        this.op = op;
+        this.constant = constant;
+        this.operand = operand;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * Израз, чиято стойност е масивът source
+     */
+    public static LazyExpression of(INDArray source) {
+        INDArray array = source.isView() || source.ordering() != 'c' ? source.dup('c') : source;
+        return new LazyExpression(new Source(array), null, -1, 0, null);
+    }
+
+    private LazyExpression then(int op, double constant, Scalar operand) {
+        if (operand != null && operand.expression.source != source) {
+            throw new IllegalArgumentException("Скаларът е от израз над друг масив");
+        }
+        return new LazyExpression(source, this, op, constant, operand);
+    }
+
+    public LazyExpression add(double value) {
+        return then(ADD, value, null);
+    }
+
+    public LazyExpression add(Scalar value) {
+        return then(ADD, 0, value);
+    }
+
+    public LazyExpression sub(double value) {
+        return then(SUB, value, null);
+    }
+
+    public LazyExpression sub(Scalar value) {
+        return then(SUB, 0, value);
+    }
+
+    public LazyExpression mul(double value) {
+        return then(MUL, value, null);
+    }
+
+    public LazyExpression mul(Scalar value) {
+        return then(MUL, 0, value);
+    }
+
+    public LazyExpression div(double value) {
+        return then(DIV, value, null);
+    }
+
+    public LazyExpression div(Scalar value) {
+        return then(DIV, 0, value);
+    }
+
+    public LazyExpression sigmoid() {
+        return then(SIGMOID, 0, null);
+    }
+
+    public LazyExpression tanh() {
+        return then(TANH, 0, null);
+    }
+
+    public LazyExpression relu() {
+        return then(RELU, 0, null);
+    }
+
+    public LazyExpression square() {
+        return then(SQUARE, 0, null);
+    }
+
+    public LazyExpression sqrt() {
+        return then(SQRT, 0, null);
+    }
+
+    public LazyExpression abs() {
+        return then(ABS, 0, null);
+    }
+
+    public LazyExpression exp() {
+        return then(EXP, 0, null);
+    }
+
+    public Scalar mean() {
+        return new Scalar(this, Scalar.MEAN);
+    }
+
+    /** Дисперсия с корекция на Бесел (деление на n - 1), както INDArray.var() */
+    public Scalar variance() {
+        return new Scalar(this, Scalar.VARIANCE);
+    }
+
+    /** Стандартно отклонение с корекция на Бесел (деление на n - 1), както INDArray.std() */
+    public Scalar std() {
+        return new Scalar(this, Scalar.STD);
+    }
+
+    public Scalar sum() {
+        return new Scalar(this, Scalar.SUM);
+    }
+
+    public Scalar min() {
+        return new Scalar(this, Scalar.MIN);
+    }
+
+    public Scalar max() {
+        return new Scalar(this, Scalar.MAX);
+    }
+
+    /**
+     * (x - средна) / стандартно отклонение - като x.sub(x.mean()).div(x.std()),
+     * но с едно минаване за двете редукции и едно за резултата
+     */
+    public LazyExpression normalize() {
+        return sub(mean()).div(std());
+    }
+
+    /**
+     * Изчислява израза в нов масив със същата форма и тип като източника
+     */
+    public INDArray eval() {
+        return eval(Nd4j.createUninitialized(source.array.dataType(), source.array.shape(), 'c'));
+    }
+
+    /**
+     * Изчислява израза в target, който може да е и самият източник (на място)
+     */
+    public INDArray eval(INDArray target) {
+        if (target.length() != source.length) {
+            throw new IllegalArgumentException("Целевият масив има " + target.length() + " елемента вместо " + source.length);
+        }
+        if (target.isView() || target.ordering() != 'c') {
+            throw new IllegalArgumentException("Целевият масив трябва да е непрекъснат и в ред 'c'");
+        }
+        // Ново изчисление - редукциите от предишни извиквания може да са остарели
+        source.generation++;
+        int[] ops = new int[depth];
+        double[] constants = new double[depth];
+        resolve(ops, constants);
+
+        Output output = new Output(target);
+        forEachRange((from, to, tile) -> {
+            for (long start = from; start < to; start += TILE) {
+                int n = (int) Math.min(TILE, to - start);
+                load(ops, constants, start, n, tile);
+                output.store(start, n, tile);
+            }
+            return null;
+        });
+        source.passes++;
+        return target;
+    }
+
+    /**
+     * Брой минавания през данните на източника досега - за проверка на сливането
+     */
+    public long getPasses() {
+        return source.passes;
+    }
+
+    /** Операциите от източника до този израз, с изчислени скаларни операнди */
+    private void resolve(int[] ops, double[] constants) {
+        LazyExpression node = this;
+        for (int i = depth - 1; i >= 0; i--) {
+            ops[i] = node.op;
+            constants[i] = node.operand == null ? node.constant : node.operand.value();
+            node = node.parent;
+        }
+    }
+
+    /** Стойностите на израза за елементите start..start+n-1 в tile */
+    private void load(int[] ops, double[] constants, long start, int n, double[] tile) {
+        source.read(start, n, tile);
+        for (int i = 0; i < ops.length; i++) {
+            apply(ops[i], constants[i], tile, n);
+        }
+    }
+
+    private static void apply(int op, double c, double[] t, int n) {
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < n; i++) {
+                    t[i] += c;
+                }
+                break;
+            case SUB:
+                for (int i = 0; i < n; i++) {
+                    t[i] -= c;
+                }
+                break;
+            case MUL:
+                for (int i = 0; i < n; i++) {
+                    t[i] *= c;
+                }
+                break;
+            case DIV:
+                double inverse = 1.0 / c;
+                for (int i = 0; i < n; i++) {
+                    t[i] *= inverse;
+                }
+                break;
+            case SIGMOID:
+                for (int i = 0; i < n; i++) {
+                    t[i] = 1.0 / (1.0 + Math.exp(-t[i]));
+                }
+                break;
+            case TANH:
+                for (int i = 0; i < n; i++) {
+                    t[i] = Math.tanh(t[i]);
+                }
+                break;
+            case RELU:
+                for (int i = 0; i < n; i++) {
+                    t[i] = Math.max(0, t[i]);
+                }
+                break;
+            case SQUARE:
+                for (int i = 0; i < n; i++) {
+                    t[i] *= t[i];
+                }
+                break;
+            case SQRT:
+                for (int i = 0; i < n; i++) {
+                    t[i] = Math.sqrt(t[i]);
+                }
+                break;
+            case ABS:
+                for (int i = 0; i < n; i++) {
+                    t[i] = Math.abs(t[i]);
+                }
+                break;
+            case EXP:
+                for (int i = 0; i < n; i++) {
+                    t[i] = Math.exp(t[i]);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Непозната операция " + op);
+        }
+    }
+
+    /**
+     * Всички редукции на израза с едно минаване; резултатът важи само за текущото eval() или get()
+     */
+    private Statistics statistics() {
+        if (statistics == null || statisticsGeneration != source.generation) {
+            int[] ops = new int[depth];
+            double[] constants = new double[depth];
+            resolve(ops, constants);
+            long generation = source.generation;
+            Statistics total = new Statistics();
+            for (Statistics part : forEachRange((from, to, tile) -> {
+                Statistics stats = new Statistics();
+                for (long start = from; start < to; start += TILE) {
+                    int n = (int) Math.min(TILE, to - start);
+                    load(ops, constants, start, n, tile);
+                    stats.addTile(tile, n);
+                }
+                return stats;
+            }, new Statistics[0])) {
+                total.merge(part);
+            }
+            source.passes++;
+            statistics = total;
+            statisticsGeneration = generation;
+        }
+        return statistics;
+    }
+
+    private interface RangeTask<T> {
+        T run(long from, long to, double[] tile);
+    }
+
+    private void forEachRange(RangeTask<Void> task) {
+        forEachRange(task, new Void[0]);
+    }
+
+    /**
+     * Дели източника на последователни части по нишките на общия ForkJoinPool.
+     * Малките масиви се обработват в текущата нишка.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T[] forEachRange(RangeTask<T> task, T[] type) {
+        long length = source.length;
+        int parts = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_ELEMENTS_PER_TASK));
+        T[] results = Arrays.copyOf(type, parts);
+        IntStream indices = IntStream.range(0, parts);
+        (parts > 1 ? indices.parallel() : indices).forEach(p -> results[p] = task.run(
+                p * length / parts, (p + 1) * length / parts, new double[TILE]));
+        return results;
+    }
+
+    /**
+     * Отложена редукция на израз. Стойността се изчислява при първото get() заедно
+     * с всички останали редукции на същия израз.
+     */
+    public static final class Scalar {
+        private static final int MEAN = 0;
+        private static final int VARIANCE = 1;
+        private static final int STD = 2;
+        private static final int SUM = 3;
+        private static final int MIN = 4;
+        private static final int MAX = 5;
+
+        private final LazyExpression expression;
+        private final int kind;
+
+        private Scalar(LazyExpression expression, int kind) {
+            this.expression = expression;
+            this.kind = kind;
+        }
+
+        /** Изчислява редукцията с ново минаване през текущите данни на източника */
+        public double get() {
+            expression.source.generation++;
+            return value();
+        }
+
+        /** Стойността в рамките на текущото изчисление */
+        private double value() {
+            Statistics stats = expression.statistics();
+            switch (kind) {
+                case MEAN:
+                    return stats.mean;
+                case VARIANCE:
+                    return stats.sampleVariance();
+                case STD:
+                    return Math.sqrt(stats.sampleVariance());
+                case SUM:
+                    return stats.sum;
+                case MIN:
+                    return stats.min;
+                case MAX:
+                    return stats.max;
+                default:
+                    throw new IllegalStateException("Непозната редукция " + kind);
+            }
+        }
+    }
+
+    /**
+     * Брой, средна, M2, сума, минимум и максимум. Всяко парче се обобщава с две
+     * минавания в L1 (сума, после отклонения от средната на парчето), а парчетата
+     * се обединяват по формулата на Чан - числено устойчиво като Уелфорд.
+     */
+    private static final class Statistics {
+        long count;
+        double mean;
+        double m2;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void addTile(double[] t, int n) {
+            double tileSum = 0;
+            double tileMin = Double.POSITIVE_INFINITY;
+            double tileMax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                double v = t[i];
+                tileSum += v;
+                tileMin = Math.min(tileMin, v);
+                tileMax = Math.max(tileMax, v);
+            }
+            double tileMean = tileSum / n;
+            double tileM2 = 0;
+            for (int i = 0; i < n; i++) {
+                double d = t[i] - tileMean;
+                tileM2 += d * d;
+            }
+            merge(n, tileMean, tileM2, tileSum, tileMin, tileMax);
+        }
+
+        void merge(Statistics other) {
+            if (other.count > 0) {
+                merge(other.count, other.mean, other.m2, other.sum, other.min, other.max);
+            }
+        }
+
+        private void merge(long n, double otherMean, double otherM2, double otherSum, double otherMin, double otherMax) {
+            long total = count + n;
+            double delta = otherMean - mean;
+            mean += delta * n / total;
+            m2 += otherM2 + delta * delta * count * n / total;
+            sum += otherSum;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+            count = total;
+        }
+
+        double sampleVariance() {
+            return count > 1 ? m2 / (count - 1) : 0;
+        }
+    }
+
+    /**
+     * Масивът източник и броячите, общи за всички изрази над него
+     */
+    private static final class Source {
+        final INDArray array;
+        final long length;
+        final FloatBuffer floats;
+        final DoubleBuffer doubles;
+        long passes;
+        /** Брояч на изчисленията - всяко eval() или get() започва ново */
+        long generation;
+
+        Source(INDArray array) {
+            this.array = array;
+            this.length = array.length();
+            DataType type = array.dataType();
+            this.floats = type == DataType.FLOAT ? array.data().asNioFloat() : null;
+            this.doubles = type == DataType.DOUBLE ? array.data().asNioDouble() : null;
+        }
+
+        void read(long start, int n, double[] tile) {
+            int from = (int) start;
+            if (floats != null) {
+                for (int i = 0; i < n; i++) {
+                    tile[i] = floats.get(from + i);
+                }
+            } else if (doubles != null) {
+                for (int i = 0; i < n; i++) {
+                    tile[i] = doubles.get(from + i);
+                }
+            } else {
+                DataBuffer data = array.data();
+                for (int i = 0; i < n; i++) {
+                    tile[i] = data.getDouble(start + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Целевият масив на eval
+     */
+    private static final class Output {
+        final INDArray array;
+        final FloatBuffer floats;
+        final DoubleBuffer doubles;
+
+        Output(INDArray array) {
+            this.array = array;
+            DataType type = array.dataType();
+            this.floats = type == DataType.FLOAT ? array.data().asNioFloat() : null;
+            this.doubles = type == DataType.DOUBLE ? array.data().asNioDouble() : null;
+        }
+
+        void store(long start, int n, double[] tile) {
+            int from = (int) start;
+            if (floats != null) {
+                for (int i = 0; i < n; i++) {
+                    floats.put(from + i, (float) tile[i]);
+                }
+            } else if (doubles != null) {
+                for (int i = 0; i < n; i++) {
+                    doubles.put(from + i, tile[i]);
+                }
+            } else {
+                DataBuffer data = array.data();
+                for (int i = 0; i < n; i++) {
+                    data.put(start + i, tile[i]);
+                }
+            }
+        }
+    }
+}
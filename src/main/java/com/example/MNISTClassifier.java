@@ -1,5 +1,6 @@
 package com.example;
 
+import org.deeplearning4j.datasets.fetchers.MnistDataFetcher;
 import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
 import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.api.OptimizationAlgorithm;
@@ -11,13 +12,18 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.optimize.listeners.ScoreIterationListener;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.learning.config.Nesterovs;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.schedule.ISchedule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Примерен клас за класификация на MNIST ръкописни цифри с Deeplearning4j
@@ -28,26 +34,47 @@ public class MNISTClassifier {
     
     // Параметри на модела
     private static final int SEED = 123;
+    // Максимален брой епохи; с ранно спиране тренировката може да приключи по-рано
     private static final int EPOCHS = 10;
-    private static final int BATCH_SIZE = 64;
-    private static final int NUM_CLASSES = 10;
-    private static final int NUM_INPUTS = 28 * 28; // 784 пиксела
+    static final int BATCH_SIZE = 64;
+    private static final double LEARNING_RATE = 0.01;
+    // Ранно спиране, ако точността не се подобри с MIN_DELTA за толкова епохи (0 го изключва)
+    private static final int EARLY_STOPPING_PATIENCE = 2;
+    private static final double MIN_DELTA = 1e-3;
+    private static final double TARGET_ACCURACY = 0.97;
+    private static final int TOP_K = 3;
+    static final int NUM_CLASSES = 10;
+    static final int NUM_INPUTS = 28 * 28; // 784 пиксела
+    static final String MNIST_DIR_PROPERTY = "mnist.dir";
+    // Брой работници за паралелна тренировка (-Dtrain.workers=N) и честота на осредняване
+    static final String WORKERS_PROPERTY = "train.workers";
+    static final String AVERAGING_PROPERTY = "train.averaging";
+    // Натрупване на градиенти от N пакета по BATCH_SIZE преди всяка стъпка (-Dtrain.accumulation=N)
+    static final String ACCUMULATION_PROPERTY = "train.accumulation";
+    // На колко паралелни части да се раздели тестовото множество при оценка
+    static final String EVAL_SHARDS_PROPERTY = "eval.shards";
+    static final String CHECKPOINT_DIR_PROPERTY = "checkpoint.dir";
+    // Файл за метриките на тренировката като JSON редове
+    static final String METRICS_FILE_PROPERTY = "metrics.file";
+    private static final int METRICS_SAMPLE_FREQUENCY = 50;
+    private static final int CHECKPOINTS_TO_KEEP = 3;
 
-    public static void main(String[] args) throws IOException {
-        
-        log.info("Зареждане на MNIST данни...");
-        
-        // Зареждане на тренировъчни и тестови данни
-        DataSetIterator mnistTrain = new MnistDataSetIterator(BATCH_SIZE, true, SEED);
-        DataSetIterator mnistTest = new MnistDataSetIterator(BATCH_SIZE, false, SEED);
-        
-        log.info("Създаване на конфигурация на модела...");
-        
-        // Конфигурация на невронната мрежа
-        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+    /**
+     * Конфигурация на невронната мрежа 784 -> 256 -> 128 -> 10
+     */
+    public static MultiLayerConfiguration createConfiguration() {
+        return createConfiguration(Precision.FLOAT);
+    }
+    
+    /**
+     * Конфигурация 784 -> 256 -> 128 -> 10 с параметри в типа за тренировка на precision
+     */
+    public static MultiLayerConfiguration createConfiguration(Precision precision) {
+        return new NeuralNetConfiguration.Builder()
                 .seed(SEED)
+                .dataType(precision.trainingType())
                 .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT)
-                .updater(new Nesterovs(0.01, 0.9))
+                .updater(new Nesterovs(LEARNING_RATE, 0.9))
                 .l2(1e-4)
                 .weightInit(WeightInit.XAVIER)
                 .list()
@@ -67,43 +94,251 @@ public class MNISTClassifier {
                         .activation(Activation.SOFTMAX)
                         .build())
                 .build();
+    }
+    
+    /**
+     * Инициализиран модел с конфигурацията от createConfiguration
+     */
+    public static MultiLayerNetwork createModel() {
+        return createModel(Precision.FLOAT);
+    }
+    
+    public static MultiLayerNetwork createModel(Precision precision) {
+        MultiLayerNetwork model = new MultiLayerNetwork(createConfiguration(precision));
+        model.init();
+        return model;
+    }
+
+    /**
+     * Итератор върху MNIST. Ако е зададено -Dmnist.dir=<директория> с IDX файловете,
+     * данните се четат локално от IdxMnistDataSetIterator, без достъп до мрежата.
+     */
+    static DataSetIterator createIterator(boolean train) throws IOException {
+        return createIterator(train, Precision.FLOAT);
+    }
+    
+    /**
+     * Итератор, чиито пакети са в типа за тренировка на precision
+     */
+    static DataSetIterator createIterator(boolean train, Precision precision) throws IOException {
+        return createIterator(train, precision, BATCH_SIZE);
+    }
+    
+    /**
+     * Итератор с пакети от batchSize примера в типа за тренировка на precision
+     */
+    static DataSetIterator createIterator(boolean train, Precision precision, int batchSize) throws IOException {
+        String directory = System.getProperty(MNIST_DIR_PROPERTY);
+        if (directory != null) {
+            return IdxMnistDataSetIterator.mnist(Paths.get(directory), train, batchSize, SEED, precision.trainingType());
+        }
+        MnistDataSetIterator iterator = new MnistDataSetIterator(batchSize, train, SEED);
+        if (precision.trainingType() != DataType.FLOAT) {
+            // MnistDataSetIterator връща FLOAT пакети
+            iterator.setPreProcessor(dataSet -> {
+                dataSet.setFeatures(dataSet.getFeatures().castTo(precision.trainingType()));
+                dataSet.setLabels(dataSet.getLabels().castTo(precision.trainingType()));
+            });
+        }
+        return iterator;
+    }
+    
+    /**
+     * Брой пакети в един епох, изчислен от броя примери - без да се чете епохът.
+     * IdxMnistDataSetIterator знае броя от заглавието на IDX файла, а при
+     * MnistDataSetIterator се използват стандартните 60000/10000 примера.
+     */
+    static int batchesPerEpoch(DataSetIterator iterator, boolean train) {
+        int examples = iterator instanceof IdxMnistDataSetIterator
+                ? ((IdxMnistDataSetIterator) iterator).totalExamples()
+                : train ? MnistDataFetcher.NUM_EXAMPLES : MnistDataFetcher.NUM_EXAMPLES_TEST;
+        return (examples + iterator.batch() - 1) / iterator.batch();
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Нативният backend се зарежда паралелно с четенето на данните
+        WarmupProfile.preloadBackend();
+        
+        // Точност на мрежата и данните (-Dprecision=float|double|half|bfloat16)
+        Precision precision = Precision.fromSystemProperty();
+        
+        // Паралелна тренировка по данни или натрупване на градиенти - проверяват се
+        // преди зареждането на данните
+        int workers = Integer.getInteger(WORKERS_PROPERTY, 1);
+        int accumulation = Integer.getInteger(ACCUMULATION_PROPERTY, 1);
+        if (accumulation > 1 && workers > 1) {
+            throw new IllegalArgumentException("-D" + ACCUMULATION_PROPERTY + "=" + accumulation
+                    + " не се поддържа заедно с -D" + WORKERS_PROPERTY + "=" + workers
+                    + " - репликите на DataParallelTrainer правят стъпка за всеки пакет");
+        }
+        
+        log.info("Зареждане на MNIST данни ({})...", precision);
+        
+        // Зареждане на тренировъчни и тестови данни
+        DataSetIterator mnistTrain = createIterator(true, precision);
+        DataSetIterator mnistTest = createIterator(false, precision);
+        // С -Dmnist.dir данните може да не са 60000 примера - броят идва от IDX заглавието
+        int trainBatches = batchesPerEpoch(mnistTrain, true);
+        
+        log.info("Създаване на конфигурация на модела...");
         
         // Създаване на модела
-        MultiLayerNetwork model = new MultiLayerNetwork(conf);
-        model.init();
+        MultiLayerNetwork model = createModel(precision);
+        
+        // Загряване с размерите на пакетите от предишното стартиране (-Dwarmup.profile=файл)
+        WarmupProfile warmup = WarmupProfile.fromSystemProperty();
+        warmup.replay(model, 3);
+        warmup.recordFit(BATCH_SIZE);
+        warmup.recordOutput(BATCH_SIZE);
+        
+        // Добавяне на listener-и за проследяване на тренировката
+        String metricsFile = System.getProperty(METRICS_FILE_PROPERTY);
+        MetricsSink metricsSink = metricsFile != null ? new JsonLinesMetricsSink(Paths.get(metricsFile)) : MetricsSink.NONE;
+        TrainingMetricsListener metrics = new TrainingMetricsListener(metricsSink, METRICS_SAMPLE_FREQUENCY);
+        model.setListeners(new ScoreIterationListener(100), metrics);
+        mnistTrain = metrics.wrap(mnistTrain);
         
-        // Добавяне на listener за проследяване на тренировката
-        model.setListeners(new ScoreIterationListener(100));
+        // Ефективен пакет BATCH_SIZE * N при памет за активациите като за BATCH_SIZE
+        GradientAccumulationTrainer accumulationTrainer = accumulation > 1
+                ? new GradientAccumulationTrainer(model, accumulation)
+                : null;
+        
+        // График на скоростта на обучение (-Dlr.schedule=none|step|cosine|warmup-cosine);
+        // при паралелна тренировка всяка реплика прави една стъпка на рунд от workers пакета
+        int batchesPerStep = Math.max(1, workers) * (accumulationTrainer != null ? accumulation : 1);
+        int stepsPerEpoch = Math.max(1, (trainBatches + batchesPerStep - 1) / batchesPerStep);
+        ISchedule schedule = ConvergenceController.schedule(System.getProperty(ConvergenceController.SCHEDULE_PROPERTY, "none"),
+                LEARNING_RATE, stepsPerEpoch, EPOCHS);
+        if (schedule != null) {
+            model.setLearningRate(schedule);
+            log.info("График на скоростта на обучение: {}", schedule);
+        }
+        
+        // Репликите се копират след задаването на графика, за да го получат и те
+        DataParallelTrainer parallelTrainer = workers > 1
+                ? new DataParallelTrainer(model, workers, Integer.getInteger(AVERAGING_PROPERTY, 5))
+                : null;
+        
+        // Ранно спиране (-Dearly.stopping.patience=N, 0 за всички EPOCHS епохи)
+        int patience = Integer.getInteger(ConvergenceController.PATIENCE_PROPERTY, EARLY_STOPPING_PATIENCE);
+        ConvergenceController convergence = patience > 0
+                ? new ConvergenceController(ConvergenceController.Goal.MAXIMIZE, patience, MIN_DELTA, TARGET_ACCURACY)
+                : null;
+        
+        // Оценката след всеки епох върви във фонови нишки, докато тренировката продължава
+        AsyncEvaluator evaluator = new AsyncEvaluator(model, mnistTest, Integer.getInteger(EVAL_SHARDS_PROPERTY, 2));
+        
+        // Контролни точки след всеки епох (опционално, -Dcheckpoint.dir=<директория>)
+        String checkpointDir = System.getProperty(CHECKPOINT_DIR_PROPERTY);
+        CheckpointManager checkpoints = checkpointDir != null
+                ? new CheckpointManager(Paths.get(checkpointDir), CHECKPOINTS_TO_KEEP)
+                : null;
         
         log.info("Започване на тренировка...");
         
         // Трениране на модела
+        CompletableFuture<Evaluation> previousEval = null;
+        INDArray previousParams = null;
+        int lastEpoch = 0;
         for (int i = 0; i < EPOCHS; i++) {
-            model.fit(mnistTrain);
-            log.info("Приключен епох {}", i + 1);
+            long epochStart = System.nanoTime();
+            if (parallelTrainer != null) {
+                parallelTrainer.fit(mnistTrain);
+            } else if (accumulationTrainer != null) {
+                accumulationTrainer.fit(mnistTrain);
+            } else {
+                model.fit(mnistTrain);
+            }
+            log.info("Приключен епох {} за {} ms", i + 1, (System.nanoTime() - epochStart) / 1_000_000);
             
             // Оценка на модела след всеки епох
-            Evaluation eval = model.evaluate(mnistTest);
-            log.info("Точност след епох {}: {}", i + 1, eval.accuracy());
-            log.info("Статистика: \n{}", eval.stats());
+            int epoch = i + 1;
+            CompletableFuture<Evaluation> eval = evaluator.evaluate(model);
+            eval.thenAccept(result -> {
+                log.info("Точност след епох {}: {}", epoch, result.accuracy());
+                log.info("Статистика: \n{}", result.stats());
+            });
+            
+            // Запазване на модела във фонов режим
+            if (checkpoints != null) {
+                checkpoints.save(model).whenComplete((path, error) -> {
+                    if (error != null) {
+                        log.error("Неуспешен запис на контролна точка след епох {}", epoch, error);
+                    }
+                });
+            }
             
             // Нулиране на итератора за следващия епох
             mnistTrain.reset();
-            mnistTest.reset();
+            
+            // Ранното спиране гледа оценката на предишния епох - тя е вървяла
+            // успоредно с този и обикновено вече е готова. Към нея се пазят и
+            // параметрите от онзи епох, за да може да се върнем към тях.
+            boolean stop = convergence != null && previousEval != null
+                    && convergence.update(previousParams, epoch - 1, previousEval.join().accuracy());
+            previousEval = eval;
+            previousParams = convergence != null ? model.params().dup() : null;
+            lastEpoch = epoch;
+            if (stop) {
+                log.info("Ранно спиране след епох {}: {}", epoch, convergence.report());
+                break;
+            }
+        }
+        
+        if (convergence != null) {
+            // Оценката на последния изпълнен епох още не е записана - и при ранно
+            // спиране тя участва в избора на параметрите, към които се връщаме
+            if (previousEval != null) {
+                convergence.update(previousParams, lastEpoch, previousEval.join().accuracy());
+            }
+            if (convergence.restoreBest(model)) {
+                log.info("Възстановени параметри от епох {} с точност {}", convergence.getBestEpoch(), convergence.getBest());
+            }
+        }
+        
+        if (parallelTrainer != null) {
+            parallelTrainer.close();
+        }
+        if (accumulationTrainer != null) {
+            log.info("Натрупване на {} пакета по {}: {}", accumulation, BATCH_SIZE, accumulationTrainer.memoryReport());
         }
+        metricsSink.close();
+        log.info("Тренировката приключи успешно! Чакане на данни: {}; изчисления: {}",
+                metrics.getDataWait(), metrics.getCompute());
         
-        log.info("Тренировката приключи успешно!");
+        evaluator.close();
         
-        // Финален резултат
-        Evaluation finalEval = model.evaluate(mnistTest);
+        // Финален резултат - всички метрики от едно паралелно минаване през тестовите данни
+        BatchScorer.Result finalEval;
+        try (BatchScorer scorer = new BatchScorer(model, mnistTest, Integer.getInteger(EVAL_SHARDS_PROPERTY, 2))) {
+            finalEval = scorer.score(model);
+        }
         log.info("Финален резултат:");
         log.info("Точност: {}", finalEval.accuracy());
+        log.info("Top-{} точност: {}", TOP_K, finalEval.topK(TOP_K));
         log.info("Прецизност: {}", finalEval.precision());
         log.info("Отзивчивост: {}", finalEval.recall());
         log.info("F1 резултат: {}", finalEval.f1());
+        log.info("Статистика: \n{}", finalEval.stats());
+        if (convergence != null) {
+            log.info("Сходимост: {}", convergence.report());
+        }
         
-        // Запазване на модела (опционално)
-        // File locationToSave = new File("mnist-model.zip");
-        // ModelSerializer.writeModel(model, locationToSave, true);
+        // Сравнение с мрежата за предвиждане в намалена точност (HALF/BFLOAT16)
+        if (precision.inferenceType() != precision.trainingType()) {
+            MultiLayerNetwork inference = precision.forInference(model);
+            Evaluation reduced = inference.evaluate(mnistTest);
+            mnistTest.reset();
+            log.info("Точност в {}: {} (разлика {}), параметри {} KB вместо {} KB", precision.inferenceType(),
+                    reduced.accuracy(), String.format("%+.4f", reduced.accuracy() - finalEval.accuracy()),
+                    Precision.parameterBytes(inference) / 1024, Precision.parameterBytes(model) / 1024);
+        }
+        
+        warmup.saveToSystemProperty();
+        
+        if (checkpoints != null) {
+            checkpoints.close();
+            log.info("Последна контролна точка: {}", checkpoints.latest().orElse(null));
+        }
     }
 }
@@ -14,18 +14,22 @@ import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+
 public class Main {
     private static final Logger log = LoggerFactory.getLogger(Main.class);
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         log.info("Стартиране на DeepLearning4j пример...");
+        WarmupProfile.preloadBackend();
         
         // Създаване на проста XOR мрежа
         createAndTrainXORNetwork();
     }
     
-    public static void createAndTrainXORNetwork() {
+    public static void createAndTrainXORNetwork() throws IOException {
         log.info("Създаване на XOR невронна мрежа");
+        Precision precision = Precision.fromSystemProperty();
         
         // Подготовка на XOR данни
         INDArray input = Nd4j.create(new double[][]{
@@ -45,6 +49,7 @@ public class Main {
         // Конфигурация на мрежата
         MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
                 .seed(123)
+                .dataType(precision.trainingType())
                 .weightInit(WeightInit.XAVIER)
                 .updater(new Sgd(0.1))
                 .list()
@@ -66,6 +71,12 @@ public class Main {
         log.info("Модел създаден успешно");
         log.info(model.summary());
         
+        // Загряване с размерите от предишното стартиране (-Dwarmup.profile=файл)
+        WarmupProfile warmup = WarmupProfile.fromSystemProperty();
+        warmup.replay(model, 3);
+        warmup.recordFit(4);
+        warmup.recordOutput(4);
+        
         // Трениране
         log.info("Започване на тренировка...");
         for (int i = 0; i < 1000; i++) {
@@ -77,7 +88,7 @@ public class Main {
         
         // Тестване
         log.info("Тестване на модела:");
-        INDArray predictions = model.output(input);
+        INDArray predictions = precision.forInference(model).output(precision.forInference(input));
         
         for (int i = 0; i < 4; i++) {
             double x1 = input.getDouble(i, 0);
@@ -91,5 +102,6 @@ public class Main {
                 (int)x1, (int)x2, predictedClass, expectedClass,
                 predictedClass == expectedClass ? "✓" : "✗");
         }
+        warmup.saveToSystemProperty();
     }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.example;
+
+/**
+ * Получател на метриките от TrainingMetricsListener.
+ *
+ * Методите се викат от нишката на тренировката, затова имплементациите трябва да
+ * са бързи - без блокиращ вход/изход за всяка итерация.
+ */
+public interface MetricsSink extends AutoCloseable {
+
+    /** Пренебрегва всички метрики - остават само хистограмите и логовете на listener-а */
+    MetricsSink NONE = new MetricsSink() {
+        @Override
+        public void onIteration(TrainingMetricsListener.IterationMetrics metrics) {
+        }
+
+        @Override
+        public void onEpoch(TrainingMetricsListener.EpochMetrics metrics) {
+        }
+    };
+
+    void onIteration(TrainingMetricsListener.IterationMetrics metrics);
+
+    void onEpoch(TrainingMetricsListener.EpochMetrics metrics);
+
+    @Override
+    default void close() {
+    }
+}
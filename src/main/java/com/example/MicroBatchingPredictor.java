@@ -0,0 +1,267 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Обединява единични заявки за предвиждане от много нишки в пакети.
+ *
+ * Извикващите подават по един пример и получават CompletableFuture с реда от изхода
+ * на мрежата. Отделна нишка (dispatcher) събира заявките, докато пакетът се напълни
+ * до maxBatchSize или изтече maxWait от пристигането на първата заявка, след което
+ * прави едно извикване на model.output за целия пакет.
+ *
+ * Само dispatcher нишката вика модела, затова мрежата не трябва да се използва
+ * едновременно от друго място.
+ */
+public class MicroBatchingPredictor implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MicroBatchingPredictor.class);
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MultiLayerNetwork model;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final int numInputs;
+    private final int numOutputs;
+
+    private final BlockingQueue<Request> queue;
+    private final Request[] pending;
+    private final INDArray batchInput;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public MicroBatchingPredictor(MultiLayerNetwork model, int maxBatchSize, long maxWait, TimeUnit unit) {
+        this(model, maxBatchSize, maxWait, unit, maxBatchSize * 64);
+    }
+
+    /**
+     * @param model тренирана мрежа
+     * @param maxBatchSize максимален брой примери в едно извикване на model.output
+     * @param maxWait колко най-много чака първата заявка в пакета
+     * @param unit мерна единица на maxWait
+     * @param queueCapacity максимален брой чакащи заявки; над него submit отказва
+     */
+    public MicroBatchingPredictor(MultiLayerNetwork model, int maxBatchSize, long maxWait, TimeUnit unit,
+                                  int queueCapacity) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize трябва да е положително: " + maxBatchSize);
+        }
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("maxWait не може да е отрицателно: " + maxWait);
+        }
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.numInputs = model.layerInputSize(0);
+        this.numOutputs = model.layerSize(model.getnLayers() - 1);
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.pending = new Request[maxBatchSize];
+        this.batchInput = Nd4j.create(model.params().dataType(), maxBatchSize, numInputs);
+
+        this.dispatcher = new Thread(this::dispatchLoop, "micro-batch-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Подава един пример. Бъдещият резултат е редът от изхода на мрежата за него.
+     */
+    public CompletableFuture<double[]> submit(double... features) {
+        if (features.length != numInputs) {
+            throw new IllegalArgumentException("Очакват се " + numInputs + " входа, подадени са " + features.length);
+        }
+        Request request = new Request(features);
+        if (!running) {
+            request.result.completeExceptionally(new RejectedExecutionException("Предикторът е затворен"));
+        } else if (!queue.offer(request)) {
+            rejectedCount.incrementAndGet();
+            request.result.completeExceptionally(new RejectedExecutionException("Опашката е пълна"));
+        } else if (!running && queue.remove(request)) {
+            // close() е започнал между проверката и offer - dispatcher-ът може вече да е спрял
+            request.result.completeExceptionally(new RejectedExecutionException("Предикторът е затворен"));
+        }
+        return request.result;
+    }
+
+    /**
+     * Като FlexibleNeuralNetwork.predict, но асинхронно - връща 0 или 1
+     */
+    public CompletableFuture<Integer> predict(double x1, double x2) {
+        return submit(x1, x2).thenApply(row -> row[0] > row[1] ? 0 : 1);
+    }
+
+    private void dispatchLoop() {
+        while (running || !queue.isEmpty()) {
+            int n;
+            try {
+                n = collectBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (n > 0) {
+                runBatch(n);
+            }
+        }
+        failPending(new RejectedExecutionException("Предикторът е затворен"));
+    }
+
+    /**
+     * Чака първа заявка, след което добира до maxBatchSize заявки или до изтичане
+     * на maxWait от нейното пристигане.
+     */
+    private int collectBatch() throws InterruptedException {
+        Request first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return 0;
+        }
+        pending[0] = first;
+        int n = 1;
+
+        long deadline = first.enqueuedNanos + maxWaitNanos;
+        while (n < maxBatchSize) {
+            Request next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+            }
+            pending[n++] = next;
+        }
+        return n;
+    }
+
+    private void runBatch(int n) {
+        try {
+            DataBuffer in = batchInput.data();
+            for (int k = 0; k < n; k++) {
+                double[] features = pending[k].features;
+                for (int f = 0; f < numInputs; f++) {
+                    in.put((long) k * numInputs + f, features[f]);
+                }
+            }
+
+            INDArray input = n == maxBatchSize
+                    ? batchInput
+                    : batchInput.get(NDArrayIndex.interval(0, n), NDArrayIndex.all());
+            INDArray output = model.output(input, false);
+            if (output.ordering() != 'c') {
+                output = output.dup('c');
+            }
+
+            // Броячите се обновяват преди complete(), за да ги виждат извикващите след резултата
+            batchCount.incrementAndGet();
+            sampleCount.addAndGet(n);
+            DataBuffer out = output.data();
+            long offset = output.offset();
+            for (int k = 0; k < n; k++) {
+                double[] row = new double[numOutputs];
+                for (int c = 0; c < numOutputs; c++) {
+                    row[c] = out.getDouble(offset + (long) k * numOutputs + c);
+                }
+                pending[k].result.complete(row);
+            }
+        } catch (RuntimeException e) {
+            log.error("Грешка при пакетно предвиждане на {} примера", n, e);
+            for (int k = 0; k < n; k++) {
+                pending[k].result.completeExceptionally(e);
+            }
+        } finally {
+            for (int k = 0; k < n; k++) {
+                pending[k] = null;
+            }
+        }
+    }
+
+    private void failPending(RuntimeException cause) {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(cause);
+        }
+    }
+
+    /** Брой заявки, които чакат в опашката в момента */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getSampleCount() {
+        return sampleCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /** Среден брой примери в пакет */
+    public double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) sampleCount.get() / batches;
+    }
+
+    /** Средна запълненост на пакетите спрямо maxBatchSize, между 0 и 1 */
+    public double getAverageBatchFill() {
+        return getAverageBatchSize() / maxBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxWait(TimeUnit unit) {
+        return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Спира приемането на нови заявки, изчаква вече подадените и спира dispatcher нишката
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Пакети: {}, примери: {}, средна запълненост: {}, отказани: {}",
+                getBatchCount(), getSampleCount(), String.format("%.2f", getAverageBatchFill()), getRejectedCount());
+    }
+
+    private static final class Request {
+        final double[] features;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        Request(double[] features) {
+            this.features = features;
+        }
+    }
+}
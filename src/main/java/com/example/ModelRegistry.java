@@ -0,0 +1,292 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Регистър на мрежи по име с подмяна на версиите без спиране на предвижданията.
+ *
+ * Текущата версия на всяко име стои в AtomicReference. Нова версия се публикува така:
+ * създава се ModelReplicaPool, всяка реплика се "загрява" (JIT и заделяне на
+ * workspace) и едва тогава референцията се подменя. Загряването е с единичен
+ * пример и, ако е зададен WarmupProfile, с всеки записан размер на пакет за output. Предвижданията вземат версията
+ * с брояч на референциите - започналите върху старата версия завършват върху нея, а
+ * нативната памет на старата се освобождава от последния, който я пусне.
+ *
+ * Подмяната и премахването на едно име минават през compute/remove на картата и
+ * затова не се застъпват - версия, публикувана едновременно с remove, или остава
+ * текуща, или се освобождава от remove, но никога не остава извън регистъра.
+ *
+ * Всички версии на едно име използват едни и същи workspace-и на всяка нишка, така
+ * че подмените не трупат нова памет.
+ */
+public class ModelRegistry implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelRegistry.class);
+
+    private final int replicas;
+    private final int warmupIterations;
+    private final Map<String, AtomicReference<Version>> models = new ConcurrentHashMap<>();
+    private final AtomicLong swaps = new AtomicLong();
+    private final AtomicLong retired = new AtomicLong();
+    private volatile WarmupProfile warmupProfile;
+
+    /**
+     * @param replicas брой реплики на всяка версия
+     * @param warmupIterations колко изхода да се изчислят на всяка реплика преди подмяната
+     */
+    public ModelRegistry(int replicas, int warmupIterations) {
+        if (replicas <= 0) {
+            throw new IllegalArgumentException("Броят реплики трябва да е положителен: " + replicas);
+        }
+        if (warmupIterations < 0) {
+            throw new IllegalArgumentException("warmupIterations не може да е отрицателно: " + warmupIterations);
+        }
+        this.replicas = replicas;
+        this.warmupIterations = warmupIterations;
+    }
+
+    /**
+     * Размерите на пакети, с които да се загряват репликите на следващите версии (null - само единичен пример)
+     */
+    public void setWarmupProfile(WarmupProfile profile) {
+        this.warmupProfile = profile;
+    }
+
+    /**
+     * Публикува нова версия под даденото име. Мрежата се копира - след връщането
+     * може да се тренира по-нататък. Връща номера на новата версия.
+     */
+    public long publish(String name, MultiLayerNetwork model) {
+        long start = System.nanoTime();
+        ModelReplicaPool pool = new ModelReplicaPool(model, replicas, "MODEL_REGISTRY_" + name);
+        warmUp(pool, model);
+
+        // Подмяната е под ключа на името - remove() не може да изпусне новата версия.
+        // Версиите се номерират по реда на подмяната, дори при едновременни publish.
+        Version[] swapped = new Version[2];
+        models.compute(name, (n, current) -> {
+            AtomicReference<Version> reference = current != null ? current : new AtomicReference<>();
+            Version previous = reference.get();
+            Version next = new Version(name, previous == null ? 1 : previous.number + 1, pool);
+            reference.set(next);
+            swapped[0] = previous;
+            swapped[1] = next;
+            return reference;
+        });
+        Version previous = swapped[0];
+        Version next = swapped[1];
+
+        if (previous != null) {
+            swaps.incrementAndGet();
+            previous.release();
+        }
+        log.info("Публикувана версия {} на {} ({} реплики, загряване {} ms)", next.number, name, replicas,
+                (System.nanoTime() - start) / 1_000_000);
+        return next.number;
+    }
+
+    /**
+     * Заема всички реплики наведнъж, за да загрее всяка от тях, после ги освобождава
+     */
+    private void warmUp(ModelReplicaPool pool, MultiLayerNetwork model) {
+        int numInputs = model.layerInputSize(0);
+        double[] input = new double[numInputs];
+        List<INDArray> batches = new ArrayList<>();
+        WarmupProfile profile = warmupProfile;
+        if (profile != null) {
+            for (int size : profile.outputBatchSizes()) {
+                batches.add(Nd4j.zeros(model.params().dataType(), size, numInputs));
+            }
+        }
+        ModelReplicaPool.Replica[] borrowed = new ModelReplicaPool.Replica[pool.size()];
+        try {
+            for (int r = 0; r < borrowed.length; r++) {
+                borrowed[r] = pool.borrow();
+                for (int i = 0; i < warmupIterations; i++) {
+                    borrowed[r].output(input);
+                    for (INDArray batch : batches) {
+                        borrowed[r].output(batch);
+                    }
+                }
+            }
+        } finally {
+            for (ModelReplicaPool.Replica replica : borrowed) {
+                if (replica != null) {
+                    pool.release(replica);
+                }
+            }
+        }
+    }
+
+    /**
+     * Заема текущата версия. Трябва да се затвори, за да може старата версия да
+     * бъде освободена след подмяна.
+     *
+     * @throws IllegalArgumentException ако няма публикувана мрежа с това име
+     */
+    public Lease acquire(String name) {
+        AtomicReference<Version> current = models.get(name);
+        if (current == null) {
+            throw new IllegalArgumentException("Няма публикувана мрежа с име " + name);
+        }
+        while (true) {
+            Version version = current.get();
+            if (version == null) {
+                throw new IllegalStateException("Мрежата " + name + " е премахната");
+            }
+            // Ако броячът вече е 0, версията е подменена и освободена - чете се новата
+            if (version.retain()) {
+                return new Lease(version);
+            }
+        }
+    }
+
+    /**
+     * Изход на текущата версия за един пример
+     */
+    public double[] output(String name, double... features) {
+        try (Lease lease = acquire(name)) {
+            return lease.getPool().output(features);
+        }
+    }
+
+    /**
+     * Изход на текущата версия за пакет
+     */
+    public INDArray output(String name, INDArray input) {
+        try (Lease lease = acquire(name)) {
+            return lease.getPool().output(input);
+        }
+    }
+
+    /**
+     * Индексът на най-вероятния изход на текущата версия. При равенство печели по-големият индекс.
+     */
+    public int predict(String name, double... features) {
+        double[] output = output(name, features);
+        int best = 0;
+        for (int c = 1; c < output.length; c++) {
+            if (output[c] >= output[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Номерът на текущата версия или 0, ако няма публикувана */
+    public long getVersion(String name) {
+        AtomicReference<Version> current = models.get(name);
+        Version version = current == null ? null : current.get();
+        return version == null ? 0 : version.number;
+    }
+
+    /**
+     * Премахва мрежата. Започналите предвиждания завършват, след което паметта се освобождава.
+     */
+    public void remove(String name) {
+        AtomicReference<Version> current = models.remove(name);
+        if (current != null) {
+            Version version = current.getAndSet(null);
+            if (version != null) {
+                version.release();
+            }
+        }
+    }
+
+    /** Брой подмени на вече публикувани мрежи */
+    public long getSwaps() {
+        return swaps.get();
+    }
+
+    /** Брой версии, чиято памет вече е освободена */
+    public long getRetired() {
+        return retired.get();
+    }
+
+    @Override
+    public void close() {
+        for (String name : models.keySet()) {
+            remove(name);
+        }
+    }
+
+    /**
+     * Една версия на мрежа. Регистърът държи една референция, докато версията е текуща.
+     */
+    private final class Version {
+        private final String name;
+        private final long number;
+        private final ModelReplicaPool pool;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Version(String name, long number, ModelReplicaPool pool) {
+            this.name = name;
+            this.number = number;
+            this.pool = pool;
+        }
+
+        /** Увеличава брояча, освен ако версията вече е освободена */
+        boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            int count = references.decrementAndGet();
+            if (count == 0) {
+                pool.close();
+                retired.incrementAndGet();
+                log.debug("Освободена версия {} на {}", number, name);
+            } else if (count < 0) {
+                throw new IllegalStateException("Версия " + number + " на " + name + " е освободена повече пъти");
+            }
+        }
+    }
+
+    /**
+     * Заета версия на мрежа. Докато не е затворена, паметта на версията не се освобождава.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Version version;
+        private boolean closed;
+
+        private Lease(Version version) {
+            this.version = version;
+        }
+
+        public long getVersion() {
+            return version.number;
+        }
+
+        public ModelReplicaPool getPool() {
+            return version.pool;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                version.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Пул от копия (реплики) на тренирана мрежа за едновременно предвиждане от много нишки.
+ *
+ * MultiLayerNetwork.output е synchronized, така че една инстанция обслужва само по една
+ * нишка. Пулът клонира мрежата N пъти и раздава репликите без заключване - всяка
+ * нишка започва търсенето от "своята" реплика и я заема с compareAndSet, така че при
+ * брой нишки не по-голям от N всяка нишка почти винаги получава една и съща реплика.
+ *
+ * Всяка реплика има собствен ND4J workspace за изхода на мрежата. Workspace-ите в
+ * ND4J са обвързани с нишката, затова стабилното съответствие нишка-реплика пази и
+ * броя на създадените workspace-и малък.
+ */
+public class ModelReplicaPool implements AutoCloseable {
+
+    private static final int SPINS_BEFORE_PARK = 64;
+    private static final long PARK_NANOS = 1_000;
+
+    private static final WorkspaceConfiguration WORKSPACE_CONFIG = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .policyAllocation(AllocationPolicy.OVERALLOCATE)
+            .overallocationLimit(0.2)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .policyReset(ResetPolicy.BLOCK_LEFT)
+            .policySpill(SpillPolicy.REALLOCATE)
+            .build();
+
+    private final Replica[] replicas;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ThreadLocal<Integer> stripe;
+
+    /** Пул с по една реплика за всяко ядро */
+    public ModelReplicaPool(MultiLayerNetwork model) {
+        this(model, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param model тренирана мрежа; пулът работи само с копия и не я променя
+     * @param size брой реплики
+     */
+    public ModelReplicaPool(MultiLayerNetwork model, int size) {
+        this(model, size, "MODEL_REPLICA_" + System.identityHashCode(model) + "_" + System.nanoTime());
+    }
+
+    /**
+     * Пул, чиито workspace-и се казват workspacePrefix_0 .. workspacePrefix_(N-1).
+     * Пулове с еднакъв префикс (например последователни версии в ModelRegistry)
+     * използват едни и същи workspace-и на всяка нишка, вместо да трупат нови.
+     */
+    ModelReplicaPool(MultiLayerNetwork model, int size, String workspacePrefix) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Броят реплики трябва да е положителен: " + size);
+        }
+        this.replicas = new Replica[size];
+        for (int i = 0; i < size; i++) {
+            replicas[i] = new Replica(model.clone(), workspacePrefix + "_" + i);
+        }
+        this.stripe = ThreadLocal.withInitial(() -> Math.floorMod(nextStripe.getAndIncrement(), size));
+    }
+
+    /**
+     * Заема свободна реплика. Трябва задължително да се върне с release.
+     */
+    public Replica borrow() {
+        int start = stripe.get();
+        for (int attempt = 0; ; attempt++) {
+            for (int k = 0; k < replicas.length; k++) {
+                Replica replica = replicas[(start + k) % replicas.length];
+                if (replica.inUse.compareAndSet(false, true)) {
+                    return replica;
+                }
+            }
+            if (attempt < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    public void release(Replica replica) {
+        replica.inUse.set(false);
+    }
+
+    /**
+     * Изход на мрежата за един пример
+     */
+    public double[] output(double... features) {
+        Replica replica = borrow();
+        try {
+            return replica.output(features);
+        } finally {
+            release(replica);
+        }
+    }
+
+    /**
+     * Изход на мрежата за пакет. Резултатът е извън всички workspace-и.
+     */
+    public INDArray output(INDArray input) {
+        Replica replica = borrow();
+        try {
+            return replica.output(input);
+        } finally {
+            release(replica);
+        }
+    }
+
+    /**
+     * Като FlexibleNeuralNetwork.predict - връща 0 или 1
+     */
+    public int predict(double x1, double x2) {
+        double[] output = output(x1, x2);
+        return output[0] > output[1] ? 0 : 1;
+    }
+
+    public int size() {
+        return replicas.length;
+    }
+
+    /**
+     * Освобождава нативната памет на всички реплики. Не трябва да има заети реплики.
+     */
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            replica.model.close();
+        }
+    }
+
+    /**
+     * Едно копие на мрежата със собствен workspace и входен буфер
+     */
+    public static final class Replica {
+        private final MultiLayerNetwork model;
+        private final String workspaceId;
+        private final AtomicBoolean inUse = new AtomicBoolean();
+        private final INDArray singleInput;
+        private final int numOutputs;
+
+        private Replica(MultiLayerNetwork model, String workspaceId) {
+            this.model = model;
+            this.workspaceId = workspaceId;
+            this.singleInput = Nd4j.create(model.params().dataType(), 1, model.layerInputSize(0));
+            this.numOutputs = model.layerSize(model.getnLayers() - 1);
+        }
+
+        public MultiLayerNetwork getModel() {
+            return model;
+        }
+
+        /**
+         * Изход за един пример - входът се копира в преизползваемия входен буфер на репликата
+         */
+        public double[] output(double... features) {
+            DataBuffer in = singleInput.data();
+            for (int f = 0; f < features.length; f++) {
+                in.put(f, features[f]);
+            }
+            double[] result = new double[numOutputs];
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(WORKSPACE_CONFIG, workspaceId)) {
+                INDArray output = model.output(singleInput, false, ws);
+                for (int c = 0; c < numOutputs; c++) {
+                    result[c] = output.getDouble(0, c);
+                }
+            }
+            return result;
+        }
+
+        public INDArray output(INDArray input) {
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(WORKSPACE_CONFIG, workspaceId)) {
+                return model.output(input, false, ws).detach();
+            }
+        }
+    }
+}
@@ -36,5 +36,11 @@ public class ND4JExample {
         INDArray normalized = matrix1.sub(matrix1.mean()).div(matrix1.std());
         System.out.println("\nНормализирана матрица 1:");
         System.out.println(normalized);
+
+        // Същата нормализация като слят израз - средната и отклонението с едно минаване,
+        // изваждането и делението с още едно, без временни масиви
+        INDArray fused = LazyExpression.of(matrix1).normalize().eval();
+        System.out.println("\nНормализирана матрица 1 (LazyExpression):");
+        System.out.println(fused);
     }
 }
@@ -1,36 +1,44 @@
 package com.example;
 
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * Визуализация на решенията на невронната мрежа
  */
 public class NetworkVisualizer {
-    
+
     public static void visualizeDecisionBoundary(MultiLayerNetwork model, int resolution) {
         System.out.println("\nВизуализация на решението на мрежата:");
         System.out.println("(0 = false, 1 = true)");
         System.out.println("=======================");
-        
-        for (int i = 0; i <= resolution; i++) {
-            for (int j = 0; j <= resolution; j++) {
-                double x = (double) i / resolution;
-                double y = (double) j / resolution;
-                
-                INDArray input = Nd4j.create(new double[][]{{x, y}});
-                INDArray output = model.output(input);
-                
-                int prediction = output.getDouble(0) > output.getDouble(1) ? 0 : 1;
-                
-                if (prediction == 0) {
-                    System.out.print("0 ");
-                } else {
-                    System.out.print("1 ");
-                }
+
+        DecisionBoundaryGrid grid = new DecisionBoundaryGrid(resolution);
+        grid.evaluate(model);
+
+        StringBuilder line = new StringBuilder(grid.getSide() * 2);
+        for (int i = 0; i < grid.getSide(); i++) {
+            line.setLength(0);
+            for (int j = 0; j < grid.getSide(); j++) {
+                line.append(grid.classAt(i, j) == 0 ? "0 " : "1 ");
             }
-            System.out.println();
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Записва решението на мрежата във файл - CSV при разширение .csv, иначе PGM изображение
+     */
+    public static void saveDecisionBoundary(MultiLayerNetwork model, int resolution, Path file) throws IOException {
+        DecisionBoundaryGrid grid = new DecisionBoundaryGrid(resolution);
+        grid.evaluate(model);
+
+        if (file.getFileName().toString().toLowerCase().endsWith(".csv")) {
+            grid.writeCsv(file);
+        } else {
+            grid.writePgm(file, model.layerSize(model.getnLayers() - 1));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,336 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Онлайн обучение върху поток от етикетирани примери.
+ *
+ * Примерите влизат в ограничена опашка. Отделна нишка ги събира в пакети от до
+ * batchSize примера (или по-малко, ако до maxWait от първия не дойдат нови) и
+ * прави по една стъпка model.fit за всеки пакет - без да повтаря предишните епохи.
+ *
+ * Предвижданията не четат мрежата, която се тренира. След всеки пакет теглата се
+ * копират в нов, непроменим CompiledDenseNetwork, който се публикува с една
+ * volatile запис (copy-on-write). Читателите винаги виждат цяла, консистентна
+ * версия и никога не чакат тренировката.
+ *
+ * Пакет, за който fit хвърли грешка, се пропуска и се брои като неуспешен;
+ * първата такава грешка се хвърля от следващия flush().
+ *
+ * Докато обучението върви, мрежата не трябва да се използва от друго място.
+ */
+public class OnlineLearner implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OnlineLearner.class);
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MultiLayerNetwork model;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final int numInputs;
+    private final int numOutputs;
+
+    private final BlockingQueue<Sample> queue;
+    private final Sample[] pending;
+    private final INDArray features;
+    private final INDArray labels;
+    private final Thread learner;
+    private volatile boolean running = true;
+    private volatile Snapshot snapshot;
+
+    private final ThreadLocal<double[][]> buffers;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private long batches;
+
+    /**
+     * @param model мрежата, която ще се дообучава
+     * @param queueCapacity максимален брой чакащи примера; над него offer отказва
+     * @param batchSize максимален брой примери в една стъпка fit
+     * @param maxWait колко най-много чака първият пример в пакета
+     * @param unit мерна единица на maxWait
+     */
+    public OnlineLearner(MultiLayerNetwork model, int queueCapacity, int batchSize, long maxWait, TimeUnit unit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize трябва да е положително: " + batchSize);
+        }
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("maxWait не може да е отрицателно: " + maxWait);
+        }
+        this.model = model;
+        this.batchSize = batchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.numInputs = model.layerInputSize(0);
+        this.numOutputs = model.layerSize(model.getnLayers() - 1);
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.pending = new Sample[batchSize];
+        this.features = Nd4j.create(model.params().dataType(), batchSize, numInputs);
+        this.labels = Nd4j.create(model.params().dataType(), batchSize, numOutputs);
+
+        this.snapshot = new Snapshot(CompiledDenseNetwork.compile(model), 0, 0);
+        this.buffers = ThreadLocal.withInitial(() -> new double[][]{
+                snapshot.network.newScratch(), new double[numOutputs]});
+
+        this.learner = new Thread(this::learnLoop, "online-learner");
+        this.learner.setDaemon(true);
+        this.learner.start();
+    }
+
+    /**
+     * Добавя пример без да чака. Връща false, ако опашката е пълна или обучението е спряно.
+     *
+     * @param label индекс на верния изход
+     */
+    public boolean offer(int label, double... x) {
+        Sample sample = sample(label, x);
+        if (running && queue.offer(sample)) {
+            // close() може да е спрял нишката между проверката и добавянето
+            if (running || !queue.remove(sample)) {
+                accepted.incrementAndGet();
+                return true;
+            }
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Добавя пример, като чака място в опашката
+     */
+    public void put(int label, double... x) throws InterruptedException {
+        Sample sample = sample(label, x);
+        if (!running) {
+            throw new IllegalStateException("Обучението е спряно");
+        }
+        queue.put(sample);
+        // Ако нишката вече е спряна, примерът не би бил обучен
+        if (!running && queue.remove(sample)) {
+            rejected.incrementAndGet();
+            throw new IllegalStateException("Обучението е спряно");
+        }
+        accepted.incrementAndGet();
+    }
+
+    private Sample sample(int label, double[] x) {
+        if (x.length != numInputs) {
+            throw new IllegalArgumentException("Очакват се " + numInputs + " входа, подадени са " + x.length);
+        }
+        if (label < 0 || label >= numOutputs) {
+            throw new IllegalArgumentException("Етикетът трябва да е между 0 и " + (numOutputs - 1) + ": " + label);
+        }
+        return new Sample(x.clone(), label, System.nanoTime());
+    }
+
+    private void learnLoop() {
+        while (running || !queue.isEmpty()) {
+            int n;
+            try {
+                n = collectBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (n > 0) {
+                trainBatch(n);
+            }
+        }
+    }
+
+    /**
+     * Чака първи пример, след което добира до batchSize примера или до изтичане
+     * на maxWait от неговото пристигане.
+     */
+    private int collectBatch() throws InterruptedException {
+        Sample first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return 0;
+        }
+        pending[0] = first;
+        int n = 1;
+
+        long deadline = first.enqueuedNanos + maxWaitNanos;
+        while (n < batchSize) {
+            Sample next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+            }
+            pending[n++] = next;
+        }
+        return n;
+    }
+
+    private void trainBatch(int n) {
+        try {
+            DataBuffer in = features.data();
+            DataBuffer out = labels.data();
+            for (int k = 0; k < n; k++) {
+                Sample sample = pending[k];
+                for (int f = 0; f < numInputs; f++) {
+                    in.put((long) k * numInputs + f, sample.x[f]);
+                }
+                for (int c = 0; c < numOutputs; c++) {
+                    out.put((long) k * numOutputs + c, c == sample.label ? 1.0 : 0.0);
+                }
+            }
+
+            if (n == batchSize) {
+                model.fit(features, labels);
+            } else {
+                model.fit(features.get(NDArrayIndex.interval(0, n), NDArrayIndex.all()),
+                          labels.get(NDArrayIndex.interval(0, n), NDArrayIndex.all()));
+            }
+            batches++;
+
+            // Copy-on-write: нова непроменима версия на теглата
+            Snapshot previous = snapshot;
+            snapshot = new Snapshot(CompiledDenseNetwork.compile(model), previous.version + 1, previous.samples + n);
+        } catch (RuntimeException e) {
+            log.error("Грешка при онлайн обучение върху {} примера", n, e);
+            failure.compareAndSet(null, e);
+            failed.addAndGet(n);
+        } finally {
+            for (int k = 0; k < n; k++) {
+                pending[k] = null;
+            }
+        }
+    }
+
+    /**
+     * Предвиждане от последната публикувана версия - не чака обучението.
+     * При равенство печели по-големият индекс.
+     */
+    public int predict(double... x) {
+        double[][] buffer = buffers.get();
+        double[] output = buffer[1];
+        snapshot.network.output(x, output, buffer[0]);
+        int best = 0;
+        for (int c = 1; c < output.length; c++) {
+            if (output[c] >= output[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Последната публикувана версия на теглата */
+    public CompiledDenseNetwork snapshot() {
+        return snapshot.network;
+    }
+
+    /** Брой публикувани версии след началната */
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    /** Брой примери, включени в последната публикувана версия */
+    public long getSamplesTrained() {
+        return snapshot.samples;
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /** Брой приети примери, пропуснати заради грешка при fit */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Чака, докато всички приети досега примери бъдат обучени и публикувани.
+     * Ако междувременно fit е хвърлил грешка, тя се хвърля оттук (веднъж).
+     */
+    public void flush(long timeout, TimeUnit unit) throws TimeoutException {
+        long target = accepted.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        // Неуспешните пакети също са обработени - иначе flush би чакал до timeout
+        while (snapshot.samples + failed.get() < target) {
+            if (!learner.isAlive()) {
+                throw new IllegalStateException("Нишката за обучение е спряна");
+            }
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("Обучени са " + snapshot.samples + " от " + target + " примера");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        RuntimeException error = failure.getAndSet(null);
+        if (error != null) {
+            throw new IllegalStateException("Неуспешно обучение на " + failed.get() + " от " + target + " примера", error);
+        }
+    }
+
+    /**
+     * Спира приемането на примери и изчаква обучението на вече приетите
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            learner.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Онлайн обучение: {} примера в {} пакета, {} отказани, {} неуспешни", snapshot.samples, batches,
+                rejected.get(), failed.get());
+    }
+
+    private static final class Sample {
+        final double[] x;
+        final int label;
+        final long enqueuedNanos;
+
+        Sample(double[] x, int label, long enqueuedNanos) {
+            this.x = x;
+            this.label = label;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * Непроменима публикувана версия
+     */
+    private static final class Snapshot {
+        final CompiledDenseNetwork network;
+        final long version;
+        final long samples;
+
+        Snapshot(CompiledDenseNetwork network, long version, long samples) {
+            this.network = network;
+            this.version = version;
+            this.samples = samples;
+        }
+    }
+}
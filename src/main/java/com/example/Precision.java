@@ -0,0 +1,91 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.util.Locale;
+
+/**
+ * Числова точност на мрежите и на данните.
+ *
+ * DOUBLE и FLOAT се използват и за тренировка, и за предвиждане. HALF и BFLOAT16
+ * са само за предвиждане - мрежата се тренира във FLOAT и след това се
+ * конвертира с forInference(). Избира се с -Dprecision=float|double|half|bfloat16.
+ *
+ * На CPU HALF и BFLOAT16 намаляват паметта наполовина спрямо FLOAT, но ND4J няма
+ * BLAS за тях и матричното умножение е многократно по-бавно (виж PrecisionBenchmark).
+ * За бързина на CPU FLOAT е най-добрият избор.
+ */
+public enum Precision {
+    DOUBLE(DataType.DOUBLE, DataType.DOUBLE),
+    FLOAT(DataType.FLOAT, DataType.FLOAT),
+    HALF(DataType.FLOAT, DataType.HALF),
+    BFLOAT16(DataType.FLOAT, DataType.BFLOAT16);
+
+    public static final String PROPERTY = "precision";
+
+    private final DataType trainingType;
+    private final DataType inferenceType;
+
+    Precision(DataType trainingType, DataType inferenceType) {
+        this.trainingType = trainingType;
+        this.inferenceType = inferenceType;
+    }
+
+    /** Тип на параметрите и данните при тренировка */
+    public DataType trainingType() {
+        return trainingType;
+    }
+
+    /** Тип на параметрите и данните при предвиждане */
+    public DataType inferenceType() {
+        return inferenceType;
+    }
+
+    /**
+     * Точността от -Dprecision; по подразбиране FLOAT
+     */
+    public static Precision fromSystemProperty() {
+        String value = System.getProperty(PROPERTY);
+        if (value == null) {
+            return FLOAT;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Непозната точност: " + value + " (очаква се double, float, half или bfloat16)");
+        }
+    }
+
+    /**
+     * Копие на мрежата за предвиждане в тази точност. Ако типът съвпада, се връща
+     * същата мрежа.
+     */
+    public MultiLayerNetwork forInference(MultiLayerNetwork model) {
+        if (model.params().dataType() == inferenceType) {
+            return model;
+        }
+        return model.convertDataType(inferenceType);
+    }
+
+    /** Данните в типа за тренировка */
+    public DataSet forTraining(DataSet data) {
+        return new DataSet(cast(data.getFeatures(), trainingType), cast(data.getLabels(), trainingType));
+    }
+
+    /** Вход в типа за предвиждане */
+    public INDArray forInference(INDArray input) {
+        return cast(input, inferenceType);
+    }
+
+    private static INDArray cast(INDArray array, DataType type) {
+        return array == null || array.dataType() == type ? array : array.castTo(type);
+    }
+
+    /** Памет за параметрите на мрежата в байтове */
+    public static long parameterBytes(MultiLayerNetwork model) {
+        return model.params().length() * model.params().dataType().width();
+    }
+}
@@ -0,0 +1,331 @@
+package com.example;
+
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Мрежа от DenseLayer и OutputLayer с тегла, квантувани до int8 след тренировката.
+ *
+ * Теглата на всеки слой се пазят като byte[] (транспонирани, както в
+ * CompiledDenseNetwork) с един мащаб на слой: w ≈ q * weightScale. Входът на всеки
+ * слой също се квантува симетрично с мащаб, калибриран по максималната абсолютна
+ * стойност на входа върху част от тренировъчните данни. Скаларното произведение
+ * се смята в int, а резултатът се връща в реални числа с weightScale * inputScale,
+ * добавя се bias и се прилага активацията.
+ *
+ * Теглата са непроменими. output(input, output) използва вътрешни буфери и не е
+ * thread-safe.
+ */
+public class QuantizedDenseNetwork {
+
+    private static final Logger log = LoggerFactory.getLogger(QuantizedDenseNetwork.class);
+    private static final int Q_MAX = 127;
+
+    private final byte[] weights;
+    private final float[] biases;
+    private final float[] weightScales;
+    private final float[] inputScales;
+    private final int[] nIn;
+    private final int[] nOut;
+    private final int[] weightOffsets;
+    private final int[] biasOffsets;
+    private final CompiledDenseNetwork.Kind[] activations;
+    private final int maxWidth;
+
+    private final byte[] quantized;
+    private final double[] scratch;
+    private final double[] result;
+
+    private QuantizedDenseNetwork(byte[] weights, float[] biases, float[] weightScales, float[] inputScales,
+                                  int[] nIn, int[] nOut, CompiledDenseNetwork.Kind[] activations) {
+        this.weights = weights;
+        this.biases = biases;
+        this.weightScales = weightScales;
+        this.inputScales = inputScales;
+        this.nIn = nIn;
+        this.nOut = nOut;
+        this.activations = activations;
+
+        int layers = nOut.length;
+        this.weightOffsets = new int[layers];
+        this.biasOffsets = new int[layers];
+        int width = 0;
+        for (int l = 1; l < layers; l++) {
+            weightOffsets[l] = weightOffsets[l - 1] + nIn[l - 1] * nOut[l - 1];
+            biasOffsets[l] = biasOffsets[l - 1] + nOut[l - 1];
+        }
+        for (int l = 0; l < layers; l++) {
+            width = Math.max(width, Math.max(nIn[l], nOut[l]));
+        }
+        this.maxWidth = width;
+        this.quantized = new byte[width];
+        this.scratch = new double[2 * width];
+        this.result = new double[nOut[layers - 1]];
+    }
+
+    /**
+     * Квантува теглата на мрежата и калибрира мащабите на входовете.
+     *
+     * @param model тренирана мрежа от DenseLayer и OutputLayer
+     * @param calibration данни за калибриране; итераторът се нулира след това
+     * @param batches колко пакета от итератора да се използват
+     * @throws IllegalArgumentException ако мрежата съдържа друг слой или активация
+     */
+    public static QuantizedDenseNetwork quantize(MultiLayerNetwork model, DataSetIterator calibration, int batches) {
+        if (batches <= 0) {
+            throw new IllegalArgumentException("Броят пакети за калибриране трябва да е положителен: " + batches);
+        }
+        int layers = model.getnLayers();
+        int[] nIn = new int[layers];
+        int[] nOut = new int[layers];
+        CompiledDenseNetwork.Kind[] activations = new CompiledDenseNetwork.Kind[layers];
+        int weightCount = 0;
+        int biasCount = 0;
+        for (int l = 0; l < layers; l++) {
+            activations[l] = CompiledDenseNetwork.kindOf(CompiledDenseNetwork.denseLayer(model, l).getActivationFn(), l);
+            nIn[l] = model.layerInputSize(l);
+            nOut[l] = model.layerSize(l);
+            weightCount += nIn[l] * nOut[l];
+            biasCount += nOut[l];
+        }
+
+        // Тегла - един симетричен мащаб на слой
+        byte[] weights = new byte[weightCount];
+        float[] biases = new float[biasCount];
+        float[] weightScales = new float[layers];
+        int w = 0;
+        int b = 0;
+        for (int l = 0; l < layers; l++) {
+            INDArray layerWeights = model.getLayer(l).getParam("W");
+            INDArray layerBias = model.getLayer(l).getParam("b");
+            double scale = scale(Math.abs(layerWeights.amaxNumber().doubleValue()));
+            weightScales[l] = (float) scale;
+            for (int o = 0; o < nOut[l]; o++) {
+                for (int i = 0; i < nIn[l]; i++) {
+                    weights[w++] = quantize(layerWeights.getDouble(i, o), 1.0 / scale);
+                }
+                biases[b++] = layerBias.getFloat(o);
+            }
+        }
+
+        // Входове - максимална абсолютна стойност на входа на всеки слой
+        double[] maxInput = new double[layers];
+        int seen = 0;
+        while (calibration.hasNext() && seen < batches) {
+            DataSet batch = calibration.next();
+            List<INDArray> activationsPerLayer = model.feedForward(batch.getFeatures(), false);
+            for (int l = 0; l < layers; l++) {
+                maxInput[l] = Math.max(maxInput[l], activationsPerLayer.get(l).amaxNumber().doubleValue());
+            }
+            seen++;
+        }
+        if (calibration.resetSupported()) {
+            calibration.reset();
+        }
+        if (seen == 0) {
+            throw new IllegalArgumentException("Няма данни за калибриране");
+        }
+        float[] inputScales = new float[layers];
+        for (int l = 0; l < layers; l++) {
+            inputScales[l] = (float) scale(maxInput[l]);
+        }
+
+        return new QuantizedDenseNetwork(weights, biases, weightScales, inputScales, nIn, nOut, activations);
+    }
+
+    private static double scale(double maxAbs) {
+        return maxAbs > 0 ? maxAbs / Q_MAX : 1.0;
+    }
+
+    private static byte quantize(double value, double inverseScale) {
+        long q = Math.round(value * inverseScale);
+        return (byte) Math.max(-Q_MAX, Math.min(Q_MAX, q));
+    }
+
+    /**
+     * Forward pass с вътрешните буфери. Не е thread-safe.
+     *
+     * @param input вход с дължина numInputs()
+     * @param output масив с дължина поне numOutputs()
+     */
+    public void output(double[] input, double[] output) {
+        int layers = nOut.length;
+        double[] in = input;
+        int inBase = 0;
+
+        for (int l = 0; l < layers; l++) {
+            boolean last = l == layers - 1;
+            double[] out = last ? output : scratch;
+            int outBase = last ? 0 : (l % 2 == 0 ? 0 : maxWidth);
+
+            int inputs = nIn[l];
+            int outputs = nOut[l];
+            double inverseScale = 1.0 / inputScales[l];
+            for (int i = 0; i < inputs; i++) {
+                quantized[i] = quantize(in[inBase + i], inverseScale);
+            }
+
+            double dequantize = (double) weightScales[l] * inputScales[l];
+            int row = weightOffsets[l];
+            int bias = biasOffsets[l];
+            for (int o = 0; o < outputs; o++) {
+                int acc = 0;
+                for (int i = 0; i < inputs; i++) {
+                    acc += weights[row + i] * quantized[i];
+                }
+                out[outBase + o] = acc * dequantize + biases[bias + o];
+                row += inputs;
+            }
+            CompiledDenseNetwork.activate(activations[l], out, outBase, outputs);
+
+            in = out;
+            inBase = outBase;
+        }
+    }
+
+    /**
+     * Изход за пакет - по един ред на пример, във FLOAT. Не е thread-safe.
+     */
+    public INDArray output(INDArray features) {
+        int rows = (int) features.size(0);
+        int outputs = numOutputs();
+        float[] flat = new float[rows * outputs];
+        double[] input = new double[numInputs()];
+        for (int r = 0; r < rows; r++) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = features.getDouble(r, i);
+            }
+            output(input, result);
+            for (int c = 0; c < outputs; c++) {
+                flat[r * outputs + c] = (float) result[c];
+            }
+        }
+        return Nd4j.create(flat, new long[]{rows, outputs}, DataType.FLOAT);
+    }
+
+    /**
+     * Индексът на най-вероятния изход. При равенство печели по-големият индекс.
+     */
+    public int predict(double... input) {
+        output(input, result);
+        int best = 0;
+        for (int c = 1; c < result.length; c++) {
+            if (result[c] >= result[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Оценка върху всички пакети на итератора; итераторът се нулира след това */
+    public Evaluation evaluate(DataSetIterator data) {
+        Evaluation evaluation = new Evaluation();
+        while (data.hasNext()) {
+            DataSet batch = data.next();
+            evaluation.eval(batch.getLabels(), output(batch.getFeatures()));
+        }
+        if (data.resetSupported()) {
+            data.reset();
+        }
+        return evaluation;
+    }
+
+    /** Размер в байтове - int8 тегла, float bias и мащаби */
+    public long sizeBytes() {
+        return weights.length + 4L * (biases.length + weightScales.length + inputScales.length);
+    }
+
+    public int numInputs() {
+        return nIn[0];
+    }
+
+    public int numOutputs() {
+        return nOut[nOut.length - 1];
+    }
+
+    public int numLayers() {
+        return nOut.length;
+    }
+
+    public float weightScale(int layer) {
+        return weightScales[layer];
+    }
+
+    public float inputScale(int layer) {
+        return inputScales[layer];
+    }
+
+    /**
+     * Квантува MNIST мрежата и сравнява размер, закъснение и точност с оригинала.
+     * Аргументи: [контролна точка от CheckpointManager] [пакети за калибриране]
+     * Без контролна точка мрежата се тренира един епох.
+     */
+    public static void main(String[] args) throws IOException {
+        int calibrationBatches = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        DataSetIterator train = MNISTClassifier.createIterator(true);
+        DataSetIterator test = MNISTClassifier.createIterator(false);
+
+        MultiLayerNetwork model;
+        if (args.length > 0) {
+            model = CheckpointManager.restore(Paths.get(args[0]), false);
+        } else {
+            log.info("Тренировка на MNIST мрежата за един епох...");
+            model = MNISTClassifier.createModel();
+            model.fit(train);
+            train.reset();
+        }
+
+        QuantizedDenseNetwork quantized = quantize(model, train, calibrationBatches);
+        CompiledDenseNetwork compiled = CompiledDenseNetwork.compile(model);
+
+        Evaluation floatEval = model.evaluate(test);
+        test.reset();
+        Evaluation quantizedEval = quantized.evaluate(test);
+
+        // Закъснение за един пример
+        DataSet batch = test.next();
+        test.reset();
+        double[] input = batch.getFeatures().getRow(0).toDoubleVector();
+        INDArray row = batch.getFeatures().getRow(0, true);
+        double[] output = new double[compiled.numOutputs()];
+        int repeats = 2000;
+        for (int i = 0; i < repeats; i++) {
+            model.output(row);
+            compiled.output(input, output);
+            quantized.output(input, output);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            model.output(row);
+        }
+        double nd4jMicros = (System.nanoTime() - start) / 1e3 / repeats;
+        start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            compiled.output(input, output);
+        }
+        double compiledMicros = (System.nanoTime() - start) / 1e3 / repeats;
+        start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            quantized.output(input, output);
+        }
+        double quantizedMicros = (System.nanoTime() - start) / 1e3 / repeats;
+
+        log.info("Размер: float {} KB, int8 {} KB", Precision.parameterBytes(model) / 1024, quantized.sizeBytes() / 1024);
+        log.info("Закъснение за пример: ND4J {} µs, компилирана {} µs, int8 {} µs",
+                String.format("%.1f", nd4jMicros), String.format("%.1f", compiledMicros),
+                String.format("%.1f", quantizedMicros));
+        log.info("Точност: float {}, int8 {} (разлика {})", floatEval.accuracy(), quantizedEval.accuracy(),
+                String.format("%+.4f", quantizedEval.accuracy() - floatEval.accuracy()));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example;
+
+/**
+ * Средна стойност и дисперсия по колони, изчислявани на една стъпка (алгоритъм на Уелфорд).
+ *
+ * Не пази стойностите - само броя, средната и сумата от квадратите на отклоненията
+ * (M2) за всяка колона, така че паметта не зависи от размера на данните. Две
+ * частични статистики (например от различни части на файл, обработени в
+ * паралелни нишки) се обединяват с merge() по формулата на Чан и резултатът е
+ * същият като при последователно минаване.
+ *
+ * Не е thread-safe - всяка нишка трябва да има собствена инстанция.
+ */
+public class RunningStats {
+
+    private final double[] mean;
+    private final double[] m2;
+    private long count;
+
+    public RunningStats(int columns) {
+        this.mean = new double[columns];
+        this.m2 = new double[columns];
+    }
+
+    /**
+     * Възстановява статистика от записани брой, средни и M2 (виж getM2)
+     */
+    RunningStats(long count, double[] mean, double[] m2) {
+        this.count = count;
+        this.mean = mean.clone();
+        this.m2 = m2.clone();
+    }
+
+    /** Добавя един ред със стойност за всяка колона */
+    public void add(double[] row) {
+        count++;
+        for (int c = 0; c < mean.length; c++) {
+            double delta = row[c] - mean[c];
+            mean[c] += delta / count;
+            m2[c] += delta * (row[c] - mean[c]);
+        }
+    }
+
+    /** Добавя статистиката на друга част от данните */
+    public void merge(RunningStats other) {
+        if (other.mean.length != mean.length) {
+            throw new IllegalArgumentException("Различен брой колони: " + mean.length + " и " + other.mean.length);
+        }
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        for (int c = 0; c < mean.length; c++) {
+            double delta = other.mean[c] - mean[c];
+            mean[c] += delta * other.count / total;
+            m2[c] += other.m2[c] + delta * delta * count * other.count / total;
+        }
+        count = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getColumns() {
+        return mean.length;
+    }
+
+    public double getMean(int column) {
+        return mean[column];
+    }
+
+    /** Сума от квадратите на отклоненията от средната */
+    public double getM2(int column) {
+        return m2[column];
+    }
+
+    /** Дисперсия на генералната съвкупност (деление на n) */
+    public double getVariance(int column) {
+        return count == 0 ? 0 : m2[column] / count;
+    }
+
+    public double getStd(int column) {
+        return Math.sqrt(getVariance(column));
+    }
+}
@@ -0,0 +1,481 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Вграден HTTP сървър за предвиждания с мрежите от ModelRegistry, върху
+ * com.sun.net.httpserver от JDK - без допълнителни зависимости.
+ *
+ * POST /predict/{име} приема един пример или пакет:
+ *  - application/json - [x1, x2, ...] или [[x1, x2, ...], [...]]; отговорът е
+ *    {"version":N,"outputs":[[...], ...]};
+ *  - application/octet-stream - редове от float32 в little-endian; отговорът са
+ *    изходите като float32 в little-endian, а версията е в заглавката X-Model-Version.
+ * GET /metrics връща брой заявки, примери, грешки и p50/p99 на латентността за
+ * всяка мрежа като JSON; GET /health връща "ok".
+ *
+ * Заявките се обработват от ограничен пул нишки с ограничена опашка. При пълна
+ * опашка заявката се изпълнява в нишката, която приема връзките, така че
+ * сървърът спира да приема нови, вместо да трупа неограничено.
+ *
+ * Тялото на заявката се чете в преизползваем буфер на нишката и числата се
+ * декодират от байтовете директно в предварително заделения входен масив на
+ * нишката, без междинни String или double[].
+ *
+ * TCP_NODELAY: без него отговорът, изпратен на две части (заглавки и тяло), чака
+ * delayed ACK на клиента - около 40 ms на заявка. JDK сървърът чете свойството
+ * sun.net.httpserver.nodelay веднъж за целия процес, при създаването на първия
+ * HttpServer, затова класът не го променя. main() го задава преди да създаде
+ * сървъра, профилът startup и тестовете го подават с -D, а приложение, което
+ * вгражда сървъра, трябва да стартира JVM с -Dsun.net.httpserver.nodelay=true.
+ */
+public class ScoringServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoringServer.class);
+
+    public static final String JSON = "application/json";
+    public static final String BINARY = "application/octet-stream";
+    public static final String VERSION_HEADER = "X-Model-Version";
+    /** Системно свойство на JDK сървъра за TCP_NODELAY, виж описанието на класа */
+    public static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private static final String PREDICT_PATH = "/predict/";
+    private static final int MAX_BODY_BYTES = 16 << 20;
+
+    private final ModelRegistry registry;
+    private final int maxBatchSize;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ModelMetrics> metrics = new ConcurrentHashMap<>();
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+    private volatile WarmupProfile profile;
+
+    /**
+     * @param registry мрежите, които се обслужват; сървърът не ги затваря
+     * @param port порт; 0 - свободен порт (виж getPort)
+     * @param threads брой нишки за обработка на заявките
+     * @param queueCapacity колко заявки могат да чакат свободна нишка
+     * @param maxBatchSize най-много примери в една заявка
+     */
+    public ScoringServer(ModelRegistry registry, int port, int threads, int queueCapacity, int maxBatchSize)
+            throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Броят нишки трябва да е положителен: " + threads);
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize трябва да е положително: " + maxBatchSize);
+        }
+        this.registry = registry;
+        this.maxBatchSize = maxBatchSize;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "scoring-http-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.server = HttpServer.create(new InetSocketAddress(port), queueCapacity);
+        server.setExecutor(executor);
+        server.createContext(PREDICT_PATH, this::handlePredict);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/health", exchange -> send(exchange, 200, "text/plain",
+                "ok".getBytes(StandardCharsets.US_ASCII)));
+        server.start();
+        log.info("Сървърът за предвиждания слуша на порт {} с {} нишки", getPort(), threads);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Записва размерите на обслужените пакети в profile (null - спира записа)
+     */
+    public void recordWarmup(WarmupProfile profile) {
+        this.profile = profile;
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String name = exchange.getRequestURI().getPath().substring(PREDICT_PATH.length());
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", bytes("Очаква се POST"));
+                return;
+            }
+            ModelRegistry.Lease lease;
+            try {
+                lease = registry.acquire(name);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                send(exchange, 404, "text/plain", bytes(e.getMessage()));
+                return;
+            }
+            ModelMetrics model = metrics.computeIfAbsent(name, n -> new ModelMetrics());
+            try {
+                score(exchange, lease, model, start);
+            } catch (IllegalArgumentException e) {
+                model.errors.incrementAndGet();
+                send(exchange, 400, "text/plain", bytes(e.getMessage()));
+            } catch (RuntimeException e) {
+                log.warn("Грешка при предвиждане с {}", name, e);
+                model.errors.incrementAndGet();
+                send(exchange, 500, "text/plain", bytes(String.valueOf(e.getMessage())));
+            } finally {
+                lease.close();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void score(HttpExchange exchange, ModelRegistry.Lease lease, ModelMetrics model, long start)
+            throws IOException {
+        Buffers scratch = buffers.get();
+        ByteBuffer body = scratch.read(exchange.getRequestBody());
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean binary = contentType != null && contentType.startsWith(BINARY);
+
+        // Репликата се заема само за декодирането и изчислението, не и за изпращането
+        int rows;
+        INDArray output;
+        ModelReplicaPool.Replica replica = lease.getPool().borrow();
+        try {
+            MultiLayerNetwork network = replica.getModel();
+            INDArray input = scratch.input(network.params().dataType(), network.layerInputSize(0));
+            rows = binary ? decodeBinary(body, input) : decodeJson(body, input);
+            output = replica.output(input.get(NDArrayIndex.interval(0, rows), NDArrayIndex.all()));
+        } finally {
+            lease.getPool().release(replica);
+        }
+
+        // Метриките се отчитат преди изпращането - с TCP_NODELAY клиентът може да
+        // получи отговора и да поиска /metrics, преди тази нишка да продължи
+        model.rows.addAndGet(rows);
+        model.latency.record(System.nanoTime() - start);
+        WarmupProfile recording = profile;
+        if (recording != null) {
+            recording.recordOutput(rows);
+        }
+
+        exchange.getResponseHeaders().set(VERSION_HEADER, Long.toString(lease.getVersion()));
+        if (binary) {
+            ByteBuffer response = scratch.response(output.length() * Float.BYTES);
+            DataBuffer data = output.data();
+            for (long i = 0; i < output.length(); i++) {
+                response.putFloat(data.getFloat(i));
+            }
+            send(exchange, 200, BINARY, response.array(), response.position());
+        } else {
+            send(exchange, 200, JSON, encodeJson(scratch.text, lease.getVersion(), output));
+        }
+    }
+
+    /**
+     * Редове от float32 в little-endian направо във входния масив. Връща броя редове.
+     */
+    private int decodeBinary(ByteBuffer body, INDArray input) {
+        int columns = (int) input.columns();
+        int rowBytes = columns * Float.BYTES;
+        if (body.remaining() == 0 || body.remaining() % rowBytes != 0) {
+            throw new IllegalArgumentException("Размерът на тялото (" + body.remaining()
+                    + " байта) не е кратен на ред от " + columns + " float32");
+        }
+        int rows = checkRows(body.remaining() / rowBytes);
+        FloatBuffer values = body.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        if (input.dataType() == DataType.FLOAT) {
+            FloatBuffer target = input.data().asNioFloat();
+            target.position(0);
+            target.put(values);
+        } else {
+            for (int i = 0; i < rows * columns; i++) {
+                input.data().put(i, values.get(i));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * [x1, ...] или [[x1, ...], ...] направо във входния масив. Връща броя редове.
+     */
+    private int decodeJson(ByteBuffer body, INDArray input) {
+        int columns = (int) input.columns();
+        int limit = body.limit();
+        int i = skipWhitespace(body, body.position(), limit);
+        i = expect(body, i, limit, '[');
+        int next = skipWhitespace(body, i, limit);
+        boolean batch = next < limit && body.get(next) == '[';
+
+        int rows = 0;
+        while (true) {
+            if (batch) {
+                i = expect(body, i, limit, '[');
+            }
+            checkRows(rows + 1);
+            int column = 0;
+            while (true) {
+                int start = skipWhitespace(body, i, limit);
+                int end = start;
+                while (end < limit && body.get(end) != ',' && body.get(end) != ']') {
+                    end++;
+                }
+                if (column >= columns) {
+                    throw new IllegalArgumentException("Ред " + (rows + 1) + ": повече от " + columns + " стойности");
+                }
+                input.data().put((long) rows * columns + column++, CsvColumnarCache.parseNumber(body, start, end));
+                i = end;
+                if (i >= limit) {
+                    throw new IllegalArgumentException("Незавършен JSON масив");
+                }
+                if (body.get(i++) == ']') {
+                    break;
+                }
+            }
+            if (column != columns) {
+                throw new IllegalArgumentException("Ред " + (rows + 1) + ": " + column + " стойности вместо " + columns);
+            }
+            rows++;
+            if (!batch) {
+                break;
+            }
+            i = skipWhitespace(body, i, limit);
+            if (i < limit && body.get(i) == ',') {
+                i++;
+                continue;
+            }
+            i = expect(body, i, limit, ']');
+            break;
+        }
+        if (skipWhitespace(body, i, limit) != limit) {
+            throw new IllegalArgumentException("Излишни символи след JSON масива");
+        }
+        return rows;
+    }
+
+    private int checkRows(int rows) {
+        if (rows > maxBatchSize) {
+            throw new IllegalArgumentException("Повече от " + maxBatchSize + " примера в една заявка");
+        }
+        return rows;
+    }
+
+    private static int skipWhitespace(ByteBuffer body, int i, int limit) {
+        while (i < limit && (body.get(i) == ' ' || body.get(i) == '\n' || body.get(i) == '\r' || body.get(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int expect(ByteBuffer body, int i, int limit, char expected) {
+        i = skipWhitespace(body, i, limit);
+        if (i >= limit || body.get(i) != expected) {
+            throw new IllegalArgumentException("Очаква се '" + expected + "' на позиция " + i);
+        }
+        return i + 1;
+    }
+
+    private static byte[] encodeJson(StringBuilder sb, long version, INDArray output) {
+        sb.setLength(0);
+        sb.append("{\"version\":").append(version).append(",\"outputs\":[");
+        long rows = output.rows();
+        long columns = output.columns();
+        for (long r = 0; r < rows; r++) {
+            sb.append(r == 0 ? "[" : ",[");
+            for (long c = 0; c < columns; c++) {
+                if (c > 0) {
+                    sb.append(',');
+                }
+                sb.append(output.getFloat(r, c));
+            }
+            sb.append(']');
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            send(exchange, 200, JSON, bytes(metricsJson()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Метриките на всички мрежи като JSON; времената са в микросекунди
+     */
+    public String metricsJson() {
+        StringBuilder sb = new StringBuilder("{\"queued\":").append(executor.getQueue().size()).append(",\"models\":{");
+        boolean first = true;
+        for (Map.Entry<String, ModelMetrics> entry : metrics.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            sb.append(first ? "" : ",").append('"').append(entry.getKey()).append("\":")
+                    .append(String.format(Locale.ROOT,
+                            "{\"version\":%d,\"requests\":%d,\"rows\":%d,\"errors\":%d,\"p50\":%.1f,\"p99\":%.1f,\"max\":%.1f}",
+                            registry.getVersion(entry.getKey()), latency.getCount(), entry.getValue().rows.get(),
+                            entry.getValue().errors.get(), latency.getPercentile(50) / 1e3,
+                            latency.getPercentile(99) / 1e3, latency.getMax() / 1e3));
+            first = false;
+        }
+        return sb.append("}}").toString();
+    }
+
+    /** Латентността на успешните заявки към мрежата name */
+    public LatencyHistogram getLatency(String name) {
+        return metrics.computeIfAbsent(name, n -> new ModelMetrics()).latency;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        send(exchange, status, contentType, body, body.length);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body, int length)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, 0, length);
+        }
+    }
+
+    /**
+     * Спира приемането на заявки и изчаква започнатите до 1 секунда
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * Метрики на една мрежа
+     */
+    private static final class ModelMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    /**
+     * Преизползваеми буфери на една нишка: тяло на заявката, вход на мрежата и отговор
+     */
+    private final class Buffers {
+        byte[] body = new byte[8192];
+        ByteBuffer response = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+        INDArray input;
+        final StringBuilder text = new StringBuilder();
+
+        ByteBuffer read(InputStream in) throws IOException {
+            int length = 0;
+            int read;
+            while ((read = in.read(body, length, body.length - length)) >= 0) {
+                length += read;
+                if (length == body.length) {
+                    if (length >= MAX_BODY_BYTES) {
+                        throw new IllegalArgumentException("Тялото на заявката е над " + MAX_BODY_BYTES + " байта");
+                    }
+                    body = Arrays.copyOf(body, Math.min(body.length * 2, MAX_BODY_BYTES));
+                }
+            }
+            return ByteBuffer.wrap(body, 0, length).slice();
+        }
+
+        INDArray input(DataType dataType, long columns) {
+            if (input == null || input.dataType() != dataType || input.columns() != columns) {
+                input = Nd4j.create(dataType, maxBatchSize, columns);
+            }
+            return input;
+        }
+
+        ByteBuffer response(long bytes) {
+            if (response.capacity() < bytes) {
+                response = ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            response.clear();
+            return response;
+        }
+    }
+
+    /**
+     * Обслужва XOR мрежата (FlexibleNeuralNetwork) като "xor" и MNIST класификатора
+     * (нетрениран, ако няма -Dmnist.dir) като "mnist".
+     *
+     * С -Dwarmup.profile=файл всяка реплика в ModelRegistry се загрява с пакетите от
+     * файла преди публикуването, а при спиране файлът се презаписва с размерите от
+     * тази работа. С CDS архив виж профила startup в pom.xml.
+     *
+     * Аргументи: [порт] [нишки]
+     */
+    public static void main(String[] args) throws Exception {
+        // Преди първия HttpServer в процеса; изрично зададена стойност се запазва
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        WarmupProfile.preloadBackend();
+        WarmupProfile warmup = WarmupProfile.fromSystemProperty();
+
+        FlexibleNeuralNetwork xor = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        xor.train(1000);
+
+        // Загряват се репликите, които обслужват заявките, а не оригиналните мрежи
+        ModelRegistry registry = new ModelRegistry(threads, 10);
+        registry.setWarmupProfile(warmup);
+        xor.publish(registry, "xor");
+        String mnistDir = System.getProperty(MNISTClassifier.MNIST_DIR_PROPERTY);
+        MultiLayerNetwork mnist = MNISTClassifier.createModel();
+        if (mnistDir != null) {
+            try (IdxMnistDataSetIterator train = IdxMnistDataSetIterator.mnist(Paths.get(mnistDir), true, 64, 123)) {
+                mnist.fit(train);
+            }
+        }
+        registry.publish("mnist", mnist);
+
+        ScoringServer server = new ScoringServer(registry, port, threads, 256, 1024);
+        WarmupProfile recorded = new WarmupProfile();
+        if (System.getProperty(WarmupProfile.PROPERTY) != null) {
+            server.recordWarmup(recorded);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            registry.close();
+            recorded.saveToSystemProperty();
+        }));
+        log.info("curl -d '[1,0]' -H 'Content-Type: application/json' http://localhost:{}/predict/xor", server.getPort());
+        Thread.currentThread().join();
+    }
+}
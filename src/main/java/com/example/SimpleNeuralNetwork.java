@@ -25,9 +25,10 @@ public class SimpleNeuralNetwork {
     
     private static final Logger log = LoggerFactory.getLogger(SimpleNeuralNetwork.class);
     
-    public static void main(String[] args) {
-        
-        // 1. ПОДГОТОВКА НА ДАННИТЕ
+    /**
+     * XOR данни - 4 примера с по 2 входа и one-hot изход
+     */
+    public static DataSet createDataSet() {
         // Входове: 4 примера с по 2 features
         INDArray input = Nd4j.create(new double[][]{
             {0, 0},
@@ -45,15 +46,23 @@ public class SimpleNeuralNetwork {
             {1, 0}  // 1 XOR 1 = 0
         });
         
-        DataSet dataSet = new DataSet(input, output);
-        
-        log.info("Данни за тренировка:");
-        log.info("Входове: \n{}", input);
-        log.info("Изходи: \n{}", output);
-        
-        // 2. КОНФИГУРАЦИЯ НА МРЕЖАТА
-        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+        return new DataSet(input, output);
+    }
+    
+    /**
+     * Конфигурация на мрежата 2 -> 4 -> 2
+     */
+    public static MultiLayerConfiguration createConfiguration() {
+        return createConfiguration(Precision.FLOAT);
+    }
+    
+    /**
+     * Конфигурация на мрежата 2 -> 4 -> 2 с параметри в типа за тренировка на precision
+     */
+    public static MultiLayerConfiguration createConfiguration(Precision precision) {
+        return new NeuralNetConfiguration.Builder()
                 .seed(12345)                // За възпроизводимост
+                .dataType(precision.trainingType())
                 .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT)
                 .updater(new Sgd(0.1))      // Learning rate
                 .weightInit(WeightInit.XAVIER)
@@ -73,13 +82,32 @@ public class SimpleNeuralNetwork {
                         .name("output_layer")
                         .build())
                 .build();
+    }
+    
+    public static void main(String[] args) {
+        
+        // Точност на мрежата и данните (-Dprecision=float|double|half|bfloat16)
+        Precision precision = Precision.fromSystemProperty();
+        
+        // 1. ПОДГОТОВКА НА ДАННИТЕ
+        DataSet dataSet = precision.forTraining(createDataSet());
+        INDArray input = dataSet.getFeatures();
+        INDArray output = dataSet.getLabels();
+        
+        log.info("Данни за тренировка:");
+        log.info("Входове: \n{}", input);
+        log.info("Изходи: \n{}", output);
+        
+        // 2. КОНФИГУРАЦИЯ НА МРЕЖАТА
+        MultiLayerConfiguration conf = createConfiguration(precision);
         
         // 3. СЪЗДАВАНЕ НА МОДЕЛА
         MultiLayerNetwork model = new MultiLayerNetwork(conf);
         model.init();
         
-        // Добавяне на listener за проследяване на грешката
-        model.setListeners(new ScoreIterationListener(100));
+        // Добавяне на listener-и за проследяване на грешката и времето
+        TrainingMetricsListener metrics = new TrainingMetricsListener(MetricsSink.NONE, 100);
+        model.setListeners(new ScoreIterationListener(100), metrics);
         
         log.info("Архитектура на модела:");
         log.info(model.summary());
@@ -96,6 +124,7 @@ public class SimpleNeuralNetwork {
                 log.info("Епоха {} от {}, грешка: {}", i + 1, epochs, model.score());
             }
         }
+        log.info("Време за итерация: {}", metrics.getCompute());
         
         // 5. ТЕСТВАНЕ НА МРЕЖАТА
         log.info("Тестване на обучената мрежа:");
@@ -107,7 +136,7 @@ public class SimpleNeuralNetwork {
             {1, 1}
         });
         
-        INDArray predictions = model.output(testInput);
+        INDArray predictions = precision.forInference(model).output(precision.forInference(testInput));
         
         log.info("Предвиждания на мрежата:");
         for (int i = 0; i < 4; i++) {
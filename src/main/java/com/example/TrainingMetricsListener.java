@@ -0,0 +1,419 @@
+package com.example;
+
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.datasets.iterator.AsyncDataSetIterator;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Listener, който измерва къде отива времето при тренировка.
+ *
+ * За всяка итерация записва времето за чакане на данни, forward pass, backward
+ * pass и обновяване на теглата, а за всяка епоха - хистограми на чакането и
+ * изчисленията и примери в секунда. Чакането на данни се измерва само ако
+ * итераторът е обвит с wrap(); иначе влиза във forward pass.
+ *
+ * Нормите на параметрите и градиента и заетата памет струват повече, затова се
+ * изчисляват само на всяка sampleFrequency-та итерация. Метриките се подават на
+ * MetricsSink.
+ */
+public class TrainingMetricsListener extends BaseTrainingListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TrainingMetricsListener.class);
+
+    private final MetricsSink sink;
+    private final int sampleFrequency;
+
+    private final LatencyHistogram dataWait = new LatencyHistogram();
+    private final LatencyHistogram compute = new LatencyHistogram();
+    private final LatencyHistogram epochDataWait = new LatencyHistogram();
+    private final LatencyHistogram epochCompute = new LatencyHistogram();
+
+    private long iterationStart;
+    private long forwardEnd;
+    private long backwardEnd;
+    private long pendingDataWait;
+    private long overhead;
+    private double gradientNorm = Double.NaN;
+
+    private long epochStart;
+    private long epochIterations;
+    private long epochSamples;
+
+    /**
+     * @param sink получател на метриките
+     * @param sampleFrequency през колко итерации да се изчисляват норми и памет
+     */
+    public TrainingMetricsListener(MetricsSink sink, int sampleFrequency) {
+        if (sampleFrequency <= 0) {
+            throw new IllegalArgumentException("sampleFrequency трябва да е положително: " + sampleFrequency);
+        }
+        this.sink = sink;
+        this.sampleFrequency = sampleFrequency;
+    }
+
+    /**
+     * Обвива итератора, за да се измерва чакането на данни. Ако итераторът
+     * поддържа асинхронно зареждане, се обвива и в AsyncDataSetIterator - както би
+     * направил MultiLayerNetwork.fit.
+     */
+    public DataSetIterator wrap(DataSetIterator iterator) {
+        DataSetIterator source = iterator.asyncSupported() ? new AsyncDataSetIterator(iterator) : iterator;
+        return new TimedIterator(source);
+    }
+
+    @Override
+    public void onEpochStart(Model model) {
+        epochStart = System.nanoTime();
+        epochIterations = 0;
+        epochSamples = 0;
+        epochDataWait.reset();
+        epochCompute.reset();
+        if (iterationStart == 0) {
+            iterationStart = epochStart;
+        }
+    }
+
+    @Override
+    public void onForwardPass(Model model, List<INDArray> activations) {
+        forwardEnd = System.nanoTime();
+    }
+
+    @Override
+    public void onBackwardPass(Model model) {
+        backwardEnd = System.nanoTime();
+        if (isSampledIteration(model) && model instanceof MultiLayerNetwork) {
+            INDArray gradients = ((MultiLayerNetwork) model).getFlattenedGradients();
+            gradientNorm = gradients != null ? gradients.norm2Number().doubleValue() : Double.NaN;
+            overhead += System.nanoTime() - backwardEnd;
+        }
+    }
+
+    /** Броячът на итерациите се увеличава след iterationDone, затова тук е същият */
+    private boolean isSampledIteration(Model model) {
+        return model instanceof MultiLayerNetwork
+                && ((MultiLayerNetwork) model).getIterationCount() % sampleFrequency == 0;
+    }
+
+    @Override
+    public void iterationDone(Model model, int iteration, int epoch) {
+        long now = System.nanoTime();
+        if (iterationStart == 0) {
+            // Първата итерация без onEpochStart - няма от кога да се мери
+            reset(now);
+            return;
+        }
+
+        long wait = pendingDataWait;
+        long forward;
+        long backward;
+        long update;
+        if (forwardEnd >= iterationStart && backwardEnd >= forwardEnd) {
+            forward = forwardEnd - iterationStart - wait;
+            backward = backwardEnd - forwardEnd;
+            update = now - backwardEnd - overhead;
+        } else {
+            forward = now - iterationStart - wait - overhead;
+            backward = 0;
+            update = 0;
+        }
+        long computeNanos = forward + backward + update;
+        dataWait.record(wait);
+        compute.record(computeNanos);
+        epochDataWait.record(wait);
+        epochCompute.record(computeNanos);
+
+        int batchSize = model.batchSize();
+        epochIterations++;
+        epochSamples += batchSize;
+
+        boolean sampled = iteration % sampleFrequency == 0;
+        IterationMetrics metrics = new IterationMetrics(epoch, iteration, batchSize, wait, forward, backward, update,
+                model.score(), sampled);
+        if (sampled) {
+            metrics.paramNorm = model.params().norm2Number().doubleValue();
+            metrics.gradientNorm = gradientNorm;
+            metrics.physicalBytes = Pointer.physicalBytes();
+            metrics.workspaceBytes = workspaceBytes();
+        }
+        sink.onIteration(metrics);
+        reset(System.nanoTime());
+    }
+
+    private void reset(long now) {
+        iterationStart = now;
+        pendingDataWait = 0;
+        overhead = 0;
+        gradientNorm = Double.NaN;
+    }
+
+    private static long workspaceBytes() {
+        long bytes = 0;
+        for (MemoryWorkspace workspace : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread()) {
+            bytes += workspace.getCurrentSize();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void onEpochEnd(Model model) {
+        long duration = System.nanoTime() - epochStart;
+        LatencyHistogram waitSnapshot = new LatencyHistogram();
+        waitSnapshot.add(epochDataWait);
+        LatencyHistogram computeSnapshot = new LatencyHistogram();
+        computeSnapshot.add(epochCompute);
+
+        EpochMetrics metrics = new EpochMetrics(model instanceof MultiLayerNetwork
+                ? ((MultiLayerNetwork) model).getEpochCount() : -1,
+                epochIterations, epochSamples, duration, waitSnapshot, computeSnapshot);
+        sink.onEpoch(metrics);
+        log.info("Епоха {}: {} примера/сек, чакане на данни {}, изчисления {}", metrics.getEpoch(),
+                String.format("%.1f", metrics.getSamplesPerSecond()), waitSnapshot, computeSnapshot);
+    }
+
+    /** Чакане на данни за всички итерации досега */
+    public LatencyHistogram getDataWait() {
+        return dataWait;
+    }
+
+    /** Forward + backward + обновяване за всички итерации досега */
+    public LatencyHistogram getCompute() {
+        return compute;
+    }
+
+    public MetricsSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Метрики за една итерация. Нормите и паметта са попълнени само ако isSampled().
+     */
+    public static final class IterationMetrics {
+        private final int epoch;
+        private final int iteration;
+        private final int batchSize;
+        private final long dataWaitNanos;
+        private final long forwardNanos;
+        private final long backwardNanos;
+        private final long updateNanos;
+        private final double score;
+        private final boolean sampled;
+        private double paramNorm = Double.NaN;
+        private double gradientNorm = Double.NaN;
+        private long physicalBytes;
+        private long workspaceBytes;
+
+        IterationMetrics(int epoch, int iteration, int batchSize, long dataWaitNanos, long forwardNanos,
+                         long backwardNanos, long updateNanos, double score, boolean sampled) {
+            this.epoch = epoch;
+            this.iteration = iteration;
+            this.batchSize = batchSize;
+            this.dataWaitNanos = dataWaitNanos;
+            this.forwardNanos = forwardNanos;
+            this.backwardNanos = backwardNanos;
+            this.updateNanos = updateNanos;
+            this.score = score;
+            this.sampled = sampled;
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+
+        public int getIteration() {
+            return iteration;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public long getDataWaitNanos() {
+            return dataWaitNanos;
+        }
+
+        public long getForwardNanos() {
+            return forwardNanos;
+        }
+
+        public long getBackwardNanos() {
+            return backwardNanos;
+        }
+
+        public long getUpdateNanos() {
+            return updateNanos;
+        }
+
+        public long getComputeNanos() {
+            return forwardNanos + backwardNanos + updateNanos;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public boolean isSampled() {
+            return sampled;
+        }
+
+        public double getParamNorm() {
+            return paramNorm;
+        }
+
+        public double getGradientNorm() {
+            return gradientNorm;
+        }
+
+        /** Физическа памет на процеса (heap + нативна), по Pointer.physicalBytes() */
+        public long getPhysicalBytes() {
+            return physicalBytes;
+        }
+
+        /** Общ размер на workspace-ите на нишката на тренировката */
+        public long getWorkspaceBytes() {
+            return workspaceBytes;
+        }
+    }
+
+    /**
+     * Обобщение за една епоха
+     */
+    public static final class EpochMetrics {
+        private final int epoch;
+        private final long iterations;
+        private final long samples;
+        private final long durationNanos;
+        private final LatencyHistogram dataWait;
+        private final LatencyHistogram compute;
+
+        EpochMetrics(int epoch, long iterations, long samples, long durationNanos,
+                     LatencyHistogram dataWait, LatencyHistogram compute) {
+            this.epoch = epoch;
+            this.iterations = iterations;
+            this.samples = samples;
+            this.durationNanos = durationNanos;
+            this.dataWait = dataWait;
+            this.compute = compute;
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+
+        public long getIterations() {
+            return iterations;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public double getSamplesPerSecond() {
+            return durationNanos == 0 ? 0 : samples * 1e9 / durationNanos;
+        }
+
+        public LatencyHistogram getDataWait() {
+            return dataWait;
+        }
+
+        public LatencyHistogram getCompute() {
+            return compute;
+        }
+    }
+
+    /**
+     * Итератор, който добавя времето на next() към чакането на данни
+     */
+    private final class TimedIterator implements DataSetIterator {
+        private final DataSetIterator delegate;
+
+        TimedIterator(DataSetIterator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public DataSet next() {
+            long start = System.nanoTime();
+            DataSet next = delegate.next();
+            pendingDataWait += System.nanoTime() - start;
+            return next;
+        }
+
+        @Override
+        public DataSet next(int num) {
+            long start = System.nanoTime();
+            DataSet next = delegate.next(num);
+            pendingDataWait += System.nanoTime() - start;
+            return next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            boolean hasNext = delegate.hasNext();
+            pendingDataWait += System.nanoTime() - start;
+            return hasNext;
+        }
+
+        @Override
+        public int inputColumns() {
+            return delegate.inputColumns();
+        }
+
+        @Override
+        public int totalOutcomes() {
+            return delegate.totalOutcomes();
+        }
+
+        @Override
+        public boolean resetSupported() {
+            return delegate.resetSupported();
+        }
+
+        /** Вече е асинхронен, ако източникът го поддържа - не трябва да се обвива отново */
+        @Override
+        public boolean asyncSupported() {
+            return false;
+        }
+
+        @Override
+        public void reset() {
+            delegate.reset();
+        }
+
+        @Override
+        public int batch() {
+            return delegate.batch();
+        }
+
+        @Override
+        public void setPreProcessor(DataSetPreProcessor preProcessor) {
+            delegate.setPreProcessor(preProcessor);
+        }
+
+        @Override
+        public DataSetPreProcessor getPreProcessor() {
+            return delegate.getPreProcessor();
+        }
+
+        @Override
+        public List<String> getLabels() {
+            return delegate.getLabels();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Записани размери на пакети за output и fit, които се "изиграват" преди първата
+ * истинска заявка, така че JIT компилацията и заделянето на нативна памет да
+ * станат предварително.
+ *
+ * Профилът е текстов файл с по един ред "output N" или "fit N", където N е броят
+ * примери в пакета. Записва се по време на реална работа (ScoringServer, тренировките
+ * в MNISTClassifier, FlexibleNeuralNetwork и Main) и се зарежда при следващото
+ * стартиране. ModelRegistry изиграва размерите за output върху всяка реплика.
+ */
+public class WarmupProfile {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupProfile.class);
+
+    /** Файл с профила: -Dwarmup.profile=warmup.profile */
+    public static final String PROPERTY = "warmup.profile";
+
+    private static final String OUTPUT = "output";
+    private static final String FIT = "fit";
+    private static final int MAX_ENTRIES = 64;
+
+    private final Set<String> entries = new LinkedHashSet<>();
+
+    /**
+     * Започва зареждането на ND4J backend-а (нативните библиотеки и BLAS) във
+     * фонова нишка, докато main продължава с друга подготовка - четене на
+     * конфигурация, данни и т.н. Първото използване на Nd4j изчаква края му.
+     */
+    public static CompletableFuture<Void> preloadBackend() {
+        CompletableFuture<Void> loaded = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                Nd4j.getBackend();
+                Nd4j.scalar(0f);
+                loaded.complete(null);
+            } catch (Throwable t) {
+                loaded.completeExceptionally(t);
+            }
+        }, "nd4j-preload");
+        thread.setDaemon(true);
+        thread.start();
+        return loaded;
+    }
+
+    public void recordOutput(int batchSize) {
+        record(OUTPUT, batchSize);
+    }
+
+    public void recordFit(int batchSize) {
+        record(FIT, batchSize);
+    }
+
+    private synchronized void record(String kind, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Размерът на пакета трябва да е положителен: " + batchSize);
+        }
+        // Ограничен брой различни размери - пазят се първите MAX_ENTRIES, без броене на честотата
+        if (entries.size() < MAX_ENTRIES) {
+            entries.add(kind + " " + batchSize);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized List<String> entries() {
+        return new ArrayList<>(entries);
+    }
+
+    /** Записаните размери на пакети за output */
+    public synchronized List<Integer> outputBatchSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        for (String entry : entries) {
+            if (entry.startsWith(OUTPUT + " ")) {
+                sizes.add(Integer.parseInt(entry.substring(OUTPUT.length() + 1)));
+            }
+        }
+        return sizes;
+    }
+
+    public synchronized void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, entries, StandardCharsets.UTF_8);
+    }
+
+    public static WarmupProfile load(Path file) throws IOException {
+        WarmupProfile profile = new WarmupProfile();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            try {
+                if (parts.length != 2 || !(OUTPUT.equals(parts[0]) || FIT.equals(parts[0]))) {
+                    throw new IllegalArgumentException(line);
+                }
+                profile.record(parts[0], Integer.parseInt(parts[1]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + ", ред " + (i + 1) + ": очаква се \"output N\" или \"fit N\": " + line);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Профилът от -Dwarmup.profile, ако файлът съществува, иначе празен профил
+     */
+    public static WarmupProfile fromSystemProperty() throws IOException {
+        String file = System.getProperty(PROPERTY);
+        if (file != null && Files.exists(Paths.get(file))) {
+            return load(Paths.get(file));
+        }
+        return new WarmupProfile();
+    }
+
+    /**
+     * Записва профила във файла от -Dwarmup.profile, ако е зададен и профилът не е
+     * празен. Грешката при запис само се логва - профилът не е задължителен.
+     *
+     * @return true, ако профилът е записан
+     */
+    public boolean saveToSystemProperty() {
+        String file = System.getProperty(PROPERTY);
+        if (file == null || size() == 0) {
+            return false;
+        }
+        try {
+            save(Paths.get(file));
+            return true;
+        } catch (IOException e) {
+            log.warn("Профилът за загряване не е записан: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Изпълнява всеки записан пакет iterations пъти с нулев вход. output се вика
+     * върху самата мрежа (без промяна на параметрите), а fit - върху копие, което
+     * след това се освобождава. Връща времето в наносекунди.
+     */
+    public long replay(MultiLayerNetwork model, int iterations) {
+        List<String> batches = entries();
+        if (batches.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        DataType dataType = model.params().dataType();
+        long numInputs = model.layerInputSize(0);
+        long numOutputs = model.layerSize(model.getnLayers() - 1);
+        MultiLayerNetwork copy = null;
+        for (String entry : batches) {
+            String[] parts = entry.split(" ");
+            int batchSize = Integer.parseInt(parts[1]);
+            INDArray features = Nd4j.zeros(dataType, batchSize, numInputs);
+            if (OUTPUT.equals(parts[0])) {
+                for (int i = 0; i < iterations; i++) {
+                    model.output(features);
+                }
+            } else {
+                if (copy == null) {
+                    copy = model.clone();
+                }
+                INDArray labels = Nd4j.zeros(dataType, batchSize, numOutputs);
+                labels.getColumn(0).assign(1);
+                for (int i = 0; i < iterations; i++) {
+                    copy.fit(features, labels);
+                }
+            }
+        }
+        if (copy != null) {
+            copy.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        log.info("Загряване: {} размера на пакети x {} за {} ms", batches.size(), iterations, elapsed / 1_000_000);
+        return elapsed;
+    }
+}
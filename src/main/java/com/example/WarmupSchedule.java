@@ -0,0 +1,53 @@
+package com.example;
+
+import org.nd4j.linalg.schedule.ISchedule;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+/**
+ * Линейно загряване: през първите warmupIterations итерации стойността расте от
+ * base / warmupIterations до base, след това е точно base.
+ *
+ * За разлика от RampSchedule на ND4J се сериализира в JSON конфигурацията, така че
+ * мрежа с този график може да се възстанови от контролна точка.
+ */
+public class WarmupSchedule implements ISchedule {
+
+    private final ISchedule baseSchedule;
+    private final int warmupIterations;
+
+    public WarmupSchedule(@JsonProperty("baseSchedule") ISchedule baseSchedule,
+                          @JsonProperty("warmupIterations") int warmupIterations) {
+        if (warmupIterations <= 0) {
+            throw new IllegalArgumentException("warmupIterations трябва да е положително: " + warmupIterations);
+        }
+        this.baseSchedule = baseSchedule;
+        this.warmupIterations = warmupIterations;
+    }
+
+    @Override
+    public double valueAt(int iteration, int epoch) {
+        double base = baseSchedule.valueAt(iteration, epoch);
+        if (iteration >= warmupIterations) {
+            return base;
+        }
+        return base * (iteration + 1) / warmupIterations;
+    }
+
+    @Override
+    public ISchedule clone() {
+        return new WarmupSchedule(baseSchedule.clone(), warmupIterations);
+    }
+
+    public ISchedule getBaseSchedule() {
+        return baseSchedule;
+    }
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmupSchedule(" + warmupIterations + " итерации, " + baseSchedule + ")";
+    }
+}
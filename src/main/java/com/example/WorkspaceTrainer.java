@@ -0,0 +1,166 @@
+package com.example;
+
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Цикъл на тренировка върху малък фиксиран пакет с измерване на алокациите.
+ *
+ * Входът и етикетите се копират веднъж в предварително заделени буфери с типа на
+ * мрежата, така че fit() не конвертира данните на всяка итерация. Междинните
+ * масиви живеят в тренировъчните workspace-и на DL4J, които се включват, ако са изключени.
+ *
+ * Това премахва само конвертирането на входа - за XOR мрежата около 6% от
+ * нативните буфери на итерация. Останалите (shape info, контексти на операциите,
+ * изгледи) и стотици KB в heap-а се създават вътре в DL4J/ND4J и продължават да
+ * минават през deallocator-а; тренировка без алокации не се постига оттук.
+ * Класът е предназначен най-вече за измерване.
+ *
+ * След всеки fit(iterations) са достъпни броячите за последното извикване:
+ * нови нативни буфери, байтове през JavaCPP и байтове в heap-а на итерация, както и
+ * общият размер на workspace-ите на нишката. Първата итерация от всяко извикване
+ * не се брои - в нея workspace-ите учат размера си.
+ */
+public class WorkspaceTrainer {
+
+    private final MultiLayerNetwork model;
+    private final INDArray features;
+    private final INDArray labels;
+
+    private long iterations;
+    private long measuredIterations;
+    private long buffersCreated;
+    private long nativeBytes;
+    private long heapBytes;
+    private long workspaceBytes;
+
+    public WorkspaceTrainer(MultiLayerNetwork model, DataSet data) {
+        this(model, data.getFeatures(), data.getLabels());
+    }
+
+    /**
+     * @param model мрежата; тренировъчните workspace-и на DL4J се включват, ако са изключени
+     * @param features входове; копират се в собствен буфер
+     * @param labels етикети; копират се в собствен буфер
+     */
+    public WorkspaceTrainer(MultiLayerNetwork model, INDArray features, INDArray labels) {
+        if (features.size(0) != labels.size(0)) {
+            throw new IllegalArgumentException("Различен брой примери във входа (" + features.size(0)
+                    + ") и етикетите (" + labels.size(0) + ")");
+        }
+        this.model = model;
+        if (model.getLayerWiseConfigurations().getTrainingWorkspaceMode() != WorkspaceMode.ENABLED) {
+            model.getLayerWiseConfigurations().setTrainingWorkspaceMode(WorkspaceMode.ENABLED);
+        }
+
+        DataType dataType = model.params().dataType();
+        try (MemoryWorkspace ignored = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            this.features = Nd4j.create(dataType, features.shape(), 'c').assign(features);
+            this.labels = Nd4j.create(dataType, labels.shape(), 'c').assign(labels);
+        }
+    }
+
+    /**
+     * Заменя данните с нови със същата форма, без нови алокации
+     */
+    public void load(INDArray newFeatures, INDArray newLabels) {
+        if (!newFeatures.equalShapes(features) || !newLabels.equalShapes(labels)) {
+            throw new IllegalArgumentException("Формата на данните трябва да остане "
+                    + Arrays.toString(features.shape()) + " / " + Arrays.toString(labels.shape()));
+        }
+        features.assign(newFeatures);
+        labels.assign(newLabels);
+    }
+
+    /**
+     * Изпълнява iterations итерации на fit върху заредените данни
+     */
+    public void fit(int iterations) {
+        if (iterations <= 0) {
+            return;
+        }
+        fitOnce();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long buffersBefore = Nd4j.getDeallocatorService().nextValue();
+        long nativeBefore = Pointer.totalBytes();
+        long heapBefore = allocatedBytes(threads, thread);
+
+        for (int i = 1; i < iterations; i++) {
+            fitOnce();
+        }
+
+        // nextValue() също увеличава брояча, затова се изважда единица
+        buffersCreated = Nd4j.getDeallocatorService().nextValue() - buffersBefore - 1;
+        nativeBytes = Pointer.totalBytes() - nativeBefore;
+        heapBytes = allocatedBytes(threads, thread) - heapBefore;
+        measuredIterations = iterations - 1;
+        workspaceBytes = 0;
+        for (MemoryWorkspace workspace : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread()) {
+            workspaceBytes += workspace.getCurrentSize();
+        }
+    }
+
+    private void fitOnce() {
+        model.fit(features, labels);
+        iterations++;
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads, long thread) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread);
+        }
+        return 0;
+    }
+
+    /** Нови нативни буфери (включително изгледи и буфери в workspace) на итерация */
+    public double getBuffersPerIteration() {
+        return measuredIterations == 0 ? 0 : (double) buffersCreated / measuredIterations;
+    }
+
+    /**
+     * Нетен прираст на паметта, заделена през JavaCPP, на итерация. Може да е
+     * отрицателен, ако GC е освободил стари указатели по време на цикъла.
+     */
+    public double getNativeBytesPerIteration() {
+        return measuredIterations == 0 ? 0 : (double) nativeBytes / measuredIterations;
+    }
+
+    /** Заделени байтове в heap-а от текущата нишка на итерация */
+    public double getHeapBytesPerIteration() {
+        return measuredIterations == 0 ? 0 : (double) heapBytes / measuredIterations;
+    }
+
+    /** Общ размер на workspace-ите на текущата нишка след последния fit */
+    public long getWorkspaceBytes() {
+        return workspaceBytes;
+    }
+
+    /** Общ брой изпълнени итерации */
+    public long getIterations() {
+        return iterations;
+    }
+
+    public MultiLayerNetwork getModel() {
+        return model;
+    }
+
+    /**
+     * Кратко описание на броячите за логовете
+     */
+    public String allocationReport() {
+        return String.format("%.1f нативни буфера, %.0f байта JavaCPP, %.0f байта heap на итерация; workspace %d байта",
+                getBuffersPerIteration(), getNativeBytesPerIteration(), getHeapBytesPerIteration(), workspaceBytes);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновата оценка на части трябва да съвпада със синхронната и да използва
+ * параметрите от момента на извикването
+ */
+public class AsyncEvaluatorTest extends TestCase {
+
+    public void testMatchesSynchronousEvaluationOfSnapshot() throws Exception {
+        Path directory = IdxFixtures.mnistDirectory(60, 4, 4);
+        IdxMnistDataSetIterator train = IdxMnistDataSetIterator.mnist(directory, true, 5, 1);
+        IdxMnistDataSetIterator test = IdxMnistDataSetIterator.mnist(directory, false, 4, 1);
+
+        MultiLayerNetwork model = new MultiLayerNetwork(new NeuralNetConfiguration.Builder()
+                .seed(7)
+                .updater(new Adam(0.01))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(16).nOut(12).activation(Activation.RELU).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.NEGATIVELOGLIKELIHOOD)
+                        .nIn(12).nOut(10).activation(Activation.SOFTMAX).build())
+                .build());
+        model.init();
+        model.fit(train);
+
+        Evaluation expected = model.evaluate(test);
+        test.reset();
+
+        try (AsyncEvaluator evaluator = new AsyncEvaluator(model, test, 3)) {
+            CompletableFuture<Evaluation> pending = evaluator.evaluate(model);
+            // Тренировката продължава веднага - оценката трябва да е върху старите параметри
+            model.fit(train);
+
+            Evaluation actual = pending.get(30, TimeUnit.SECONDS);
+            assertEquals(expected.getNumRowCounter(), actual.getNumRowCounter(), 0.0);
+            assertEquals(expected.accuracy(), actual.accuracy(), 1e-9);
+            assertEquals(expected.f1(), actual.f1(), 1e-9);
+        }
+    }
+}
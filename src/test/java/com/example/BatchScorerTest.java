@@ -0,0 +1,77 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.file.Path;
+
+/**
+ * Едно паралелно минаване трябва да дава същите метрики като Evaluation на DL4J
+ */
+public class BatchScorerTest extends TestCase {
+
+    public void testMatchesEvaluation() throws Exception {
+        Path directory = IdxFixtures.mnistDirectory(300, 28, 28);
+        IdxMnistDataSetIterator train = IdxMnistDataSetIterator.mnist(directory, true, 32, 1);
+        IdxMnistDataSetIterator test = IdxMnistDataSetIterator.mnist(directory, false, 32, 1);
+
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        model.fit(train);
+        train.reset();
+
+        Evaluation expected = model.evaluate(test);
+        test.reset();
+
+        try (BatchScorer scorer = new BatchScorer(model, test, 3)) {
+            assertEquals(3, scorer.getThreads());
+            BatchScorer.Result result = scorer.score(model);
+
+            assertEquals((long) expected.getNumRowCounter(), result.total());
+            assertEquals(expected.accuracy(), result.accuracy(), 1e-12);
+            assertEquals(expected.precision(), result.precision(), 1e-9);
+            assertEquals(expected.recall(), result.recall(), 1e-9);
+            assertEquals(expected.f1(), result.f1(), 1e-9);
+            for (int a = 0; a < MNISTClassifier.NUM_CLASSES; a++) {
+                for (int p = 0; p < MNISTClassifier.NUM_CLASSES; p++) {
+                    assertEquals(expected.getConfusionMatrix().getCount(a, p), result.count(a, p));
+                }
+            }
+
+            assertTrue(result.topK(3) >= result.accuracy());
+            assertEquals(1.0, result.topK(MNISTClassifier.NUM_CLASSES), 0.0);
+
+            // Новите параметри се виждат при следващата оценка
+            model.fit(train);
+            train.reset();
+            Evaluation after = model.evaluate(test);
+            test.reset();
+            assertEquals(after.accuracy(), scorer.score(model).accuracy(), 1e-12);
+        }
+    }
+
+    public void testTopKAndTies() {
+        BatchScorer.Result result = new BatchScorer.Result(3);
+        result.accumulate(
+                Nd4j.create(new double[][]{
+                        {0.2, 0.5, 0.3},   // клас 0 е трети
+                        {0.4, 0.4, 0.2},   // равенство - клас 1 е след клас 0
+                        {0.1, 0.2, 0.7}}), // вярно
+                Nd4j.create(new double[][]{
+                        {1, 0, 0},
+                        {0, 1, 0},
+                        {0, 0, 1}}));
+
+        assertEquals(3, result.total());
+        assertEquals(1.0 / 3, result.accuracy(), 1e-12);
+        assertEquals(2.0 / 3, result.topK(2), 1e-12);
+        assertEquals(1.0, result.topK(3), 1e-12);
+        assertEquals(1, result.count(0, 1));
+        assertEquals(1, result.count(1, 0));
+        assertEquals(1, result.count(2, 2));
+        assertEquals(0.0, result.f1(0), 0.0);
+        assertEquals(0.0, result.precision(0), 0.0);
+        assertEquals(1.0, result.f1(2), 0.0);
+    }
+}
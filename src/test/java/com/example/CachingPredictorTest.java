@@ -0,0 +1,95 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.nd4j.linalg.activations.Activation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кешът трябва да връща същия клас като мрежата в центъра на клетката, да
+ * остава в рамките на capacity и да се изчиства при нови параметри
+ */
+public class CachingPredictorTest extends TestCase {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingPredictorTest.class);
+
+    private FlexibleNeuralNetwork network;
+
+    @Override
+    protected void setUp() {
+        network = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        network.fit(300);
+    }
+
+    public void testHitsOnQuantizedInputs() {
+        CachingPredictor cache = network.cachingPredictor(0.01, 1024);
+        for (double[] x : new double[][]{{0, 0}, {0, 1}, {1, 0}, {1, 1}}) {
+            assertEquals(network.predict(x[0], x[1]), cache.predict(x[0], x[1]));
+        }
+        assertEquals(4, cache.getMisses());
+
+        // Почти еднакви координати попадат в същата клетка
+        assertEquals(network.predict(1, 0), cache.predict(1.002, -0.004));
+        assertEquals(network.predict(0, 1), cache.predict(0.001, 0.999));
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.size());
+        assertEquals(2.0 / 6, cache.getHitRate(), 1e-12);
+    }
+
+    public void testEvictionKeepsLookupsCorrect() {
+        double step = 0.05;
+        CachingPredictor cache = network.cachingPredictor(step, 16);
+        Random random = new Random(5);
+        long requests = 5000;
+        for (int i = 0; i < requests; i++) {
+            // Малко "горещи" точки и много еднократни
+            boolean hot = random.nextInt(4) != 0;
+            int q1 = hot ? random.nextInt(3) : random.nextInt(41) - 10;
+            int q2 = hot ? random.nextInt(3) : random.nextInt(41) - 10;
+            assertEquals(network.predict(q1 * step, q2 * step), cache.predict(q1 * step, q2 * step));
+            assertTrue(cache.size() <= 16);
+        }
+        assertEquals(requests, cache.getHits() + cache.getMisses());
+        assertEquals(cache.getMisses() - cache.size(), cache.getEvictions());
+        // Горещите 9 клетки остават в кеша въпреки изхвърлянията
+        assertTrue(cache.toString(), cache.getHitRate() > 0.6);
+        log.info("{}", cache);
+    }
+
+    public void testInvalidatedWhenParametersChange() {
+        CachingPredictor cache = network.cachingPredictor(0.1, 64);
+        cache.predict(0.3, 0.7);
+        cache.predict(0.3, 0.7);
+        assertEquals(1, cache.getHits());
+
+        network.fit(1);
+        assertEquals(network.predict(0.3, 0.7), cache.predict(0.3, 0.7));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+
+        network.parametersChanged();
+        cache.predict(0.3, 0.7);
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(3, cache.getMisses());
+    }
+
+    public void testInvalidatedByOnlineLearning() throws Exception {
+        CachingPredictor cache = network.cachingPredictor(0.1, 64);
+        cache.predict(0.3, 0.7);
+
+        // OnlineLearner тренира самата мрежа, без да минава през FlexibleNeuralNetwork.fit
+        try (OnlineLearner learner = network.onlineLearner(16, 4, 1000)) {
+            for (int i = 0; i < 8; i++) {
+                assertTrue(learner.offer(i % 2, i % 2, 1 - i % 2));
+            }
+            learner.flush(10, TimeUnit.SECONDS);
+        }
+        assertEquals(network.predict(0.3, 0.7), cache.predict(0.3, 0.7));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.getHits());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Запис и зареждане на контролни точки и ротация по политика
+ */
+public class CheckpointManagerTest extends TestCase {
+
+    public void testRestoresParametersUpdaterStateAndOutput() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        network.train(50);
+        MultiLayerNetwork model = network.getModel();
+
+        Path directory = Files.createTempDirectory("checkpoints");
+        Path file;
+        try (CheckpointManager checkpoints = new CheckpointManager(directory, 2)) {
+            file = checkpoints.save(model).get();
+        }
+
+        MultiLayerNetwork restored = CheckpointManager.restore(file, true);
+        assertEquals(model.params(), restored.params());
+        assertEquals(model.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+        assertEquals(model.getLayerWiseConfigurations().getIterationCount(),
+                restored.getLayerWiseConfigurations().getIterationCount());
+
+        double[][] input = {{0, 0}, {0, 1}, {1, 0}, {1, 1}};
+        assertEquals(model.output(Nd4j.create(input)), restored.output(Nd4j.create(input)));
+
+        // Зареждане в съществуваща мрежа със същата архитектура
+        MultiLayerNetwork other = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH).getModel();
+        CheckpointManager.restoreInto(other, file);
+        assertEquals(model.params(), other.params());
+    }
+
+    public void testKeepsLastAndEveryNth() throws Exception {
+        MultiLayerNetwork model = new FlexibleNeuralNetwork(3, 0.1, Activation.SIGMOID).getModel();
+        Path directory = Files.createTempDirectory("checkpoints");
+
+        try (CheckpointManager checkpoints = new CheckpointManager(directory, 2, 3)) {
+            for (int i = 0; i < 7; i++) {
+                checkpoints.save(model);
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(3, files.count());
+        }
+        // 6 и 7 са последните две, 3 е кратна на keepEvery
+        assertTrue(Files.exists(directory.resolve("checkpoint-3.bin")));
+        assertTrue(Files.exists(directory.resolve("checkpoint-6.bin")));
+        assertTrue(Files.exists(directory.resolve("checkpoint-7.bin")));
+
+        try (CheckpointManager reopened = new CheckpointManager(directory, 2, 3)) {
+            assertEquals(directory.resolve("checkpoint-7.bin"), reopened.latest().get());
+        }
+    }
+
+    public void testCloseRethrowsFailedWrite() throws Exception {
+        MultiLayerNetwork model = new FlexibleNeuralNetwork(3, 0.1, Activation.SIGMOID).getModel();
+        Path directory = Files.createTempDirectory("checkpoints");
+        CheckpointManager checkpoints = new CheckpointManager(directory, 2);
+        // Директорията изчезва - фоновият запис трябва да се провали
+        Files.delete(directory);
+        checkpoints.save(model);
+        try {
+            checkpoints.close();
+            fail("close() трябва да хвърли грешката от фоновия запис");
+        } catch (UncheckedIOException expected) {
+            assertTrue(expected.getMessage().contains("checkpoint-1.bin"));
+        }
+    }
+}
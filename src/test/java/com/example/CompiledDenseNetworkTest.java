@@ -0,0 +1,74 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+/**
+ * Компилираната мрежа трябва да дава същия изход като model.output
+ */
+public class CompiledDenseNetworkTest extends TestCase {
+
+    public void testMatchesModelOutputForEveryActivation() {
+        for (Activation activation : new Activation[]{Activation.SIGMOID, Activation.RELU, Activation.TANH}) {
+            FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(6, 0.1, activation);
+            network.train(100);
+            MultiLayerNetwork model = network.getModel();
+            CompiledDenseNetwork compiled = network.compile();
+
+            double[] output = new double[compiled.numOutputs()];
+            for (int i = 0; i <= 8; i++) {
+                for (int j = 0; j <= 8; j++) {
+                    double x1 = i / 8.0;
+                    double x2 = j / 8.0;
+                    INDArray expected = model.output(Nd4j.create(new double[][]{{x1, x2}}));
+
+                    compiled.output(new double[]{x1, x2}, output);
+                    for (int c = 0; c < output.length; c++) {
+                        assertEquals(activation + " при (" + x1 + ", " + x2 + ")",
+                                expected.getDouble(0, c), output[c], 1e-5);
+                    }
+                    assertEquals(network.predict(x1, x2), compiled.predict(x1, x2));
+                }
+            }
+        }
+    }
+
+    public void testLayersWithoutBias() {
+        MultiLayerNetwork model = new MultiLayerNetwork(new NeuralNetConfiguration.Builder()
+                .seed(3)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(2).nOut(5).activation(Activation.TANH).hasBias(false).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                        .nIn(5).nOut(2).activation(Activation.SOFTMAX).hasBias(false).build())
+                .build());
+        model.init();
+        assertNull(model.getLayer(0).getParam("b"));
+
+        CompiledDenseNetwork compiled = CompiledDenseNetwork.compile(model);
+        double[] output = new double[compiled.numOutputs()];
+        compiled.output(new double[]{0.3, -0.8}, output);
+        INDArray expected = model.output(Nd4j.create(new double[][]{{0.3, -0.8}}));
+        for (int c = 0; c < output.length; c++) {
+            assertEquals(expected.getDouble(0, c), output[c], 1e-5);
+        }
+    }
+
+    public void testRejectsUnsupportedActivation() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(3, 0.1, Activation.ELU);
+        try {
+            network.compile();
+            fail("ELU не се поддържа");
+        } catch (IllegalArgumentException expected) {
+            // очаквано
+        }
+    }
+}
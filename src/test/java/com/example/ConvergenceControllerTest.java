@@ -0,0 +1,120 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.schedule.ISchedule;
+import org.nd4j.linalg.schedule.ScheduleType;
+
+/**
+ * Ранното спиране трябва да реагира на плато на метриката, а графиците на
+ * скоростта - да дават очакваните стойности и да оцеляват в JSON конфигурацията
+ */
+public class ConvergenceControllerTest extends TestCase {
+
+    public void testStopsAfterPatienceWithoutImprovement() {
+        ConvergenceController controller = new ConvergenceController(ConvergenceController.Goal.MAXIMIZE, 2, 0.01, 0.9);
+        assertFalse(controller.update(1, 0.80));
+        assertFalse(controller.update(2, 0.91));
+        assertFalse(controller.update(3, 0.915));
+        assertTrue(controller.update(4, 0.905));
+
+        assertEquals(0.91, controller.getBest(), 0.0);
+        assertEquals(2, controller.getBestEpoch());
+        assertEquals(2, controller.getEpochToTarget());
+        assertTrue(controller.getTimeToTargetNanos() >= 0);
+        assertTrue(controller.isStopped());
+
+        controller.start();
+        assertFalse(controller.isStopped());
+        assertEquals(-1, controller.getEpochToTarget());
+    }
+
+    public void testMinimizeRestoresBestParameters() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(3, 0.1, Activation.TANH);
+        MultiLayerNetwork model = network.getModel();
+        ConvergenceController controller = new ConvergenceController(ConvergenceController.Goal.MINIMIZE, 1, 0, Double.NaN);
+
+        controller.update(model, 1, 0.5);
+        double[] best = model.params().toDoubleVector();
+        network.fit(10);
+        assertTrue(controller.update(model, 2, 0.6));
+
+        assertTrue(controller.restoreBest(model));
+        assertEquals(best[0], model.params().getDouble(0), 0.0);
+    }
+
+    public void testRestoresParametersSavedBeforeDelayedMetric() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(3, 0.1, Activation.TANH);
+        MultiLayerNetwork model = network.getModel();
+        ConvergenceController controller = new ConvergenceController(ConvergenceController.Goal.MAXIMIZE, 1, 0, Double.NaN);
+
+        // Метриката за епох 1 идва, след като вече е трениран епох 2
+        INDArray epoch1 = model.params().dup();
+        network.fit(10);
+        INDArray epoch2 = model.params().dup();
+        network.fit(10);
+        controller.update(epoch1, 1, 0.9);
+        assertTrue(controller.update(epoch2, 2, 0.8));
+
+        assertTrue(controller.restoreBest(model));
+        assertEquals(epoch1, model.params());
+    }
+
+    public void testXorStopsBeforeFixedIterations() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        ConvergenceController controller = new ConvergenceController(ConvergenceController.Goal.MINIMIZE, 4, 1e-3, 0.1);
+        int epochs = network.train(controller, 1000, 25);
+
+        assertTrue("Очаква се ранно спиране, изпълнени " + epochs, epochs < 1000);
+        assertTrue(controller.getEpochToTarget() > 0);
+        assertEquals(1.0, network.accuracy(), 0.0);
+    }
+
+    public void testScheduleValues() {
+        ISchedule cosine = new CosineSchedule(ScheduleType.ITERATION, 1.0, 0.0, 100);
+        assertEquals(1.0, cosine.valueAt(0, 0), 1e-12);
+        assertEquals(0.5, cosine.valueAt(50, 0), 1e-12);
+        assertEquals(0.0, cosine.valueAt(100, 0), 1e-12);
+        assertEquals(0.0, cosine.valueAt(500, 3), 1e-12);
+
+        ISchedule warmup = new WarmupSchedule(cosine, 10);
+        assertEquals(0.1, warmup.valueAt(0, 0), 1e-12);
+        assertEquals(cosine.valueAt(9, 0), warmup.valueAt(9, 0), 1e-12);
+        assertEquals(cosine.valueAt(20, 0), warmup.valueAt(20, 0), 1e-12);
+
+        ISchedule step = ConvergenceController.schedule("step", 0.01, 100, 9);
+        assertEquals(0.01, step.valueAt(0, 2), 1e-12);
+        assertEquals(0.005, step.valueAt(0, 3), 1e-12);
+        assertNull(ConvergenceController.schedule("none", 0.01, 100, 9));
+        try {
+            ConvergenceController.schedule("linear", 0.01, 100, 9);
+            fail("Очаква се IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // очаквано
+        }
+    }
+
+    public void testScheduleSurvivesJsonConfiguration() {
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        ISchedule schedule = ConvergenceController.schedule("warmup-cosine", 0.01, 100, 5);
+        model.setLearningRate(schedule);
+
+        MultiLayerConfiguration restored = MultiLayerConfiguration.fromJson(model.getLayerWiseConfigurations().toJson());
+        for (int iteration : new int[]{0, 5, 50, 250, 499, 1000}) {
+            for (int layer = 0; layer < restored.getConfs().size(); layer++) {
+                assertEquals(schedule.valueAt(iteration, 0),
+                        ((BaseLayer) restored.getConf(layer).getLayer()).getIUpdater().getLearningRate(iteration, 0), 1e-12);
+            }
+        }
+
+        FlexibleNeuralNetwork xor = new FlexibleNeuralNetwork(3, 0.1, Activation.TANH);
+        xor.getModel().setLearningRate(ConvergenceController.schedule("cosine", 0.1, 10, 10));
+        assertTrue(((BaseLayer) xor.getModel().getLayerWiseConfigurations().getConf(0).getLayer()).getIUpdater() instanceof Adam);
+        MultiLayerConfiguration.fromJson(xor.getModel().getLayerWiseConfigurations().toJson());
+    }
+}
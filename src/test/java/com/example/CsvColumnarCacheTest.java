@@ -0,0 +1,254 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Паралелното парсване на части трябва да дава същите стойности и статистики като
+ * последователното, а итераторът - нормализирани пакети, next(num) и close
+ */
+public class CsvColumnarCacheTest extends TestCase {
+
+    private static final int ROWS = 500;
+    private static final int FEATURES = 3;
+
+    private static double feature(int row, int f) {
+        return f == 0 ? row * 0.5 - 40 : f == 1 ? Math.sin(row) * 1e3 : 7; // третият признак е константа
+    }
+
+    /** Временните CSV файлове и кешовете до тях, изтривани след всеки тест */
+    private final List<Path> temporary = new ArrayList<>();
+
+    private static int label(int row) {
+        return row % 3;
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        for (Path file : temporary) {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(cacheFor(file));
+        }
+        temporary.clear();
+    }
+
+    private static Path cacheFor(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + ".cache");
+    }
+
+    private Path createCsv(String prefix) throws IOException {
+        Path csv = Files.createTempFile(prefix, ".csv");
+        temporary.add(csv);
+        return csv;
+    }
+
+    /** Етикетът е във втората колона, с празни редове и \r\n между данните */
+    private Path writeCsv() throws IOException {
+        Path csv = createCsv("data");
+        try (Writer out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            out.write("a,label,b,c\n");
+            for (int r = 0; r < ROWS; r++) {
+                out.write(feature(r, 0) + "," + label(r) + ", " + (float) feature(r, 1) + ",\"7\"");
+                out.write(r % 50 == 0 ? "\r\n\n" : "\n");
+            }
+        }
+        return csv;
+    }
+
+    public void testParsesInChunksAndReopens() throws Exception {
+        Path csv = writeCsv();
+        Path cachePath = cacheFor(csv);
+
+        // Малки части - десетки части, границите падат насред редове
+        CsvColumnarCache cache = CsvColumnarCache.build(csv, cachePath, 1, 3, true, 4, 256);
+        assertEquals(ROWS, cache.getRows());
+        assertEquals(FEATURES, cache.getNumFeatures());
+
+        RunningStats expected = new RunningStats(FEATURES);
+        double[] row = new double[FEATURES];
+        IntBuffer labels = cache.labels();
+        for (int r = 0; r < ROWS; r++) {
+            for (int f = 0; f < FEATURES; f++) {
+                row[f] = (float) feature(r, f);
+                assertEquals((float) feature(r, f), cache.column(f).get(r), 0f);
+            }
+            expected.add(row);
+            assertEquals(label(r), labels.get(r));
+        }
+        for (int f = 0; f < FEATURES; f++) {
+            assertEquals(expected.getMean(f), cache.getStats().getMean(f), 1e-9);
+            assertEquals(expected.getVariance(f), cache.getStats().getVariance(f), 1e-6);
+        }
+
+        // Непроменен CSV - кешът се отваря, без да се създава наново
+        long modified = Files.getLastModifiedTime(cachePath).toMillis();
+        CsvColumnarCache reopened = CsvColumnarCache.openOrBuild(csv, cachePath, 1, 3, true, 2);
+        assertEquals(modified, Files.getLastModifiedTime(cachePath).toMillis());
+        assertEquals(ROWS, reopened.getRows());
+        assertEquals(cache.getStats().getMean(1), reopened.getStats().getMean(1), 0.0);
+        assertEquals(cache.column(1).get(ROWS - 1), reopened.column(1).get(ROWS - 1), 0f);
+    }
+
+    public void testRebuildsWhenSkipHeaderChanges() throws Exception {
+        Path csv = createCsv("plain");
+        Files.write(csv, "1,0\n2,1\n3,0\n".getBytes(StandardCharsets.US_ASCII));
+        Path cache = cacheFor(csv);
+
+        assertEquals(3, CsvColumnarCache.openOrBuild(csv, cache, 1, 2, false, 1).getRows());
+        // Същият файл, но първият ред вече е заглавен - кешът не важи
+        assertEquals(2, CsvColumnarCache.openOrBuild(csv, cache, 1, 2, true, 1).getRows());
+        assertEquals(2, CsvColumnarCache.openOrBuild(csv, cache, 1, 2, true, 1).getRows());
+    }
+
+    public void testMergeMatchesSequential() {
+        Random random = new Random(7);
+        RunningStats all = new RunningStats(2);
+        RunningStats[] parts = {new RunningStats(2), new RunningStats(2), new RunningStats(2)};
+        for (int i = 0; i < 1000; i++) {
+            double[] row = {random.nextGaussian() * 5 + 100, random.nextDouble()};
+            all.add(row);
+            parts[i < 10 ? 0 : i < 600 ? 1 : 2].add(row);
+        }
+        RunningStats merged = new RunningStats(2);
+        for (RunningStats part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(all.getCount(), merged.getCount());
+        for (int c = 0; c < 2; c++) {
+            assertEquals(all.getMean(c), merged.getMean(c), 1e-9);
+            assertEquals(all.getVariance(c), merged.getVariance(c), 1e-9);
+        }
+    }
+
+    public void testParseNumber() {
+        String[] values = {"0", "-1", "+2.5", "3.14159", ".5", "1e3", "-2.5E-4", "\"42\"", " 7 ",
+                "12345678901234567890", "1e300", "NaN", "0.000001"};
+        for (String value : values) {
+            ByteBuffer buffer = ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+            double expected = Double.parseDouble(value.replace("\"", "").trim());
+            assertEquals(value, expected, CsvColumnarCache.parseNumber(buffer, 0, buffer.limit()), 0.0);
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap("1.2.3".getBytes(StandardCharsets.US_ASCII));
+            CsvColumnarCache.parseNumber(buffer, 0, buffer.limit());
+            fail();
+        } catch (NumberFormatException e) {
+            // очаквано
+        }
+    }
+
+    public void testRejectsBadLabel() throws Exception {
+        Path csv = createCsv("bad");
+        Files.write(csv, "1,0\n2,1\n3,5\n".getBytes(StandardCharsets.US_ASCII));
+        Path cache = cacheFor(csv);
+        try {
+            CsvColumnarCache.build(csv, cache, 1, 2, false, 1);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Ред 3"));
+        }
+        assertFalse(Files.exists(cache));
+        assertFalse(Files.exists(cache.resolveSibling(cache.getFileName() + ".tmp")));
+    }
+
+    public void testIteratorNormalizes() throws Exception {
+        Path csv = writeCsv();
+        CsvColumnarCache cache = CsvColumnarCache.build(csv, cacheFor(csv), 1, 3, true, 2, 1024);
+        CsvDataSetIterator iterator = new CsvDataSetIterator(cache, 64);
+
+        int examples = 0;
+        double[] sum = new double[FEATURES];
+        while (iterator.hasNext()) {
+            DataSet batch = iterator.next();
+            INDArray features = batch.getFeatures();
+            for (int k = 0; k < features.rows(); k++) {
+                int row = examples + k;
+                assertEquals(label(row), batch.getLabels().getRow(k).argMax().getInt(0));
+                for (int f = 0; f < FEATURES; f++) {
+                    sum[f] += features.getDouble(k, f);
+                }
+            }
+            examples += features.rows();
+        }
+        assertEquals(ROWS, examples);
+        for (int f = 0; f < FEATURES; f++) {
+            assertEquals(0.0, sum[f] / ROWS, 1e-4);
+        }
+
+        // Разбърканият итератор дава същите примери в друг ред на пакетите
+        CsvDataSetIterator shuffled = new CsvDataSetIterator(cache, 64, 2, true, 1, DataType.FLOAT);
+        int count = 0;
+        while (shuffled.hasNext()) {
+            count += shuffled.next().numExamples();
+        }
+        assertEquals(ROWS, count);
+        iterator.close();
+        shuffled.close();
+
+        FloatBuffer column = cache.column(0);
+        assertEquals((float) feature(ROWS - 1, 0), column.get(ROWS - 1), 0f);
+    }
+
+    public void testNextNumSpansBatches() throws Exception {
+        Path csv = writeCsv();
+        CsvColumnarCache cache = CsvColumnarCache.build(csv, cacheFor(csv), 1, 3, true, 2, 1024);
+        CsvDataSetIterator iterator = new CsvDataSetIterator(cache, 64);
+        try {
+            // 50 реда вземат от първите два пакета, 150 - от следващите три; последният е непълен
+            int row = 0;
+            for (int size : new int[]{50, 150, 400}) {
+                DataSet batch = iterator.next(size);
+                assertEquals(Math.min(size, ROWS - row), batch.numExamples());
+                for (int k = 0; k < batch.numExamples(); k++) {
+                    assertEquals(label(row++), batch.getLabels().getRow(k).argMax().getInt(0));
+                }
+            }
+            assertEquals(ROWS, row);
+            assertFalse(iterator.hasNext());
+
+            // next() след започнат пакет продължава от следващия ред с пълен пакет
+            iterator.reset();
+            assertEquals(10, iterator.next(10).numExamples());
+            DataSet rest = iterator.next();
+            assertEquals(64, rest.numExamples());
+            assertEquals(label(10), rest.getLabels().getRow(0).argMax().getInt(0));
+            assertEquals(label(73), rest.getLabels().getRow(63).argMax().getInt(0));
+        } finally {
+            iterator.close();
+        }
+    }
+
+    public void testCloseStopsPrefetchThread() throws Exception {
+        Path csv = writeCsv();
+        CsvColumnarCache cache = CsvColumnarCache.build(csv, cacheFor(csv), 1, 3, true, 2, 1024);
+        CsvDataSetIterator iterator = new CsvDataSetIterator(cache, 16);
+        iterator.next();
+        long before = prefetchThreads();
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        assertEquals(before - 1, prefetchThreads());
+
+        iterator.reset();
+        assertTrue(iterator.hasNext());
+        iterator.close();
+    }
+
+    private static long prefetchThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("csv-prefetch") && t.isAlive()).count();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.learning.config.Nesterovs;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Паралелна тренировка върху генерирани IDX данни
+ */
+public class DataParallelTrainerTest extends TestCase {
+
+    public void testTrainsAllSamplesAndAveragesIntoModel() throws Exception {
+        Path directory = IdxFixtures.mnistDirectory(40, 4, 4);
+        IdxMnistDataSetIterator iterator = IdxMnistDataSetIterator.mnist(directory, true, 4, 1);
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(1)
+                .updater(new Nesterovs(0.05, 0.9))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(16).nOut(8).activation(Activation.RELU).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.NEGATIVELOGLIKELIHOOD)
+                        .nIn(8).nOut(10).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork model = new MultiLayerNetwork(conf);
+        model.init();
+        INDArray initial = model.params().dup();
+        AtomicInteger iterations = new AtomicInteger();
+        AtomicInteger epochs = new AtomicInteger();
+        model.setListeners(new BaseTrainingListener() {
+            @Override
+            public void iterationDone(Model m, int iteration, int epoch) {
+                assertEquals(iterations.getAndIncrement(), iteration);
+                assertTrue(m.batchSize() > 0 && !Double.isNaN(m.score()));
+            }
+
+            @Override
+            public void onEpochEnd(Model m) {
+                epochs.incrementAndGet();
+            }
+        });
+
+        try (DataParallelTrainer trainer = new DataParallelTrainer(model, 3, 2)) {
+            trainer.fit(iterator);
+            assertEquals(40, trainer.getLastEpochSamples());
+            assertTrue(trainer.getSamplesPerSecond() > 0);
+
+            // Втора епоха - итераторът се нулира автоматично
+            trainer.fit(iterator);
+            assertEquals(40, trainer.getLastEpochSamples());
+        }
+
+        // 10 пакета по 4 на 3 работника - 4 рунда на епоха
+        assertEquals(8, iterations.get());
+        assertEquals(8, model.getIterationCount());
+        assertEquals(2, epochs.get());
+        assertEquals(2, model.getEpochCount());
+        assertFalse("параметрите трябва да са се променили", initial.equalsWithEps(model.params(), 1e-6));
+        assertFalse(Double.isNaN(model.params().sumNumber().doubleValue()));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Пакетното изчисление трябва да дава същите класове като изчислението клетка по клетка
+ */
+public class DecisionBoundaryGridTest extends TestCase {
+
+    private MultiLayerNetwork model;
+
+    @Override
+    protected void setUp() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        network.train(300);
+        model = network.getModel();
+    }
+
+    public void testMatchesPerCellEvaluation() {
+        int resolution = 7;
+        // 3 реда на плочка - последната плочка е непълна
+        DecisionBoundaryGrid grid = new DecisionBoundaryGrid(resolution, 3);
+        grid.evaluate(model);
+
+        for (int i = 0; i <= resolution; i++) {
+            for (int j = 0; j <= resolution; j++) {
+                INDArray output = model.output(Nd4j.create(new double[][]{
+                    {(double) i / resolution, (double) j / resolution}
+                }));
+                int expected = output.getDouble(0) > output.getDouble(1) ? 0 : 1;
+                assertEquals("клетка (" + i + ", " + j + ")", expected, grid.classAt(i, j));
+            }
+        }
+    }
+
+    public void testExportsPgmAndCsv() throws Exception {
+        DecisionBoundaryGrid grid = new DecisionBoundaryGrid(4);
+        grid.evaluate(model);
+
+        Path dir = Files.createTempDirectory("grid");
+        Path pgm = dir.resolve("grid.pgm");
+        Path csv = dir.resolve("grid.csv");
+        grid.writePgm(pgm, 2);
+        grid.writeCsv(csv);
+
+        byte[] image = Files.readAllBytes(pgm);
+        String header = "P5\n5 5\n255\n";
+        assertEquals(header.length() + 25, image.length);
+        assertEquals(header, new String(image, 0, header.length(), "US-ASCII"));
+
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals(5, lines.size());
+        assertEquals(5, lines.get(0).split(",").length);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+/**
+ * Натрупването на градиенти от няколко малки пакета трябва да дава същите
+ * параметри като тренировка с един голям пакет, с по-малко памет за активациите
+ */
+public class GradientAccumulationTrainerTest extends TestCase {
+
+    private static final int EXAMPLES = 256;
+
+    private INDArray features;
+    private INDArray labels;
+
+    @Override
+    protected void setUp() {
+        Nd4j.getRandom().setSeed(11);
+        features = Nd4j.rand(DataType.DOUBLE, EXAMPLES, MNISTClassifier.NUM_INPUTS);
+        labels = Nd4j.zeros(DataType.DOUBLE, EXAMPLES, MNISTClassifier.NUM_CLASSES);
+        for (int i = 0; i < EXAMPLES; i++) {
+            labels.putScalar(i, (i * 7) % MNISTClassifier.NUM_CLASSES, 1.0);
+        }
+    }
+
+    public void testMatchesLargeBatchInDouble() {
+        assertEquivalent(Precision.DOUBLE, 4, 1e-10);
+    }
+
+    public void testMatchesLargeBatchInFloat() {
+        assertEquivalent(Precision.FLOAT, 8, 1e-4);
+    }
+
+    public void testPartialAccumulation() {
+        MultiLayerNetwork large = MNISTClassifier.createModel(Precision.DOUBLE);
+        MultiLayerNetwork accumulated = large.clone();
+        GradientAccumulationTrainer trainer = new GradientAccumulationTrainer(accumulated, 4);
+
+        // 64 + 64 + 32 примера и flush - като един пакет от 160
+        trainer.fit(rows(0, 64), labelRows(0, 64));
+        trainer.fit(rows(64, 128), labelRows(64, 128));
+        trainer.fit(rows(128, 160), labelRows(128, 160));
+        assertEquals(0, trainer.getSteps());
+        trainer.flush();
+        assertEquals(1, trainer.getSteps());
+
+        large.fit(rows(0, 160), labelRows(0, 160));
+        assertTrue(large.params().equalsWithEps(accumulated.params(), 1e-10));
+        assertEquals(large.getIterationCount(), accumulated.getIterationCount());
+    }
+
+    private void assertEquivalent(Precision precision, int microBatches, double eps) {
+        MultiLayerNetwork large = MNISTClassifier.createModel(precision);
+        MultiLayerNetwork accumulated = large.clone();
+        GradientAccumulationTrainer trainer = new GradientAccumulationTrainer(accumulated, microBatches);
+        INDArray x = features.castTo(precision.trainingType());
+        INDArray y = labels.castTo(precision.trainingType());
+
+        int micro = EXAMPLES / microBatches;
+        for (int step = 0; step < 3; step++) {
+            large.fit(x, y);
+            for (int b = 0; b < microBatches; b++) {
+                trainer.fit(x.get(NDArrayIndex.interval(b * micro, (b + 1) * micro), NDArrayIndex.all()),
+                        y.get(NDArrayIndex.interval(b * micro, (b + 1) * micro), NDArrayIndex.all()));
+            }
+            assertEquals(step + 1, trainer.getSteps());
+            assertTrue("стъпка " + step, large.params().equalsWithEps(accumulated.params(), eps));
+            assertTrue(large.getUpdater().getStateViewArray().equalsWithEps(
+                    accumulated.getUpdater().getStateViewArray(), eps));
+            assertEquals(large.score(), accumulated.score(), eps * 10);
+        }
+        assertEquals(large.getIterationCount(), accumulated.getIterationCount());
+
+        // Активациите се пазят за micro примера вместо за EXAMPLES
+        GradientAccumulationTrainer single = new GradientAccumulationTrainer(large.clone(), 1);
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+        single.fit(x, y);
+        long largeWorkspace = single.getPeakWorkspaceBytes();
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+        GradientAccumulationTrainer small = new GradientAccumulationTrainer(large.clone(), microBatches);
+        small.fit(x.get(NDArrayIndex.interval(0, micro), NDArrayIndex.all()),
+                y.get(NDArrayIndex.interval(0, micro), NDArrayIndex.all()));
+        assertTrue(small.getPeakWorkspaceBytes() + " < " + largeWorkspace,
+                small.getPeakWorkspaceBytes() * 2 < largeWorkspace);
+        assertTrue(small.getPeakNativeBytes() < single.getPeakNativeBytes());
+    }
+
+    private INDArray rows(int from, int to) {
+        return features.get(NDArrayIndex.interval(from, to), NDArrayIndex.all());
+    }
+
+    private INDArray labelRows(int from, int to) {
+        return labels.get(NDArrayIndex.interval(from, to), NDArrayIndex.all());
+    }
+}
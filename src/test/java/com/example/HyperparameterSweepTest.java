@@ -0,0 +1,40 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.nd4j.linalg.activations.Activation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Търсене на стъпала и записване на резултатите в JSONL
+ */
+public class HyperparameterSweepTest extends TestCase {
+
+    public void testStopsLosingTrialsAndStreamsResults() throws Exception {
+        List<HyperparameterSweep.Trial> trials = HyperparameterSweep.grid(
+                new int[]{2, 8}, new double[]{0.001, 0.1}, new Activation[]{Activation.TANH});
+        assertEquals(4, trials.size());
+
+        Path leaderboard = Files.createTempFile("sweep", ".jsonl");
+        List<HyperparameterSweep.Trial> ranked;
+        try (HyperparameterSweep sweep = new HyperparameterSweep(2, leaderboard)) {
+            ranked = sweep.run(trials, new int[]{20, 60}, 2);
+        }
+
+        // 4 реда от първото стъпало и 2 от второто
+        List<String> lines = Files.readAllLines(leaderboard);
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(0).contains("\"status\":\"promoted\""));
+        assertTrue(lines.get(5).contains("\"status\":\"completed\""));
+
+        assertEquals(4, ranked.size());
+        assertEquals("completed", ranked.get(0).getStatus());
+        assertEquals("completed", ranked.get(1).getStatus());
+        assertEquals(60, ranked.get(0).getEpochs());
+        assertTrue(ranked.get(0).getScore() <= ranked.get(1).getScore());
+        assertEquals("stopped", ranked.get(3).getStatus());
+        assertEquals(20, ranked.get(3).getEpochs());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Генерира малки IDX файлове във формата на MNIST за тестове без мрежа.
+ *
+ * Пикселът p на пример i е (i * 31 + p * 7) % 256, а етикетът е i % 10.
+ */
+final class IdxFixtures {
+
+    private IdxFixtures() {
+    }
+
+    static int pixel(int example, int p) {
+        return (example * 31 + p * 7) % 256;
+    }
+
+    static int label(int example) {
+        return example % 10;
+    }
+
+    /**
+     * Записва prefix-images-idx3-ubyte и prefix-labels-idx1-ubyte в директорията
+     */
+    static void write(Path directory, String prefix, int count, int rows, int cols) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve(prefix + "-images-idx3-ubyte")))) {
+            out.writeInt(0x00000803);
+            out.writeInt(count);
+            out.writeInt(rows);
+            out.writeInt(cols);
+            for (int i = 0; i < count; i++) {
+                for (int p = 0; p < rows * cols; p++) {
+                    out.writeByte(pixel(i, p));
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve(prefix + "-labels-idx1-ubyte")))) {
+            out.writeInt(0x00000801);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeByte(label(i));
+            }
+        }
+    }
+
+    /**
+     * Временна директория с train (count примера) и t10k (count / 2 примера) файлове
+     */
+    static Path mnistDirectory(int count, int rows, int cols) throws IOException {
+        Path directory = Files.createTempDirectory("mnist-idx");
+        write(directory, "train", count, rows, cols);
+        write(directory, "t10k", Math.max(1, count / 2), rows, cols);
+        return directory;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Четене на генерирани IDX файлове - стойности, непълен последен пакет,
+ * reset, разбъркване, next(num) и close
+ */
+public class IdxMnistDataSetIteratorTest extends TestCase {
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = IdxFixtures.mnistDirectory(10, 3, 4);
+    }
+
+    public void testDecodesPixelsAndLabelsInOrder() throws Exception {
+        IdxMnistDataSetIterator iterator = IdxMnistDataSetIterator.mnist(directory, false, 2, 0);
+        assertEquals(5, iterator.totalExamples());
+        assertEquals(12, iterator.inputColumns());
+
+        for (int pass = 0; pass < 2; pass++) {
+            int example = 0;
+            int batches = 0;
+            while (iterator.hasNext()) {
+                DataSet batch = iterator.next();
+                batches++;
+                for (int k = 0; k < batch.numExamples(); k++, example++) {
+                    for (int p = 0; p < 12; p++) {
+                        assertEquals(IdxFixtures.pixel(example, p) / 255.0,
+                                batch.getFeatures().getDouble(k, p), 1e-6);
+                    }
+                    for (int c = 0; c < 10; c++) {
+                        assertEquals(c == IdxFixtures.label(example) ? 1.0 : 0.0,
+                                batch.getLabels().getDouble(k, c), 0.0);
+                    }
+                }
+            }
+            assertEquals(5, example);
+            // 2 + 2 + 1 - последният пакет е непълен
+            assertEquals(3, batches);
+            iterator.reset();
+        }
+        iterator.close();
+    }
+
+    public void testShuffledEpochVisitsEveryExampleOnce() throws Exception {
+        IdxMnistDataSetIterator iterator = IdxMnistDataSetIterator.mnist(directory, true, 3, 42);
+        // 10 примера по 3 - броят пакети идва от заглавието, без четене на епоха
+        assertEquals(4, MNISTClassifier.batchesPerEpoch(iterator, true));
+        Set<Integer> seen = new HashSet<>();
+        int batches = 0;
+        while (iterator.hasNext()) {
+            batches++;
+            DataSet batch = iterator.next();
+            for (int k = 0; k < batch.numExamples(); k++) {
+                // Първият пиксел (p = 0) еднозначно определя примера: i * 31 % 256
+                int first = (int) Math.round(batch.getFeatures().getDouble(k, 0) * 255);
+                for (int i = 0; i < 10; i++) {
+                    if (IdxFixtures.pixel(i, 0) == first) {
+                        assertTrue("пример " + i + " е върнат два пъти", seen.add(i));
+                        assertEquals(1.0, batch.getLabels().getDouble(k, IdxFixtures.label(i)), 0.0);
+                    }
+                }
+            }
+        }
+        assertEquals(10, seen.size());
+        assertEquals(4, batches);
+        iterator.close();
+    }
+
+    public void testNextNumSpansBatches() throws Exception {
+        // Два итератора с едно и също семе - пакети по 4 през next() и 3 + 5 + 4 реда през next(num)
+        IdxMnistDataSetIterator batches = IdxMnistDataSetIterator.mnist(directory, true, 4, 0);
+        IdxMnistDataSetIterator rows = IdxMnistDataSetIterator.mnist(directory, true, 4, 0);
+        try {
+            double[] expected = new double[10];
+            int row = 0;
+            while (batches.hasNext()) {
+                DataSet batch = batches.next();
+                for (int k = 0; k < batch.numExamples(); k++) {
+                    expected[row++] = batch.getFeatures().getDouble(k, 0);
+                }
+            }
+
+            row = 0;
+            for (int size : new int[]{3, 5, 4}) {
+                DataSet batch = rows.next(size);
+                assertEquals(Math.min(size, 10 - row), batch.numExamples());
+                for (int k = 0; k < batch.numExamples(); k++) {
+                    assertEquals(expected[row++], batch.getFeatures().getDouble(k, 0), 0.0);
+                }
+            }
+            assertEquals(10, row);
+            assertFalse(rows.hasNext());
+        } finally {
+            batches.close();
+            rows.close();
+        }
+    }
+
+    public void testCloseStopsPrefetchThread() throws Exception {
+        IdxMnistDataSetIterator iterator = IdxMnistDataSetIterator.mnist(directory, true, 1, 0);
+        iterator.next();
+        long before = prefetchThreads();
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        assertEquals(before - 1, prefetchThreads());
+
+        iterator.reset();
+        assertTrue(iterator.hasNext());
+        iterator.close();
+    }
+
+    private static long prefetchThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("mnist-prefetch") && t.isAlive()).count();
+    }
+}
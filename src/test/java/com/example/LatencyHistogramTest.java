@@ -0,0 +1,47 @@
+package com.example;
+
+import junit.framework.TestCase;
+
+/**
+ * Процентили с логаритмични кофи
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) {
+            histogram.record(v * 1_000);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500.0, histogram.getMean(), 1e-6);
+
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue("p50 " + p50, p50 >= 5_000_000 && p50 <= 5_000_000 * 1.125);
+        assertTrue("p99 " + p99, p99 >= 9_900_000 && p99 <= 10_000_000);
+        assertEquals(histogram.getMax(), histogram.getPercentile(100));
+    }
+
+    public void testBucketsCoverEveryValue() {
+        for (long v : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(v);
+            assertTrue(v + " > " + LatencyHistogram.upperBound(index), v <= LatencyHistogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(v + " <= " + LatencyHistogram.upperBound(index - 1), v > LatencyHistogram.upperBound(index - 1));
+            }
+        }
+    }
+
+    public void testAddMergesCounts() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(100);
+        b.record(300);
+        b.record(-5);
+        a.add(b);
+        assertEquals(3, a.getCount());
+        assertEquals(300, a.getMax());
+        assertEquals(0, a.getPercentile(1));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Слетият израз трябва да дава същия резултат като веригата от ND4J операции,
+ * с едно минаване за редукциите и едно за резултата
+ */
+public class LazyExpressionTest extends TestCase {
+
+    public void testNormalizeMatchesEagerChain() {
+        Nd4j.getRandom().setSeed(7);
+        INDArray x = Nd4j.rand(DataType.FLOAT, 300, 700).muli(50).addi(10);
+        INDArray expected = x.sub(x.mean()).div(x.std());
+
+        LazyExpression expression = LazyExpression.of(x).normalize();
+        assertEquals(0, expression.getPasses());
+        INDArray actual = expression.eval();
+        assertEquals(2, expression.getPasses());
+        assertTrue(expected.equalsWithEps(actual, 1e-4));
+        assertEquals(DataType.FLOAT, actual.dataType());
+        assertEquals(x.shapeInfoToString(), actual.shapeInfoToString());
+
+        // Редукциите не се пазят между извикванията - отново две минавания
+        expression.eval();
+        assertEquals(4, expression.getPasses());
+    }
+
+    public void testInPlace() {
+        Nd4j.getRandom().setSeed(8);
+        INDArray x = Nd4j.rand(DataType.DOUBLE, 1000, 3);
+        INDArray expected = x.sub(x.mean()).div(x.std());
+
+        LazyExpression source = LazyExpression.of(x);
+        assertSame(x, source.normalize().eval(x));
+        assertTrue(expected.equalsWithEps(x, 1e-12));
+
+        // Следващото изчисление чете презаписаните данни
+        assertEquals(0.0, source.mean().get(), 1e-12);
+        assertEquals(1.0, source.std().get(), 1e-12);
+    }
+
+    public void testElementwiseAndReductions() {
+        INDArray x = Nd4j.arange(-300, 301).castTo(DataType.DOUBLE).divi(100).reshape(601, 1);
+        LazyExpression chain = LazyExpression.of(x).mul(2).add(1).sigmoid().square();
+        INDArray expected = Transforms.pow(Transforms.sigmoid(x.mul(2).add(1)), 2);
+        assertTrue(expected.equalsWithEps(chain.eval(), 1e-12));
+
+        assertEquals(expected.meanNumber().doubleValue(), chain.mean().get(), 1e-12);
+        assertEquals(expected.sumNumber().doubleValue(), chain.sum().get(), 1e-9);
+        assertEquals(expected.varNumber().doubleValue(), chain.variance().get(), 1e-12);
+        assertEquals(expected.minNumber().doubleValue(), chain.min().get(), 0.0);
+        assertEquals(expected.maxNumber().doubleValue(), chain.max().get(), 0.0);
+
+        INDArray relu = LazyExpression.of(x).relu().abs().sqrt().exp().tanh().sub(0.5).div(2).eval();
+        INDArray want = Transforms.tanh(Transforms.exp(Transforms.sqrt(Transforms.relu(x)))).sub(0.5).div(2);
+        assertTrue(want.equalsWithEps(relu, 1e-12));
+    }
+
+    public void testViewsAreCopied() {
+        INDArray x = Nd4j.rand(DataType.FLOAT, 10, 10);
+        INDArray view = x.get(NDArrayIndex.interval(2, 5), NDArrayIndex.interval(3, 9));
+        INDArray expected = view.sub(view.mean()).div(view.std());
+        assertTrue(expected.equalsWithEps(LazyExpression.of(view).normalize().eval(), 1e-5));
+        try {
+            LazyExpression.of(x).eval(view);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // очаквано
+        }
+    }
+
+    public void testLargeArrayInTiles() {
+        // Повече от един TILE и неравно последно парче - числено устойчиво при голямо отместване
+        INDArray x = Nd4j.arange(1, 100_004).castTo(DataType.DOUBLE).addi(1e9);
+        LazyExpression expression = LazyExpression.of(x);
+        assertEquals(1e9 + 50_002, expression.mean().get(), 1e-6);
+        assertEquals(x.stdNumber().doubleValue(), expression.std().get(), 1e-6);
+        // Всяко get() е отделно минаване
+        assertEquals(2, expression.getPasses());
+    }
+
+    public void testSeesChangesMadeByTheCaller() {
+        INDArray x = Nd4j.arange(0, 10).castTo(DataType.DOUBLE);
+        LazyExpression expression = LazyExpression.of(x);
+        assertEquals(4.5, expression.mean().get(), 1e-12);
+
+        // of() не копира непрекъснат масив - промяната се вижда при следващото изчисление
+        x.addi(10);
+        assertEquals(14.5, expression.mean().get(), 1e-12);
+        INDArray normalized = expression.normalize().eval();
+        assertTrue(x.sub(x.mean()).div(x.std()).equalsWithEps(normalized, 1e-12));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Едновременни заявки трябва да се обединяват в пакети и да връщат същия резултат
+ * като единично извикване на model.output
+ */
+public class MicroBatchingPredictorTest extends TestCase {
+
+    public void testConcurrentRequestsAreBatched() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        network.train(200);
+        MultiLayerNetwork model = network.getModel();
+
+        int threads = 8;
+        int perThread = 50;
+        double[][] points = new double[threads * perThread][];
+        for (int k = 0; k < points.length; k++) {
+            points[k] = new double[]{(k % 17) / 16.0, (k % 13) / 12.0};
+        }
+
+        double[][] expected = new double[points.length][];
+        for (int k = 0; k < points.length; k++) {
+            INDArray output = model.output(Nd4j.create(new double[][]{points[k]}));
+            expected[k] = output.toDoubleVector();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (MicroBatchingPredictor predictor = network.batchingPredictor(16, 2000)) {
+            List<Future<List<CompletableFuture<double[]>>>> submitted = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t * perThread;
+                submitted.add(pool.submit(() -> {
+                    List<CompletableFuture<double[]>> results = new ArrayList<>();
+                    for (int k = first; k < first + perThread; k++) {
+                        results.add(predictor.submit(points[k]));
+                    }
+                    return results;
+                }));
+            }
+
+            for (int t = 0; t < threads; t++) {
+                List<CompletableFuture<double[]>> results = submitted.get(t).get();
+                for (int k = 0; k < perThread; k++) {
+                    double[] row = results.get(k).get(10, TimeUnit.SECONDS);
+                    double[] want = expected[t * perThread + k];
+                    assertEquals(want.length, row.length);
+                    for (int c = 0; c < row.length; c++) {
+                        assertEquals(want[c], row[c], 1e-5);
+                    }
+                }
+            }
+
+            assertEquals(points.length, predictor.getSampleCount());
+            assertTrue(predictor.getBatchCount() < points.length);
+            assertTrue(predictor.getAverageBatchFill() > 0 && predictor.getAverageBatchFill() <= 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testCloseCompletesEveryRequest() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(3, 0.1, Activation.TANH);
+        for (int round = 0; round < 20; round++) {
+            MicroBatchingPredictor predictor = network.batchingPredictor(8, 100);
+            List<CompletableFuture<double[]>> results = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int k = 0; k < 200; k++) {
+                    results.add(predictor.submit(0.5, 0.5));
+                }
+            });
+            submitter.start();
+            predictor.close();
+            submitter.join();
+
+            // Заявка, подадена по време на close(), завършва с резултат или с отказ - никога не виси
+            long completed = 0;
+            for (CompletableFuture<double[]> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    completed++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+            }
+            assertEquals(completed, predictor.getSampleCount());
+        }
+    }
+}
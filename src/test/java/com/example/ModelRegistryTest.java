@@ -0,0 +1,169 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Подмяната на версии под натоварване не трябва да прекъсва предвижданията, а
+ * всяка стара версия трябва да се освободи веднага след последното си използване
+ */
+public class ModelRegistryTest extends TestCase {
+
+    private static final double[] POINT = {1, 0};
+
+    public void testWarmsReplicasWithProfileBatchSizes() {
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        WarmupProfile profile = new WarmupProfile();
+        profile.recordOutput(256);
+        profile.recordFit(64);
+
+        try (ModelRegistry registry = new ModelRegistry(2, 2)) {
+            registry.publish("single", model);
+            registry.setWarmupProfile(profile);
+            registry.publish("batch", model);
+
+            // Workspace-ът на всяка реплика вече е с размера за пакет от 256, а не за един пример
+            for (int r = 0; r < 2; r++) {
+                long single = Nd4j.getWorkspaceManager()
+                        .getWorkspaceForCurrentThread("MODEL_REGISTRY_single_" + r).getCurrentSize();
+                long batch = Nd4j.getWorkspaceManager()
+                        .getWorkspaceForCurrentThread("MODEL_REGISTRY_batch_" + r).getCurrentSize();
+                assertTrue(single > 0);
+                assertTrue(batch + " > " + single, batch > 100 * single);
+            }
+        }
+    }
+
+    public void testSwapsUnderLoad() throws Exception {
+        MultiLayerNetwork[] models = new MultiLayerNetwork[3];
+        double[][] expected = new double[models.length][];
+        for (int m = 0; m < models.length; m++) {
+            FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(3 + m, 0.1, Activation.TANH);
+            network.train(50 * (m + 1));
+            models[m] = network.getModel();
+            expected[m] = models[m].output(Nd4j.create(new double[][]{POINT})).toDoubleVector();
+        }
+
+        int swaps = 12;
+        try (ModelRegistry registry = new ModelRegistry(2, 5)) {
+            registry.publish("xor", models[0]);
+
+            AtomicBoolean stop = new AtomicBoolean();
+            AtomicLong calls = new AtomicLong();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread reader = new Thread(() -> {
+                    try {
+                        long lastVersion = 0;
+                        while (!stop.get()) {
+                            try (ModelRegistry.Lease lease = registry.acquire("xor")) {
+                                // Версиите само растат и изходът съвпада с мрежата на заетата версия
+                                assertTrue(lease.getVersion() >= lastVersion);
+                                lastVersion = lease.getVersion();
+                                double[] output = lease.getPool().output(POINT);
+                                double[] want = expected[(int) ((lease.getVersion() - 1) % models.length)];
+                                assertEquals(want[0], output[0], 1e-6);
+                                assertEquals(want[1], output[1], 1e-6);
+                            }
+                            calls.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            for (int s = 1; s <= swaps; s++) {
+                Thread.sleep(20);
+                registry.publish("xor", models[s % models.length]);
+            }
+            Thread.sleep(50);
+            stop.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            assertNull(failure.get());
+            assertTrue(calls.get() > swaps);
+            assertEquals(swaps + 1, registry.getVersion("xor"));
+            assertEquals(swaps, registry.getSwaps());
+            assertEquals(swaps, registry.getRetired());
+        }
+    }
+
+    public void testInFlightLeaseKeepsOldVersion() {
+        FlexibleNeuralNetwork first = new FlexibleNeuralNetwork(3, 0.1, Activation.TANH);
+        FlexibleNeuralNetwork second = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        double[] expected = first.getModel().output(Nd4j.create(new double[][]{POINT})).toDoubleVector();
+
+        try (ModelRegistry registry = new ModelRegistry(1, 0)) {
+            registry.publish("xor", first.getModel());
+            ModelRegistry.Lease lease = registry.acquire("xor");
+
+            registry.publish("xor", second.getModel());
+            assertEquals(2, registry.getVersion("xor"));
+            assertEquals(0, registry.getRetired());
+
+            // Старата версия още отговаря
+            double[] output = lease.getPool().output(POINT);
+            assertEquals(expected[0], output[0], 1e-6);
+            assertEquals(expected[1], output[1], 1e-6);
+
+            lease.close();
+            assertEquals(1, registry.getRetired());
+            lease.close();
+            assertEquals(1, registry.getRetired());
+        }
+    }
+
+    public void testPublishRacingRemoveNeverLeaksAVersion() throws Exception {
+        MultiLayerNetwork model = new FlexibleNeuralNetwork(3, 0.1, Activation.TANH).getModel();
+        int publishes = 100;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ModelRegistry registry = new ModelRegistry(1, 0);
+        Thread remover = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    registry.remove("xor");
+                    Thread.yield();
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        remover.start();
+        for (int i = 0; i < publishes; i++) {
+            registry.publish("xor", model);
+        }
+        done.set(true);
+        remover.join();
+        registry.close();
+
+        // Всяка публикувана версия е или подменена, или премахната - и освободена
+        assertNull(failure.get());
+        assertEquals(publishes, registry.getRetired());
+        assertEquals(0, registry.getVersion("xor"));
+    }
+
+    public void testUnknownName() {
+        try (ModelRegistry registry = new ModelRegistry(1, 0)) {
+            registry.acquire("missing");
+            fail("Очаква се IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // очаквано
+        }
+    }
+}
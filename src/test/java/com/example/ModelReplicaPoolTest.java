@@ -0,0 +1,55 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.nd4j.linalg.activations.Activation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Репликите трябва да дават същите предвиждания като оригиналната мрежа при
+ * едновременно извикване от повече нишки, отколкото са репликите
+ */
+public class ModelReplicaPoolTest extends TestCase {
+
+    public void testConcurrentPredictMatchesOriginal() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        network.train(300);
+
+        int[][] expected = new int[11][11];
+        for (int i = 0; i <= 10; i++) {
+            for (int j = 0; j <= 10; j++) {
+                expected[i][j] = network.predict(i / 10.0, j / 10.0);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try (ModelReplicaPool pool = network.replicaPool(3)) {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int t = 0; t < 6; t++) {
+                tasks.add(() -> {
+                    int mismatches = 0;
+                    for (int round = 0; round < 5; round++) {
+                        for (int i = 0; i <= 10; i++) {
+                            for (int j = 0; j <= 10; j++) {
+                                if (pool.predict(i / 10.0, j / 10.0) != expected[i][j]) {
+                                    mismatches++;
+                                }
+                            }
+                        }
+                    }
+                    return mismatches;
+                });
+            }
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                assertEquals(0, result.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
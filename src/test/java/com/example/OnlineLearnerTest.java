@@ -0,0 +1,171 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Поток от XOR примери трябва да научи мрежата, а предвижданията да идват от
+ * публикувани версии, без да чакат обучението
+ */
+public class OnlineLearnerTest extends TestCase {
+
+    private static final double[][] XOR = {{0, 0}, {0, 1}, {1, 0}, {1, 1}};
+    private static final int[] XOR_LABELS = {0, 1, 1, 0};
+
+    public void testStreamLearnsXorWhileReadersPredict() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(5, 0.1, Activation.TANH);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong predictions = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try (OnlineLearner learner = network.onlineLearner(256, 16, 2000)) {
+            assertEquals(0, learner.getVersion());
+
+            List<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                Thread reader = new Thread(() -> {
+                    try {
+                        while (!stop.get()) {
+                            int label = learner.predict(1, 0);
+                            assertTrue(label == 0 || label == 1);
+                            predictions.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            Random random = new Random(42);
+            int samples = 16 * 800;
+            for (int k = 0; k < samples; k++) {
+                int i = random.nextInt(XOR.length);
+                learner.put(XOR_LABELS[i], XOR[i]);
+            }
+            learner.flush(60, TimeUnit.SECONDS);
+
+            stop.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertNull(failure.get());
+            assertTrue(predictions.get() > 0);
+
+            assertEquals(samples, learner.getSamplesTrained());
+            assertTrue(learner.getVersion() >= samples / 16);
+            for (int i = 0; i < XOR.length; i++) {
+                assertEquals(XOR_LABELS[i], learner.predict(XOR[i]));
+            }
+        }
+    }
+
+    public void testSnapshotIsNotChangedByLaterTraining() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        try (OnlineLearner learner = network.onlineLearner(64, 4, 1000)) {
+            CompiledDenseNetwork before = learner.snapshot();
+            double[] input = {1, 0};
+            double[] first = new double[2];
+            before.output(input, first);
+
+            for (int k = 0; k < 40; k++) {
+                learner.put(XOR_LABELS[k % 4], XOR[k % 4]);
+            }
+            learner.flush(30, TimeUnit.SECONDS);
+
+            double[] again = new double[2];
+            before.output(input, again);
+            assertEquals(first[0], again[0], 0.0);
+            assertEquals(first[1], again[1], 0.0);
+            assertNotSame(before, learner.snapshot());
+        }
+    }
+
+    public void testOfferRejectsInvalidAndClosed() {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        OnlineLearner learner = network.onlineLearner(8, 4, 1000);
+        try {
+            learner.offer(2, 0, 1);
+            fail("Етикет извън обхвата трябва да бъде отказан");
+        } catch (IllegalArgumentException expected) {
+            // очаквано
+        }
+        try {
+            learner.offer(0, 1);
+            fail("Грешен брой входове трябва да бъде отказан");
+        } catch (IllegalArgumentException expected) {
+            // очаквано
+        }
+        learner.close();
+        assertFalse(learner.offer(0, 0, 0));
+        assertEquals(1, learner.getRejected());
+    }
+
+    public void testCloseTrainsEveryAcceptedSample() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        for (int round = 0; round < 20; round++) {
+            OnlineLearner learner = network.onlineLearner(64, 8, 1);
+            Thread producer = new Thread(() -> {
+                for (int k = 0; k < 200; k++) {
+                    learner.offer(XOR_LABELS[k % 4], XOR[k % 4]);
+                }
+            });
+            producer.start();
+            learner.close();
+            producer.join();
+
+            // Пример, приет по време на close(), е обучен; останалите са отказани
+            assertEquals(learner.getAccepted(), learner.getSamplesTrained());
+            assertEquals(200, learner.getAccepted() + learner.getRejected());
+            learner.flush(1, TimeUnit.SECONDS);
+        }
+    }
+
+    public void testFlushRethrowsFailedFit() throws Exception {
+        FlexibleNeuralNetwork network = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        AtomicBoolean broken = new AtomicBoolean(true);
+        MultiLayerNetwork model = new MultiLayerNetwork(network.getModel().getLayerWiseConfigurations().clone()) {
+            @Override
+            public void fit(INDArray features, INDArray labels) {
+                if (broken.get()) {
+                    throw new IllegalStateException("счупен fit");
+                }
+                super.fit(features, labels);
+            }
+        };
+        model.init();
+
+        try (OnlineLearner learner = new OnlineLearner(model, 64, 4, 1, TimeUnit.MILLISECONDS)) {
+            for (int k = 0; k < 8; k++) {
+                learner.put(XOR_LABELS[k % 4], XOR[k % 4]);
+            }
+            try {
+                learner.flush(30, TimeUnit.SECONDS);
+                fail("flush трябва да хвърли грешката от fit");
+            } catch (IllegalStateException expected) {
+                assertEquals("счупен fit", expected.getCause().getMessage());
+            }
+            assertEquals(8, learner.getFailed());
+            assertEquals(0, learner.getSamplesTrained());
+
+            // Грешката се съобщава веднъж - следващите пакети се обучават нормално
+            broken.set(false);
+            for (int k = 0; k < 8; k++) {
+                learner.put(XOR_LABELS[k % 4], XOR[k % 4]);
+            }
+            learner.flush(30, TimeUnit.SECONDS);
+            assertEquals(8, learner.getSamplesTrained());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Съвпадение на резултатите при различна точност
+ */
+public class PrecisionTest extends TestCase {
+
+    public void testFloatTrainingMatchesDouble() {
+        FlexibleNeuralNetwork single = new FlexibleNeuralNetwork(10, 0.05, Activation.TANH, Precision.FLOAT);
+        FlexibleNeuralNetwork full = new FlexibleNeuralNetwork(10, 0.05, Activation.TANH, Precision.DOUBLE);
+        single.fit(300);
+        full.fit(300);
+
+        assertEquals(DataType.FLOAT, single.getModel().params().dataType());
+        assertEquals(DataType.DOUBLE, full.getModel().params().dataType());
+        assertEquals(full.accuracy(), single.accuracy(), 1e-9);
+        assertEquals(full.score(), single.score(), 1e-3);
+    }
+
+    public void testReducedPrecisionInferenceKeepsPredictions() {
+        MultiLayerNetwork model = MNISTClassifier.createModel(Precision.FLOAT);
+        INDArray input = Nd4j.rand(DataType.FLOAT, 64, MNISTClassifier.NUM_INPUTS);
+        INDArray expected = model.output(input);
+
+        for (Precision precision : new Precision[]{Precision.HALF, Precision.BFLOAT16}) {
+            MultiLayerNetwork reduced = precision.forInference(model);
+            assertEquals(precision.inferenceType(), reduced.params().dataType());
+            assertEquals(Precision.parameterBytes(model) / 2, Precision.parameterBytes(reduced));
+
+            INDArray actual = reduced.output(precision.forInference(input)).castTo(DataType.FLOAT);
+            double maxError = Math.abs(actual.sub(expected).maxNumber().doubleValue());
+            maxError = Math.max(maxError, Math.abs(actual.sub(expected).minNumber().doubleValue()));
+            assertTrue(precision + ": " + maxError, maxError < 0.02);
+
+            // Поне 95% от класовете съвпадат
+            double agreement = actual.argMax(1).eq(expected.argMax(1)).castTo(DataType.FLOAT).meanNumber().doubleValue();
+            assertTrue(precision + ": " + agreement, agreement >= 0.95);
+        }
+
+        // Същият тип - без копиране
+        assertSame(model, Precision.FLOAT.forInference(model));
+    }
+
+    public void testParsesSystemProperty() {
+        String previous = System.getProperty(Precision.PROPERTY);
+        try {
+            System.setProperty(Precision.PROPERTY, "bfloat16");
+            assertEquals(Precision.BFLOAT16, Precision.fromSystemProperty());
+            System.clearProperty(Precision.PROPERTY);
+            assertEquals(Precision.FLOAT, Precision.fromSystemProperty());
+        } finally {
+            if (previous != null) {
+                System.setProperty(Precision.PROPERTY, previous);
+            }
+        }
+    }
+}
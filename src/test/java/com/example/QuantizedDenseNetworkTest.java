@@ -0,0 +1,63 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.nio.file.Path;
+
+/**
+ * int8 мрежата трябва да дава почти същия изход като float мрежата
+ */
+public class QuantizedDenseNetworkTest extends TestCase {
+
+    public void testStaysCloseToFloatModel() throws Exception {
+        Path directory = IdxFixtures.mnistDirectory(256, 28, 28);
+        IdxMnistDataSetIterator train = IdxMnistDataSetIterator.mnist(directory, true, 32, 1);
+        IdxMnistDataSetIterator test = IdxMnistDataSetIterator.mnist(directory, false, 32, 1);
+
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        model.fit(train);
+        train.reset();
+
+        QuantizedDenseNetwork quantized = QuantizedDenseNetwork.quantize(model, train, 4);
+        assertEquals(3, quantized.numLayers());
+        assertEquals(MNISTClassifier.NUM_INPUTS, quantized.numInputs());
+        // Пикселите са в [0, 1]
+        assertEquals(1.0 / 127, quantized.inputScale(0), 1e-6);
+
+        // int8 тегла - около четири пъти по-малко от float
+        assertTrue(quantized.sizeBytes() * 3 < Precision.parameterBytes(model));
+
+        int agree = 0;
+        int total = 0;
+        while (test.hasNext()) {
+            DataSet batch = test.next();
+            INDArray expected = model.output(batch.getFeatures());
+            INDArray actual = quantized.output(batch.getFeatures());
+            assertEquals(DataType.FLOAT, actual.dataType());
+            double maxError = Math.abs(actual.sub(expected).maxNumber().doubleValue());
+            maxError = Math.max(maxError, Math.abs(actual.sub(expected).minNumber().doubleValue()));
+            assertTrue("грешка " + maxError, maxError < 0.05);
+
+            INDArray same = actual.argMax(1).eq(expected.argMax(1));
+            agree += same.castTo(DataType.INT32).sumNumber().intValue();
+            total += (int) same.length();
+        }
+        assertTrue(agree + " от " + total, agree >= total * 0.9);
+    }
+
+    public void testRejectsUnsupportedActivation() throws Exception {
+        MultiLayerNetwork model = new FlexibleNeuralNetwork(3, 0.1, Activation.ELU).getModel();
+        try {
+            QuantizedDenseNetwork.quantize(model, IdxMnistDataSetIterator.mnist(
+                    IdxFixtures.mnistDirectory(8, 1, 2), true, 4, 1), 1);
+            fail("ELU не се поддържа");
+        } catch (IllegalArgumentException expected) {
+            // очаквано
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Отговорите на сървъра трябва да съвпадат с изхода на мрежите, а локален
+ * генератор на натоварване проверява пропускателната способност и метриките
+ */
+public class ScoringServerTest extends TestCase {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoringServerTest.class);
+
+    private ModelRegistry registry;
+    private ScoringServer server;
+    private MultiLayerNetwork mnist;
+
+    @Override
+    protected void setUp() throws Exception {
+        FlexibleNeuralNetwork xor = new FlexibleNeuralNetwork(4, 0.1, Activation.TANH);
+        xor.train(200);
+        mnist = MNISTClassifier.createModel();
+
+        registry = new ModelRegistry(2, 2);
+        xor.publish(registry, "xor");
+        registry.publish("mnist", mnist);
+        server = new ScoringServer(registry, 0, 2, 64, 32);
+    }
+
+    @Override
+    protected void tearDown() {
+        server.close();
+        registry.close();
+    }
+
+    public void testJsonAndBinary() throws Exception {
+        Response single = post("xor", ScoringServer.JSON, "[1, 0]".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(200, single.status);
+        double[] expected = registry.output("xor", 1, 0);
+        assertEquals(String.format("{\"version\":1,\"outputs\":[[%s,%s]]}", (float) expected[0], (float) expected[1]),
+                single.text());
+
+        Response batch = post("xor", ScoringServer.JSON, "[[0,0],[1,1]]".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(200, batch.status);
+        assertTrue(batch.text(), batch.text().startsWith("{\"version\":1,\"outputs\":[[")
+                && batch.text().contains("],["));
+
+        // Три MNIST примера като float32
+        int pixels = 784;
+        float[][] images = new float[3][pixels];
+        ByteBuffer body = ByteBuffer.allocate(3 * pixels * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int r = 0; r < images.length; r++) {
+            for (int p = 0; p < pixels; p++) {
+                images[r][p] = IdxFixtures.pixel(r, p) / 255f;
+                body.putFloat(images[r][p]);
+            }
+        }
+        Response binary = post("mnist", ScoringServer.BINARY, body.array());
+        assertEquals(200, binary.status);
+        assertEquals("1", binary.version);
+        float[][] want = mnist.output(Nd4j.create(images)).toFloatMatrix();
+        ByteBuffer outputs = ByteBuffer.wrap(binary.body).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(3 * MNISTClassifier.NUM_CLASSES * Float.BYTES, binary.body.length);
+        for (float[] row : want) {
+            for (float value : row) {
+                assertEquals(value, outputs.getFloat(), 1e-6f);
+            }
+        }
+    }
+
+    public void testErrors() throws Exception {
+        assertEquals(404, post("missing", ScoringServer.JSON, "[1,0]".getBytes(StandardCharsets.US_ASCII)).status);
+        assertEquals(400, post("xor", ScoringServer.JSON, "[1,0,1]".getBytes(StandardCharsets.US_ASCII)).status);
+        assertEquals(400, post("xor", ScoringServer.JSON, "[1,x]".getBytes(StandardCharsets.US_ASCII)).status);
+        assertEquals(400, post("xor", ScoringServer.BINARY, new byte[5]).status);
+        // Повече от maxBatchSize (32) примера
+        StringBuilder big = new StringBuilder("[");
+        for (int i = 0; i < 33; i++) {
+            big.append(i == 0 ? "" : ",").append("[0,1]");
+        }
+        assertEquals(400, post("xor", ScoringServer.JSON, big.append("]").toString().getBytes(StandardCharsets.US_ASCII)).status);
+        // Сървърът продължава да отговаря след грешките
+        assertEquals(200, post("xor", ScoringServer.JSON, "[0,1]".getBytes(StandardCharsets.US_ASCII)).status);
+        assertTrue(server.metricsJson().contains("\"errors\":4"));
+    }
+
+    public void testLoadGenerator() throws Exception {
+        int clients = 4;
+        int requestsPerClient = 150;
+        byte[] json = "[[0,0],[0,1],[1,0],[1,1]]".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer binary = ByteBuffer.allocate(4 * 2 * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        binary.putFloat(0).putFloat(0).putFloat(0).putFloat(1).putFloat(1).putFloat(0).putFloat(1).putFloat(1);
+
+        AtomicLong ok = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            boolean useBinary = c % 2 == 1;
+            Thread client = new Thread(() -> {
+                try {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        Response response = useBinary
+                                ? post("xor", ScoringServer.BINARY, binary.array())
+                                : post("xor", ScoringServer.JSON, json);
+                        assertEquals(200, response.status);
+                        ok.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "load-" + c);
+            threads.add(client);
+            client.start();
+        }
+        for (Thread client : threads) {
+            client.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        long total = (long) clients * requestsPerClient;
+        assertEquals(total, ok.get());
+        LatencyHistogram latency = server.getLatency("xor");
+        assertEquals(total, latency.getCount());
+        assertTrue(latency.getPercentile(50) > 0);
+        assertTrue(latency.getPercentile(99) >= latency.getPercentile(50));
+        // Пропускателната способност само се записва - долната граница е в
+        // ScoringServerBenchmark (профил jmh), а не в теста
+        double throughput = total / seconds;
+        log.info("{} заявки ({} примера) за {} s: {} заявки/s, {}", total, total * 4,
+                String.format("%.2f", seconds), String.format("%.0f", throughput), latency);
+
+        Response metrics = get("/metrics");
+        assertEquals(200, metrics.status);
+        assertTrue(metrics.text(), metrics.text().contains("\"xor\":{\"version\":1,\"requests\":" + total
+                + ",\"rows\":" + total * 4));
+    }
+
+    private Response post(String model, String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url("/predict/" + model).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return read(connection);
+    }
+
+    private Response get(String path) throws IOException {
+        return read((HttpURLConnection) url(path).openConnection());
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://localhost:" + server.getPort() + path);
+    }
+
+    private static Response read(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = stream.read(buffer)) >= 0) {
+                    body.write(buffer, 0, read);
+                }
+            }
+        }
+        return new Response(status, body.toByteArray(), connection.getHeaderField(ScoringServer.VERSION_HEADER));
+    }
+
+    private static final class Response {
+        final int status;
+        final byte[] body;
+        final String version;
+
+        Response(int status, byte[] body, String version) {
+            this.status = status;
+            this.body = body;
+            this.version = version;
+        }
+
+        String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Метрики за итерации и епохи при тренировка върху генерирани IDX данни
+ */
+public class TrainingMetricsListenerTest extends TestCase {
+
+    public void testRecordsIterationsEpochsAndSamples() throws Exception {
+        Path directory = IdxFixtures.mnistDirectory(96, 28, 28);
+        InMemoryMetricsSink sink = new InMemoryMetricsSink();
+        TrainingMetricsListener listener = new TrainingMetricsListener(sink, 2);
+
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        model.setListeners(listener);
+        DataSetIterator train = listener.wrap(IdxMnistDataSetIterator.mnist(directory, true, 16, 1));
+        model.fit(train, 2);
+
+        // 96 примера в пакети по 16 - 6 итерации на епоха
+        List<TrainingMetricsListener.IterationMetrics> iterations = sink.getIterations();
+        assertEquals(12, iterations.size());
+        assertEquals(12, listener.getCompute().getCount());
+        for (TrainingMetricsListener.IterationMetrics metrics : iterations) {
+            assertEquals(16, metrics.getBatchSize());
+            assertTrue(metrics.getForwardNanos() > 0);
+            assertTrue(metrics.getBackwardNanos() > 0);
+            assertTrue(metrics.getDataWaitNanos() >= 0);
+            assertEquals(metrics.getIteration() % 2 == 0, metrics.isSampled());
+            if (metrics.isSampled()) {
+                assertTrue(metrics.getParamNorm() > 0);
+                assertTrue(metrics.getGradientNorm() > 0);
+                assertTrue(metrics.getPhysicalBytes() > 0);
+            } else {
+                assertTrue(Double.isNaN(metrics.getParamNorm()));
+            }
+        }
+
+        List<TrainingMetricsListener.EpochMetrics> epochs = sink.getEpochs();
+        assertEquals(2, epochs.size());
+        assertEquals(96, epochs.get(1).getSamples());
+        assertEquals(6, epochs.get(1).getCompute().getCount());
+        assertTrue(epochs.get(1).getSamplesPerSecond() > 0);
+        assertEquals(12, listener.getDataWait().getCount());
+    }
+
+    public void testWritesJsonLines() throws Exception {
+        Path directory = IdxFixtures.mnistDirectory(32, 28, 28);
+        Path file = Files.createTempFile("metrics", ".jsonl");
+        TrainingMetricsListener listener = new TrainingMetricsListener(new JsonLinesMetricsSink(file), 1);
+
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        model.setListeners(listener);
+        model.fit(listener.wrap(IdxMnistDataSetIterator.mnist(directory, true, 8, 1)));
+        listener.getSink().close();
+
+        // 4 итерации и една епоха
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(0).contains("\"type\":\"iteration\""));
+        assertTrue(lines.get(0).contains("\"gradientNorm\""));
+        assertTrue(lines.get(4).contains("\"type\":\"epoch\""));
+        assertTrue(lines.get(4).contains("\"p99Nanos\""));
+    }
+}
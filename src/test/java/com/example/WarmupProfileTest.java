@@ -0,0 +1,56 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Профилът за загряване трябва да се записва и чете без загуби, а изиграването
+ * му не трябва да променя параметрите на мрежата
+ */
+public class WarmupProfileTest extends TestCase {
+
+    public void testSaveAndLoad() throws Exception {
+        WarmupProfile profile = new WarmupProfile();
+        profile.recordOutput(1);
+        profile.recordOutput(64);
+        profile.recordOutput(1);
+        profile.recordFit(32);
+        assertEquals(3, profile.size());
+        assertEquals(Arrays.asList(1, 64), profile.outputBatchSizes());
+
+        Path file = Files.createTempFile("warmup", ".profile");
+        try {
+            profile.save(file);
+            assertEquals(Arrays.asList("output 1", "output 64", "fit 32"), WarmupProfile.load(file).entries());
+
+            Files.write(file, Arrays.asList("# коментар", "output 8", "predict 3"), StandardCharsets.UTF_8);
+            try {
+                WarmupProfile.load(file);
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("ред 3"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testReplayKeepsParameters() throws Exception {
+        MultiLayerNetwork model = MNISTClassifier.createModel();
+        INDArray before = model.params().dup();
+
+        WarmupProfile profile = new WarmupProfile();
+        assertEquals(0, profile.replay(model, 2));
+        profile.recordOutput(3);
+        profile.recordFit(5);
+        assertTrue(profile.replay(model, 2) > 0);
+        assertEquals(before, model.params());
+    }
+}
@@ -0,0 +1,39 @@
+package com.example;
+
+import junit.framework.TestCase;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.dataset.DataSet;
+
+/**
+ * Тренировка в workspace - същият резултат като обикновения цикъл, без растеж на алокациите
+ */
+public class WorkspaceTrainerTest extends TestCase {
+
+    public void testMatchesPlainLoopWithSteadyAllocations() {
+        DataSet xor = SimpleNeuralNetwork.createDataSet();
+
+        MultiLayerNetwork plain = new MultiLayerNetwork(SimpleNeuralNetwork.createConfiguration());
+        plain.init();
+        for (int i = 0; i < 250; i++) {
+            plain.fit(xor.getFeatures(), xor.getLabels());
+        }
+
+        MultiLayerNetwork model = new MultiLayerNetwork(SimpleNeuralNetwork.createConfiguration());
+        model.init();
+        WorkspaceTrainer trainer = new WorkspaceTrainer(model, xor);
+        trainer.fit(50);
+        double warmBuffers = trainer.getBuffersPerIteration();
+        long warmWorkspace = trainer.getWorkspaceBytes();
+        trainer.fit(200);
+
+        assertEquals(250, trainer.getIterations());
+        assertTrue(plain.params().equalsWithEps(model.params(), 1e-6));
+
+        // Установено състояние след загряването: workspace-ите не растат, броят
+        // буфери на итерация не се променя, а нетният прираст нативна памет е близо до нула
+        assertTrue(trainer.allocationReport(), warmWorkspace > 0);
+        assertEquals(warmWorkspace, trainer.getWorkspaceBytes());
+        assertEquals(warmBuffers, trainer.getBuffersPerIteration(), 0.5);
+        assertTrue(trainer.allocationReport(), trainer.getNativeBytesPerIteration() < 8 * 1024);
+    }
+}